@@ -7,12 +7,37 @@ repositories {
     mavenCentral()
 }
 
+// Benchmarks live in their own source set (src/jmh/java) so they can see the package private parts of main
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
+// The Vector API search is the only code that needs jdk.incubator.vector to compile. It's kept out of main and only
+// loaded by name, so main, test and jmh compile without the incubating module, and run on SWAR without it.
+val vector: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
+sourceSets {
+    main { runtimeClasspath += vector.output }
+    test { runtimeClasspath += vector.output }
+}
+jmh.runtimeClasspath += vector.output
+
+tasks.jar { from(vector.output) }
+
 dependencies {
 
     implementation(libs.logback)
     implementation(libs.jackson.dataformat.toml)
     implementation(libs.jansi)
 
+    "jmhImplementation"(libs.jmh.core)
+    "jmhAnnotationProcessor"(libs.jmh.generator.annprocess)
+
     testImplementation(libs.junit.jupiter)
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
@@ -23,12 +48,20 @@ java {
     }
 }
 
+// The vector API is optional at runtime, without the module the parser falls back to SWAR
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
 tasks.withType<JavaCompile>() {
     options.compilerArgs.add("--enable-preview")
 }
 
+tasks.named<JavaCompile>(vector.compileJavaTaskName) {
+    options.compilerArgs.addAll(vectorModule)
+}
+
 tasks.withType<JavaExec>() {
     jvmArgs("--enable-preview")
+    jvmArgs(vectorModule)
     standardInput = System.`in`
 }
 
@@ -41,4 +74,46 @@ tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
     useJUnitPlatform()
     jvmArgs("--enable-preview")
+    jvmArgs(vectorModule)
+}
+
+// ./gradlew jmh -Pjmh.args="ParsingBenchmark -p stations=10000"
+// Anything in jmh.args is passed to the JMH runner as is, see `-h` for the options.
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks"
+    classpath = jmh.runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+    // Some benchmarks export files into the working directory
+    val workDir = layout.buildDirectory.dir("jmh")
+    workingDir(workDir)
+    doFirst { workDir.get().asFile.mkdirs() }
+    val jmhArgs = providers.gradleProperty("jmh.args").orElse("")
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf("-rf", "json", "-rff", "results.json") + jmhArgs.get().split(" ").filter { it.isNotBlank() }
+    })
+}
+
+// ./gradlew generateData -Pgenerator.args="--rows 1000000000 --stations 10000 --files 8 --skew 1.2 --format csv"
+tasks.register<JavaExec>("generateData") {
+    group = "benchmark"
+    description = "Writes a seeded 1BRC style dataset into the watch directory"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.tools.DatasetGenerator"
+    val generatorArgs = providers.gradleProperty("generator.args").orElse("")
+    argumentProviders.add(CommandLineArgumentProvider {
+        generatorArgs.get().split(" ").filter { it.isNotBlank() }
+    })
+}
+
+// ./gradlew throughput -Pharness.args="--dir watch --script scan.txt"
+tasks.register<JavaExec>("throughput") {
+    group = "benchmark"
+    description = "Runs the watcher and job pipeline headless and reports its throughput"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.tools.ThroughputHarness"
+    val harnessArgs = providers.gradleProperty("harness.args").orElse("")
+    argumentProviders.add(CommandLineArgumentProvider {
+        harnessArgs.get().split(" ").filter { it.isNotBlank() }
+    })
 }
@@ -0,0 +1,45 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.InputFormat;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.tools.DatasetGenerator;
+
+/// Seeded measurement data for the benchmarks, the same parameters always give the same bytes, see [DatasetGenerator].
+public final class BenchmarkData {
+
+	private static final long SEED = 1_000_000_000L;
+
+	private BenchmarkData() {}
+
+	/// @return `rows` lines spread over `stations` distinct stations, with a header for [InputFormat#CSV]
+	public static byte[] measurements(int rows, int stations, InputFormat format) {
+		var generator = new DatasetGenerator(new DatasetGenerator.Options(Path.of(""), rows, stations, 0, 1, format, false, SEED));
+		var out = new ByteArrayOutputStream(rows * 16);
+		try {
+			generator.write(out, 0);
+		} catch (IOException | InterruptedException e) {
+			throw new IllegalStateException("Failed to generate benchmark data", e);
+		}
+		return out.toByteArray();
+	}
+
+	/// Writes [#measurements] to `directory`, using the extension that matches the format.
+	public static Path writeFile(Path directory, String name, int rows, int stations, InputFormat format) throws IOException {
+		Files.createDirectories(directory);
+		String extension = format == InputFormat.CSV ? ".csv" : ".txt";
+		return Files.write(directory.resolve(name + extension), measurements(rows, stations, format));
+	}
+
+	public static void deleteRecursively(Path directory) throws IOException {
+		if (!Files.exists(directory)) {
+			return;
+		}
+		try (var paths = Files.walk(directory)) {
+			for (Path path : paths
+					.sorted(Comparator.reverseOrder())
+					.toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+import org.openjdk.jmh.annotations.*;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.BenchmarkData;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.InputFormat;
+
+/// A full watcher pass over a file that hasn't been seen before, building its station contribution.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+
+	@Param({"1000000", "10000000"})
+	public int rows;
+
+	@Param({"100", "10000"})
+	public int stations;
+
+	@Param({"SEMICOLON", "CSV"})
+	public InputFormat format;
+
+	private Path directory;
+	private Path file;
+	private DirectoryWatcher watcher;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("aggregation-benchmark");
+		file = BenchmarkData.writeFile(directory, "measurements", rows, stations, format);
+	}
+
+	/// A fresh watcher, otherwise every pass after the first would only tail an unchanged file.
+	@Setup(Level.Invocation)
+	public void newWatcher() {
+		watcher = new DirectoryWatcher(directory);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkData.deleteRecursively(directory);
+	}
+
+	@Benchmark
+	public DirectoryWatcher.FileUpdate processFileForAggregateMap() {
+		return watcher.processFileForAggregateMap(file);
+	}
+}
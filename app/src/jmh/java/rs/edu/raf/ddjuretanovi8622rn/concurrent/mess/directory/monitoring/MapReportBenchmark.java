@@ -0,0 +1,54 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+import org.openjdk.jmh.annotations.*;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.BenchmarkData;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.InputFormat;
+
+/// Snapshotting the live aggregates and writing them out, the files go to the working directory.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class MapReportBenchmark {
+
+	@Param({"100", "10000"})
+	public int stations;
+
+	@Param({"1", "16"})
+	public int files;
+
+	private Path directory;
+	private DirectoryWatcher watcher;
+	private MapReportService reportService;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("report-benchmark");
+		for (int i = 0; i < files; i++) {
+			BenchmarkData.writeFile(directory, "measurements-" + i, 100_000, stations, InputFormat.SEMICOLON);
+		}
+		watcher = new DirectoryWatcher(directory);
+		watcher.start();
+		reportService = new MapReportService(watcher);
+	}
+
+	/// The watcher is stopped first, it would keep polling the directory, and the next trial starts one of its own.
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		watcher.stop();
+		BenchmarkData.deleteRecursively(directory);
+	}
+
+	@Benchmark
+	public void exportMapToCsv() {
+		reportService.exportMapToCsv();
+	}
+
+	@Benchmark
+	public void exportStationsToCsv() {
+		reportService.exportStationsToCsv();
+	}
+}
@@ -0,0 +1,58 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import org.openjdk.jmh.annotations.*;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.BenchmarkData;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.InputFormat;
+
+/// A whole scan of one file: mapping, chunked parsing, filtering and writing the matches.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class FileProcessingTaskBenchmark {
+
+	@Param({"1000000", "10000000"})
+	public int rows;
+
+	@Param({"100", "10000"})
+	public int stations;
+
+	@Param({"SEMICOLON", "CSV"})
+	public InputFormat format;
+
+	/// How much of the file ends up in the output, a narrow and a wide scan.
+	@Param({"-5.0", "-99.9"})
+	public double min;
+
+	private Path directory;
+	private Path output;
+	private FileProcessingTask task;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("scan-benchmark");
+		Path file = BenchmarkData.writeFile(directory, "measurements", rows, stations, format);
+		output = directory.resolve("output.txt");
+		var scan = new Command.Scan(min, -min, 'B', output.toString(), "benchmark");
+		task = new FileProcessingTask(file, scan, "benchmark");
+	}
+
+	@Setup(Level.Invocation)
+	public void truncateOutput() throws IOException {
+		Files.write(output, new byte[0]);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkData.deleteRecursively(directory);
+	}
+
+	@Benchmark
+	public void scan() {
+		task.run();
+	}
+}
@@ -0,0 +1,64 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.BenchmarkData;
+
+/// The innermost loop of every ingestion path: finding separators and parsing temperatures.
+/// Runs on an in-memory segment, so no I/O is measured.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ParsingBenchmark {
+
+	@Param({"1000000"})
+	public int rows;
+
+	@Param({"100", "10000"})
+	public int stations;
+
+	@Param({"SEMICOLON", "CSV"})
+	public InputFormat format;
+
+	private MemorySegment data;
+	private long start;
+
+	@Setup
+	public void setup() {
+		data = MemorySegment.ofArray(BenchmarkData.measurements(rows, stations, format));
+		start = format.hasHeader() ? MeasurementParser.nextLine(data, 0, data.byteSize()) : 0;
+	}
+
+	/// Parsing alone, the visitor only sums the temperatures.
+	@Benchmark
+	public long parseLines() {
+		long[] sum = new long[1];
+		MeasurementParser.parseLines(
+				data,
+				start,
+				data.byteSize(),
+				format.separator(),
+				true,
+				(_, _, _, temperature) -> sum[0] += temperature);
+		return sum[0];
+	}
+
+	/// [#parseLines] with the SWAR delimiter search, to compare it with the vector one on the same machine.
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-D" + DelimiterSearch.VECTOR_PROPERTY + "=false"})
+	public long parseLinesSwar() {
+		return parseLines();
+	}
+
+	/// Parsing plus the per station hash table lookup the watcher does for every row.
+	@Benchmark
+	public void parseIntoStationTable(Blackhole blackhole) {
+		var table = new StationTable();
+		MeasurementParser.parseLines(data, start, data.byteSize(), format.separator(), true, table);
+		blackhole.consume(table);
+	}
+}
@@ -0,0 +1,41 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.queue;
+
+import module java.base;
+import org.openjdk.jmh.annotations.*;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Message;
+
+/// `emit` followed by `take` from several threads at once.
+/// Every thread emits before it takes, so a `take` can never block forever once the iteration ends.
+/// Run with `-t` to change the contention.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@Threads(4)
+@State(Scope.Benchmark)
+public class MessageQueueBenchmark {
+
+	/// Messages already waiting in the queue, a busy queue is more expensive to insert into.
+	@Param({"0", "1000"})
+	public int backlog;
+
+	private MessageQueue queue;
+	private Message message;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		queue = new MessageQueue();
+		message = new Command.Status("benchmark");
+		for (int i = 0; i < backlog; i++) {
+			queue.emit(new Command.Status("backlog-" + i));
+		}
+	}
+
+	@Benchmark
+	public Message emitAndTake() throws InterruptedException {
+		queue.emit(message);
+		return queue.take();
+	}
+}
@@ -1,3 +1,8 @@
 package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess;
 
-public record AggregateData(long count, Double sum) {}
+public record AggregateData(long count, double sum) {
+
+	public AggregateData add(AggregateData other) {
+		return new AggregateData(count + other.count, sum + other.sum);
+	}
+}
@@ -12,18 +12,28 @@ import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.CommandParser;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.PoisonPill;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.config.ConcurrentMessConfig;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.WatchRoots;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring.DirectoryWatcher;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring.MapReportService;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring.WatcherSettings;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.http.ControlServer;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job.JobManager;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job.JobSettings;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementParser;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ReadScheduler;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ReadSettings;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.queue.CommandDispatcher;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.queue.MessageQueue;
 
 public class App {
 	private static final Logger log = LoggerFactory.getLogger(App.class);
 	private final MessageQueue mq = new MessageQueue();
-	private final JobManager jobManager = new JobManager();
-	private Path watchDir;
+	private JobManager jobManager;
+	private WatchRoots watchRoots;
 	private DirectoryWatcher watcher;
 	private MapReportService mapReportService;
+	/// Null unless `http_port` is configured
+	private ControlServer controlServer;
 
 	/// Equivalent to:
 	/// ```java
@@ -42,19 +52,34 @@ public class App {
 				                 This won't cause an issue with command parsing.
 				         """);
 		var toml = ObjectMapperHolder.getTomlMapper();
+		Integer httpPort;
 		try (var is = App.class.getResourceAsStream("/config.toml")) {
 			if (is == null) {
 				throw new IllegalStateException("Configuration file not found");
 			}
 			var cfg = toml.readValue(is, ConcurrentMessConfig.class);
-			this.watchDir = Path.of(cfg.watchDirectory());
-			this.watcher = new DirectoryWatcher(this.watchDir);
+			this.watchRoots = WatchRoots.of(cfg);
+			ReadScheduler.configure(ReadSettings.of(cfg));
+			this.jobManager = new JobManager(JobSettings.of(cfg));
+			this.watcher = new DirectoryWatcher(this.watchRoots, WatcherSettings.of(cfg), this.jobManager.getCache());
 			this.mapReportService = new MapReportService(this.watcher);
+			httpPort = cfg.httpPort();
 		} catch (Exception e) {
 			log.error("Failed to read configuration file {}", e.getMessage());
 			log.error("Exiting...");
 			return;
 		}
+		if (httpPort != null) {
+			try {
+				this.controlServer = new ControlServer(
+						new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort),
+						this.mq,
+						this.jobManager);
+			} catch (IOException e) {
+				// The CLI still works without it
+				log.error("Could not start the HTTP control API on port {}, continuing without it: {}", httpPort, e.toString());
+			}
+		}
 //
 //		var t = Thread
 //				.ofVirtual()
@@ -65,6 +90,10 @@ public class App {
 //
 //		if (true) return;
 		try (var exec = Executors.newVirtualThreadPerTaskExecutor()) {
+			if (this.controlServer != null) {
+				this.controlServer.start();
+			}
+			log.info("Parsing with the {} delimiter search", MeasurementParser.delimiterSearch());
 			log.info("Starting directory monitoring...");
 			var monitorTask = exec.submit(() -> this.watcher.start());
 			var cliTask = exec.submit(() -> {
@@ -76,7 +105,7 @@ public class App {
 			});
 			var consumerTask = exec.submit(() -> {
 				try {
-					queueConsumer();
+					new CommandDispatcher(this.mq, this::execute).run();
 				} catch (Exception e) {
 					log.error("Error in queue consumer: {}", e.getMessage());
 				}
@@ -93,6 +122,9 @@ public class App {
 			// run on the main thread, I hate that this is necessary
 			// since everything else is running on the virtual thread executor(s)
 			// all the threads are daemon threads which means that the JVM can exit
+			if (this.controlServer != null) {
+				this.controlServer.close();
+			}
 			var pill = this.mq.take();
 			if (pill instanceof PoisonPill(boolean saveJobs) ) {
 				if (saveJobs) {
@@ -102,6 +134,7 @@ public class App {
 				}
 			}
 			this.mapReportService.stop();
+			this.watcher.stop();
 			consumerTask.cancel(false);
 			// consumer task should exit immediately after the CLI task, so an explicit cancel is unnecessary
 			monitorTask.cancel(true);
@@ -144,33 +177,22 @@ public class App {
 		}
 	}
 
-	private void queueConsumer() {
-		while (true) {
-			try {
-				var message = this.mq.take();
-				if (message instanceof PoisonPill) {
-					log.info("Poison pill detected. Exiting consumer thread...");
-					break;
-				}
-				switch (message) {
-					case Command command -> {
-						switch (command) {
-							case Command.ExportMap _ -> this.mapReportService.exportMapToCsv();
-							case Command.Map _ -> this.mapReportService.printMap();
-							case Command.Scan scan -> jobManager.scan(scan);
-							case Command.Start start -> jobManager.init(start.loadJobs(), watchDir);
-							case Command.Status status -> jobManager.status(status.jobname());
-							case Command.Stop _ -> throw new IllegalStateException(
-									"Stop command should never be emitted into the message queue");
-						}
-					}
-					case PoisonPill _ ->
-							throw new IllegalStateException("Message queue should never contain a poison pill");
+	private void execute(Command command) {
+		switch (command) {
+			case Command.ExportMap _ -> this.mapReportService.exportMapToCsv();
+			case Command.Map _ -> this.mapReportService.printMap();
+			case Command.Stations stations -> {
+				if (stations.export()) {
+					this.mapReportService.exportStationsToCsv();
+				} else {
+					this.mapReportService.printStations();
 				}
-
-			} catch (InterruptedException e) {
-				log.error("Error taking message from queue: {}", e.getMessage());
 			}
+			case Command.Scan scan -> jobManager.scan(scan);
+			case Command.Start start -> jobManager.init(start.loadJobs(), watchRoots);
+			case Command.Status status -> jobManager.status(status.jobname());
+			case Command.Stop _ -> throw new IllegalStateException(
+					"Stop command should never be emitted into the message queue");
 		}
 	}
 
@@ -0,0 +1,274 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache;
+
+import module java.base;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ReadScheduler;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.RowVisitor;
+
+/// Columnar copies of the measurement files, kept in their own directory, that answer `SCAN` range queries
+/// with a binary search instead of parsing the whole text file again.
+///
+/// A sidecar is only used while the size and modification time of its source file match the ones it was built from.
+/// A scan that finds no usable sidecar reads the text file as before, and the sidecar is built in the background,
+/// so only the scans after it pay off. Sidecars are built one at a time, in the order they were missed, and a miss
+/// while [#BUILD_QUEUE_CAPACITY] builds are already waiting leaves the file to a later scan.
+///
+/// Files the watcher reads don't wait for a scan: the rows its pass collected are laid out as the sidecar right away,
+/// see [#ingested]. Those sidecars are also kept on the heap, least recently queried first out once they take up more
+/// than the memory budget, so scanning a file that just arrived doesn't read the disk at all.
+public final class ColumnarCache {
+
+	private static final Logger log = LoggerFactory.getLogger(ColumnarCache.class);
+	private static final String EXTENSION = ".col";
+	private static final int BUILD_QUEUE_CAPACITY = 64;
+
+	private final Path directory;
+	private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+	private final ExecutorService builder = new ThreadPoolExecutor(
+			1,
+			1,
+			0,
+			TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(BUILD_QUEUE_CAPACITY),
+			Thread
+					.ofVirtual()
+					.name("sidecar-builder")
+					.factory());
+	/// Rows the builds may still collect, see [SidecarBuilder#ROW_BUDGET]
+	private final Semaphore buildableRows = new Semaphore(SidecarBuilder.ROW_BUDGET);
+	/// Sources waiting for the builder, so a file that's missed again isn't queued twice
+	private final Set<Path> queued = ConcurrentHashMap.newKeySet();
+	/// Sources whose sidecar is being built, so the same file is never built twice at once
+	private final Set<Path> building = ConcurrentHashMap.newKeySet();
+	/// Modification time of sources that couldn't be cached, they aren't tried again until they change
+	private final Map<Path, FileTime> uncacheable = new ConcurrentHashMap<>();
+	/// Bytes the sidecars on the heap may take up together
+	private final long memoryBudget;
+	private final Lock lock = new ReentrantLock();
+	/// Sidecars on the heap by their absolute source, least recently used first
+	private final Map<Path, Sidecar> resident = new LinkedHashMap<>(16, 0.75f, true);
+	private long residentBytes;
+	/// Rows the watcher's passes may still collect, together their sidecars fit into the memory budget.
+	/// The rows themselves take up half of that
+	private final AtomicLong collectableRows;
+
+	public ColumnarCache(Path directory, long memoryBudget) {
+		this.directory = directory;
+		this.memoryBudget = memoryBudget;
+		this.collectableRows = new AtomicLong(memoryBudget / (Sidecar.COLUMNS * Integer.BYTES));
+	}
+
+	/// Visits every row of `source` that starts with `letter` and has a temperature in `[minTenths, maxTenths]`,
+	/// in the order of the file. The visitor may take its time, the sidecar is paged in before the first row.
+	///
+	/// @return false if there is no up to date sidecar, nothing was visited and the caller has to scan the file itself
+	public boolean scan(Path source, int minTenths, int maxTenths, char letter, RowVisitor visitor) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+		Sidecar cached = residentOf(source, attributes);
+		if (cached != null) {
+			cached.query(letter, minTenths, maxTenths, visitor);
+			return true;
+		}
+		Path sidecarFile = sidecarOf(source);
+		try (var sidecar = Sidecar.open(sidecarFile, attributes)) {
+			if (sidecar != null) {
+				sidecar.load(letter, ReadScheduler.reader(sidecarFile, ReadScheduler.Priority.SCAN));
+				try {
+					sidecar.query(letter, minTenths, maxTenths, visitor);
+				} catch (IndexOutOfBoundsException e) {
+					// Rows may already have been visited, the caller can't fall back to the text file anymore
+					Files.deleteIfExists(sidecarFile);
+					throw new IOException("The sidecar of " + source + " is corrupted, it was deleted", e);
+				}
+				return true;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			log.warn("Sidecar of {} is corrupted, it will be rebuilt", source);
+		}
+		if (!attributes
+				.lastModifiedTime()
+				.equals(uncacheable.get(source))) {
+			queueBuild(source);
+		}
+		return false;
+	}
+
+	/// Starts a pass of the watcher over the whole of a file, which collects its rows for [#ingested] as long as
+	/// their sidecar would fit into the memory budget.
+	public Ingest ingest() {
+		return new Ingest(collectableRows);
+	}
+
+	/// Lays out the sidecar of `source` from the rows of a pass over the whole file, keeps it on the heap
+	/// and writes it to its file, in the background. The pass' rows are released either way.
+	///
+	/// @param attributes of the file from before the pass, nothing is cached if it changed since
+	public void ingested(Path source, BasicFileAttributes attributes, Ingest ingest, List<Ingest.Chunk> chunks) {
+		if (!ingest.isComplete()) {
+			ingest.release();
+			return;
+		}
+		executorService.submit(() -> {
+			try {
+				long start = System.nanoTime();
+				Sidecar sidecar = SidecarBuilder.layout(attributes, chunks);
+				if (sidecar == null || !sidecar.isOf(Files.readAttributes(source, BasicFileAttributes.class))) {
+					return;
+				}
+				keep(source, sidecar);
+				write(source, sidecar);
+				log.info("Built the sidecar of {} from the watcher's pass in {}ms", source, (System.nanoTime() - start) / 1_000_000);
+			} catch (IOException e) {
+				log.warn("Could not write the sidecar of {}: {}", source, e.getMessage());
+			} finally {
+				ingest.release();
+			}
+		});
+	}
+
+	/// Drops the sidecar of `source` from the heap, for files that are gone or changed.
+	public void forget(Path source) {
+		lock.lock();
+		try {
+			Sidecar sidecar = resident.remove(keyOf(source));
+			if (sidecar != null) {
+				residentBytes -= sidecar
+						.data()
+						.byteSize();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// @return the sidecar of `source` on the heap, if there is one and it's up to date
+	private Sidecar residentOf(Path source, BasicFileAttributes attributes) {
+		lock.lock();
+		try {
+			Path key = keyOf(source);
+			Sidecar sidecar = resident.get(key);
+			if (sidecar == null || sidecar.isOf(attributes)) {
+				return sidecar;
+			}
+			resident.remove(key);
+			residentBytes -= sidecar
+					.data()
+					.byteSize();
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// Keeps `sidecar` on the heap, the least recently used ones make room for it.
+	private void keep(Path source, Sidecar sidecar) {
+		long size = sidecar
+				.data()
+				.byteSize();
+		if (size > memoryBudget) {
+			return;
+		}
+		forget(source);
+		lock.lock();
+		try {
+			resident.put(keyOf(source), sidecar);
+			residentBytes += size;
+			var eldest = resident
+					.values()
+					.iterator();
+			while (residentBytes > memoryBudget) {
+				residentBytes -= eldest
+						.next()
+						.data()
+						.byteSize();
+				eldest.remove();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// Writes a sidecar laid out on the heap to its file, unless that's already being built.
+	private void write(Path source, Sidecar sidecar) throws IOException {
+		if (!building.add(source)) {
+			return;
+		}
+		Path target = sidecarOf(source);
+		Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+		try {
+			Files.createDirectories(directory);
+			MemorySegment data = sidecar.data();
+			try (var channel = FileChannel.open(
+					temporary,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ,
+					StandardOpenOption.WRITE); var arena = Arena.ofConfined()) {
+				MemorySegment out = channel.map(FileChannel.MapMode.READ_WRITE, 0, data.byteSize(), arena);
+				MemorySegment.copy(data, 0, out, 0, data.byteSize());
+				out.force();
+			}
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			uncacheable.remove(source);
+		} finally {
+			Files.deleteIfExists(temporary);
+			building.remove(source);
+		}
+	}
+
+	private void queueBuild(Path source) {
+		if (!queued.add(source)) {
+			return;
+		}
+		try {
+			builder.execute(() -> {
+				queued.remove(source);
+				try {
+					build(source);
+				} catch (IOException e) {
+					log.warn("Could not build the sidecar of {}: {}", source, e.getMessage());
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			queued.remove(source);
+			log.debug("Too many sidecars are waiting to be built, {} is left to a later scan", source);
+		}
+	}
+
+	/// Builds the sidecar of `source`, unless it's already being built.
+	public void build(Path source) throws IOException {
+		if (!building.add(source)) {
+			return;
+		}
+		Path target = sidecarOf(source);
+		Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+		try {
+			Files.createDirectories(directory);
+			FileTime modified = Files.getLastModifiedTime(source);
+			long start = System.nanoTime();
+			if (SidecarBuilder.build(source, temporary, buildableRows)) {
+				Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				uncacheable.remove(source);
+				log.info("Built the sidecar of {} in {}ms", source, (System.nanoTime() - start) / 1_000_000);
+			} else {
+				uncacheable.put(source, modified);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+			building.remove(source);
+		}
+	}
+
+	/// The file name alone could clash between watch directories, so the sidecar's name also has a hash of the full path.
+	private Path sidecarOf(Path source) {
+		String absolute = keyOf(source).toString();
+		return directory.resolve(source.getFileName() + "-" + Integer.toHexString(absolute.hashCode()) + EXTENSION);
+	}
+
+	private static Path keyOf(Path source) {
+		return source
+				.toAbsolutePath()
+				.normalize();
+	}
+}
@@ -0,0 +1,111 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.RowVisitor;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.StationTable;
+
+/// A single pass of the watcher over a file. Every chunk aggregates its rows into a [StationTable] for the map and,
+/// while the pass is within its row budget, also keeps the rows themselves, so [ColumnarCache#ingested] can lay out
+/// the file's sidecar without reading the file again.
+///
+/// The row budget is shared by every pass that runs at once. Once it's used up a pass stops collecting and only
+/// aggregates, a file that doesn't fit is left to be cached by the first scan that reads it.
+/// A pass gives back what it reserved once its rows are laid out, or with [#release()] if it fails.
+public final class Ingest {
+
+	private static final int INITIAL_ROWS = 1024;
+
+	/// Rows every pass together may still reserve
+	private final AtomicLong rowsLeft;
+	/// Rows this pass reserved
+	private final AtomicLong reserved = new AtomicLong();
+	private volatile boolean collecting;
+
+	Ingest(AtomicLong rowsLeft) {
+		this.rowsLeft = rowsLeft;
+		this.collecting = true;
+	}
+
+	/// A pass that only aggregates, for reads that can't be cached.
+	public static Ingest aggregating() {
+		var ingest = new Ingest(new AtomicLong());
+		ingest.collecting = false;
+		return ingest;
+	}
+
+	/// Makes the visitor of one chunk, it's meant to be passed to `MeasurementScanner.scan` as a method reference.
+	public Chunk chunk() {
+		return new Chunk(this);
+	}
+
+	/// @return whether every row of the pass was kept, it's false once the budget ran out
+	public boolean isComplete() {
+		return collecting;
+	}
+
+	/// Gives back the rows this pass reserved, calling it again does nothing.
+	public void release() {
+		rowsLeft.addAndGet(reserved.getAndSet(0));
+	}
+
+	private boolean reserve(int rows) {
+		if (!collecting) {
+			return false;
+		}
+		if (rowsLeft.addAndGet(-rows) < 0) {
+			rowsLeft.addAndGet(rows);
+			collecting = false;
+			return false;
+		}
+		reserved.addAndGet(rows);
+		return true;
+	}
+
+	/// The rows of a single chunk in file order, each as the chunk's station entry in the high half
+	/// and the temperature in the low half.
+	public static final class Chunk implements RowVisitor {
+		private final Ingest ingest;
+		private final StationTable stations = new StationTable();
+		private long[] rows = new long[0];
+		private int size;
+
+		private Chunk(Ingest ingest) {
+			this.ingest = ingest;
+		}
+
+		@Override
+		public void visit(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+			int entry = stations.add(data, nameOffset, nameLength, temperature);
+			if (rows == null) {
+				return;
+			}
+			if (size == rows.length && !grow()) {
+				rows = null;
+				return;
+			}
+			rows[size++] = (long) entry << 32 | (temperature & 0xFFFFFFFFL);
+		}
+
+		/// Aggregate of every row of the chunk.
+		public StationTable stations() {
+			return stations;
+		}
+
+		long[] rows() {
+			return rows;
+		}
+
+		int size() {
+			return size;
+		}
+
+		private boolean grow() {
+			int more = Math.max(rows.length, INITIAL_ROWS);
+			if (rows.length + more > Integer.MAX_VALUE - 8 || !ingest.reserve(more)) {
+				return false;
+			}
+			rows = Arrays.copyOf(rows, rows.length + more);
+			return true;
+		}
+	}
+}
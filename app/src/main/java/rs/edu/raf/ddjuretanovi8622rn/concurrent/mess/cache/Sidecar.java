@@ -0,0 +1,206 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ReadScheduler;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.RowVisitor;
+
+/// A read only view of a sidecar file, the columnar copy of a single measurement file.
+///
+/// Layout, every number in native byte order:
+/// ```
+/// header      long magic, int version, int letters, long source size, long source mtime (ns), int stations, int 0
+/// letters     per letter: int letter, int rows, long offset of its columns, sorted by letter
+/// dictionary  int name offsets[stations + 1], UTF-8 names, padded to 8 bytes
+/// columns     per letter, `rows` ints each:
+///             temperatures sorted ascending, the ordinal of each of those rows,
+///             temperature by ordinal, station by ordinal
+///```
+/// The ordinal is the position of a row among the rows of its letter in the source file, so walking ordinals in
+/// order gives the rows in the same order a text scan would.
+///
+/// The same layout is either mapped from its file or, for files the watcher just read, held on the heap,
+/// see [ColumnarCache].
+final class Sidecar implements AutoCloseable {
+
+	static final long MAGIC = 0x4D455353434F4C31L; // MESSCOL1
+	static final int VERSION = 1;
+	static final long HEADER_SIZE = 40;
+	static final long LETTER_ENTRY_SIZE = 16;
+	static final int COLUMNS = 4;
+
+	/// Below `rows / SORT_THRESHOLD` matches, the matching ordinals are sorted, above it every row of the letter is
+	/// filtered in ordinal order, which is sequential and doesn't allocate.
+	private static final int SORT_THRESHOLD = 8;
+
+	/// Null for a sidecar held on the heap
+	private final Arena arena;
+	private final MemorySegment data;
+	private final int letters;
+	private final int stations;
+	private final long nameOffsets;
+	private final long names;
+
+	private Sidecar(Arena arena, MemorySegment data) {
+		this.arena = arena;
+		this.data = data;
+		this.letters = data.get(ValueLayout.JAVA_INT, 12);
+		this.stations = data.get(ValueLayout.JAVA_INT, 32);
+		this.nameOffsets = HEADER_SIZE + letters * LETTER_ENTRY_SIZE;
+		this.names = nameOffsets + (stations + 1L) * Integer.BYTES;
+	}
+
+	/// @return the sidecar, or null if it doesn't exist or wasn't built from this version of the source file
+	static Sidecar open(Path file, BasicFileAttributes source) throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		var arena = Arena.ofConfined();
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE) {
+				arena.close();
+				return null;
+			}
+			MemorySegment data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+			if (data.get(ValueLayout.JAVA_LONG, 0) != MAGIC || data.get(ValueLayout.JAVA_INT, 8) != VERSION) {
+				arena.close();
+				return null;
+			}
+			var sidecar = new Sidecar(arena, data);
+			if (!sidecar.isOf(source) || !sidecar.isComplete()) {
+				arena.close();
+				return null;
+			}
+			return sidecar;
+		} catch (IOException | RuntimeException e) {
+			arena.close();
+			throw e;
+		}
+	}
+
+	/// A sidecar that was laid out on the heap by [SidecarBuilder#layout], it's never closed.
+	static Sidecar of(MemorySegment data) {
+		return new Sidecar(null, data);
+	}
+
+	/// @return whether the sidecar was built from this version of its source file
+	boolean isOf(BasicFileAttributes source) {
+		return data.get(ValueLayout.JAVA_LONG, 16) == source.size() && data.get(ValueLayout.JAVA_LONG, 24) == source
+				.lastModifiedTime()
+				.to(TimeUnit.NANOSECONDS);
+	}
+
+	/// The whole layout, to write a sidecar held on the heap to its file.
+	MemorySegment data() {
+		return data;
+	}
+
+	/// Pages the dictionary and the columns of `letter` in through `reader`, so that [#query] finds them in memory
+	/// and doesn't keep other readers of the device waiting while it hands the rows on.
+	void load(char letter, ReadScheduler.Reader reader) throws InterruptedIOException {
+		reader.load(data, 0, names + data.getAtIndex(ValueLayout.JAVA_INT, nameOffsets / Integer.BYTES + stations));
+		int entry = findLetter(letter);
+		if (entry >= 0) {
+			long at = HEADER_SIZE + entry * LETTER_ENTRY_SIZE;
+			long columns = data.get(ValueLayout.JAVA_LONG, at + 8);
+			reader.load(data, columns, columns + (long) data.get(ValueLayout.JAVA_INT, at + 4) * COLUMNS * Integer.BYTES);
+		}
+	}
+
+	/// Visits every row of `letter` with a temperature in `[minTenths, maxTenths]`, in source file order.
+	/// The name passed to the visitor points into the sidecar's dictionary.
+	void query(char letter, int minTenths, int maxTenths, RowVisitor visitor) {
+		int entry = findLetter(letter);
+		if (entry < 0 || minTenths > maxTenths) {
+			return;
+		}
+		long at = HEADER_SIZE + entry * LETTER_ENTRY_SIZE;
+		int rows = data.get(ValueLayout.JAVA_INT, at + 4);
+		long sortedTemperatures = data.get(ValueLayout.JAVA_LONG, at + 8);
+		long sortedOrdinals = sortedTemperatures + (long) rows * Integer.BYTES;
+		long temperatures = sortedOrdinals + (long) rows * Integer.BYTES;
+		long stations = temperatures + (long) rows * Integer.BYTES;
+
+		int from = lowerBound(sortedTemperatures, rows, minTenths);
+		int to = lowerBound(sortedTemperatures, rows, maxTenths + 1L);
+		int matches = to - from;
+		if (matches == 0) {
+			return;
+		}
+		if (matches < rows / SORT_THRESHOLD) {
+			int[] ordinals = new int[matches];
+			MemorySegment.copy(data, ValueLayout.JAVA_INT, sortedOrdinals + (long) from * Integer.BYTES, ordinals, 0, matches);
+			Arrays.sort(ordinals);
+			for (int ordinal : ordinals) {
+				visit(
+						visitor,
+						data.getAtIndex(ValueLayout.JAVA_INT, stations / Integer.BYTES + ordinal),
+						data.getAtIndex(ValueLayout.JAVA_INT, temperatures / Integer.BYTES + ordinal));
+			}
+			return;
+		}
+		for (int ordinal = 0; ordinal < rows; ordinal++) {
+			int temperature = data.getAtIndex(ValueLayout.JAVA_INT, temperatures / Integer.BYTES + ordinal);
+			if (temperature >= minTenths && temperature <= maxTenths) {
+				visit(visitor, data.getAtIndex(ValueLayout.JAVA_INT, stations / Integer.BYTES + ordinal), temperature);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		if (arena != null) {
+			arena.close();
+		}
+	}
+
+	/// Guards against a truncated file, every column has to be inside of it.
+	private boolean isComplete() {
+		for (int entry = 0; entry < letters; entry++) {
+			long at = HEADER_SIZE + entry * LETTER_ENTRY_SIZE;
+			long rows = data.get(ValueLayout.JAVA_INT, at + 4);
+			if (data.get(ValueLayout.JAVA_LONG, at + 8) + rows * COLUMNS * Integer.BYTES > data.byteSize()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int findLetter(char letter) {
+		int low = 0;
+		int high = letters - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int current = data.get(ValueLayout.JAVA_INT, HEADER_SIZE + middle * LETTER_ENTRY_SIZE);
+			if (current < letter) {
+				low = middle + 1;
+			} else if (current > letter) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/// @return the first index in the sorted column whose value is `>= value`
+	private int lowerBound(long column, int rows, long value) {
+		int low = 0;
+		int high = rows;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (data.getAtIndex(ValueLayout.JAVA_INT, column / Integer.BYTES + middle) < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private void visit(RowVisitor visitor, int station, int temperature) {
+		int start = data.getAtIndex(ValueLayout.JAVA_INT, nameOffsets / Integer.BYTES + station);
+		int end = data.getAtIndex(ValueLayout.JAVA_INT, nameOffsets / Integer.BYTES + station + 1);
+		visitor.visit(data, names + start, end - start, temperature);
+	}
+}
@@ -0,0 +1,352 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache;
+
+import module java.base;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementParser;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementScanner;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ReadScheduler;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.RowVisitor;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.StationTable;
+
+/// Writes the [Sidecar] of a measurement file.
+///
+/// The first pass only builds the station dictionary, which also gives the number of rows of every letter,
+/// so the whole file can be laid out up front. The rows are then collected a group of letters at a time,
+/// with as many letters in a group as fit into the row budget, and each group's columns are written as soon as
+/// they're sorted. A small file takes two passes, a file larger than the budget one more pass per extra group.
+/// The budget is shared by every build, a build takes what its file needs of it, at most all of it, before the
+/// second pass and waits until that much is free.
+/// A file the watcher already collected the rows of is laid out on the heap without any pass, see [#layout].
+final class SidecarBuilder {
+
+	private static final Logger log = LoggerFactory.getLogger(SidecarBuilder.class);
+	/// Rough heap usage of a collected row: the two growable columns and the sort key.
+	private static final int BYTES_PER_ROW = 32;
+	/// Rows every build together may collect at once, see [#build]
+	static final int ROW_BUDGET = (int) Math.clamp(Runtime
+			                                               .getRuntime()
+			                                               .maxMemory() / 4 / BYTES_PER_ROW, 1 << 20, Integer.MAX_VALUE - 8);
+
+	private SidecarBuilder() {}
+
+	/// @param rowsLeft the [#ROW_BUDGET] shared by every build
+	/// @return false if the file can't be cached, either because a single letter has more rows than fit in memory,
+	/// or because it changed while the sidecar was being built
+	static boolean build(Path source, Path target, Semaphore rowsLeft) throws IOException {
+		BasicFileAttributes before = Files.readAttributes(source, BasicFileAttributes.class);
+
+		var dictionary = new StationTable(16 * 1024);
+		for (StationTable chunk : MeasurementScanner.scan(source, ReadScheduler.Priority.BACKGROUND, StationTable::new)) {
+			dictionary.addAll(chunk);
+		}
+
+		char[] letters = lettersOf(dictionary);
+		int[] letterOfStation = new int[dictionary.size()];
+		long[] rowsOfLetter = new long[letters.length];
+		for (int e = 0; e < dictionary.size(); e++) {
+			char letter = MeasurementParser.firstChar(dictionary.nameSegment(), dictionary.nameOffset(e), dictionary.nameLength(e));
+			letterOfStation[e] = Arrays.binarySearch(letters, letter);
+			rowsOfLetter[letterOfStation[e]] += dictionary.count(e);
+		}
+
+		long total = 0;
+		for (int i = 0; i < letters.length; i++) {
+			if (rowsOfLetter[i] > ROW_BUDGET) {
+				log.warn("{} has {} rows starting with {}, more than fit in memory, it won't be cached", source, rowsOfLetter[i], letters[i]);
+				return false;
+			}
+			total += rowsOfLetter[i];
+		}
+
+		int budget = (int) Math.min(total, ROW_BUDGET);
+		try {
+			rowsLeft.acquire(budget);
+		} catch (InterruptedException e) {
+			Thread
+					.currentThread()
+					.interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to build the sidecar of " + source);
+		}
+		try (var channel = FileChannel.open(
+				target,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE); var arena = Arena.ofConfined()) {
+			long[] columnOffsets = new long[letters.length];
+			long length = layOut(letters, rowsOfLetter, dictionary, columnOffsets);
+
+			MemorySegment out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length, arena);
+			writeHeader(out, before, letters, rowsOfLetter, columnOffsets, dictionary);
+
+			int first = 0;
+			while (first < letters.length) {
+				int last = first;
+				long rows = rowsOfLetter[first];
+				while (last + 1 < letters.length && rows + rowsOfLetter[last + 1] <= budget) {
+					rows += rowsOfLetter[++last];
+				}
+				if (!writeGroup(source, out, dictionary, letterOfStation, rowsOfLetter, columnOffsets, first, last)) {
+					return false;
+				}
+				first = last + 1;
+			}
+
+			BasicFileAttributes after = Files.readAttributes(source, BasicFileAttributes.class);
+			if (after.size() != before.size() || !after
+					.lastModifiedTime()
+					.equals(before.lastModifiedTime())) {
+				return false;
+			}
+			out.force();
+			return true;
+		} finally {
+			rowsLeft.release(budget);
+		}
+	}
+
+	/// Lays out the sidecar of a file on the heap from the rows a pass of the watcher collected.
+	/// The chunks' stations are merged into the dictionary, and every row is put into the columns of its letter
+	/// in chunk order, which is file order.
+	///
+	/// @return null if the file has too many rows for a heap segment
+	static Sidecar layout(BasicFileAttributes source, List<Ingest.Chunk> chunks) {
+		var dictionary = new StationTable(16 * 1024);
+		int[][] stationOf = new int[chunks.size()][];
+		for (int c = 0; c < chunks.size(); c++) {
+			StationTable stations = chunks
+					.get(c)
+					.stations();
+			stationOf[c] = new int[stations.size()];
+			for (int e = 0; e < stations.size(); e++) {
+				stationOf[c][e] = dictionary.entryOf(stations.nameSegment(), stations.nameOffset(e), stations.nameLength(e));
+			}
+		}
+
+		char[] letters = lettersOf(dictionary);
+		int[] letterOfStation = new int[dictionary.size()];
+		for (int e = 0; e < dictionary.size(); e++) {
+			char letter = MeasurementParser.firstChar(dictionary.nameSegment(), dictionary.nameOffset(e), dictionary.nameLength(e));
+			letterOfStation[e] = Arrays.binarySearch(letters, letter);
+		}
+		long[] rowsOfLetter = new long[letters.length];
+		for (int c = 0; c < chunks.size(); c++) {
+			StationTable stations = chunks
+					.get(c)
+					.stations();
+			for (int e = 0; e < stations.size(); e++) {
+				rowsOfLetter[letterOfStation[stationOf[c][e]]] += stations.count(e);
+			}
+		}
+		for (long rows : rowsOfLetter) {
+			if (rows > Integer.MAX_VALUE - 8) {
+				return null;
+			}
+		}
+
+		long[] columnOffsets = new long[letters.length];
+		long length = layOut(letters, rowsOfLetter, dictionary, columnOffsets);
+		if (length / Long.BYTES > Integer.MAX_VALUE - 8) {
+			return null;
+		}
+		// Backed by longs, so that the header's longs are aligned
+		MemorySegment out = MemorySegment.ofArray(new long[(int) (length / Long.BYTES)]);
+		writeHeader(out, source, letters, rowsOfLetter, columnOffsets, dictionary);
+
+		int[] ordinals = new int[letters.length];
+		for (int c = 0; c < chunks.size(); c++) {
+			Ingest.Chunk chunk = chunks.get(c);
+			long[] rows = chunk.rows();
+			for (int i = 0; i < chunk.size(); i++) {
+				int station = stationOf[c][(int) (rows[i] >>> 32)];
+				int letter = letterOfStation[station];
+				long temperatures = columnOffsets[letter] + 2 * rowsOfLetter[letter] * Integer.BYTES;
+				long stations = temperatures + rowsOfLetter[letter] * Integer.BYTES;
+				out.setAtIndex(ValueLayout.JAVA_INT, temperatures / Integer.BYTES + ordinals[letter], (int) rows[i]);
+				out.setAtIndex(ValueLayout.JAVA_INT, stations / Integer.BYTES + ordinals[letter], station);
+				ordinals[letter]++;
+			}
+		}
+		for (int letter = 0; letter < letters.length; letter++) {
+			sortColumn(out, columnOffsets[letter], (int) rowsOfLetter[letter]);
+		}
+		return Sidecar.of(out);
+	}
+
+	/// Sets where the columns of every letter start.
+	///
+	/// @return the length of the whole sidecar
+	private static long layOut(char[] letters, long[] rowsOfLetter, StationTable dictionary, long[] columnOffsets) {
+		long namesStart = Sidecar.HEADER_SIZE + letters.length * Sidecar.LETTER_ENTRY_SIZE + (dictionary.size() + 1L) * Integer.BYTES;
+		long namesLength = 0;
+		for (int e = 0; e < dictionary.size(); e++) {
+			namesLength += dictionary.nameLength(e);
+		}
+		long offset = (namesStart + namesLength + 7) & ~7L;
+		for (int i = 0; i < letters.length; i++) {
+			columnOffsets[i] = offset;
+			offset += rowsOfLetter[i] * Sidecar.COLUMNS * Integer.BYTES;
+		}
+		return offset;
+	}
+
+	private static char[] lettersOf(StationTable dictionary) {
+		var letters = new BitSet(Character.MAX_VALUE + 1);
+		for (int e = 0; e < dictionary.size(); e++) {
+			letters.set(MeasurementParser.firstChar(dictionary.nameSegment(), dictionary.nameOffset(e), dictionary.nameLength(e)));
+		}
+		char[] result = new char[letters.cardinality()];
+		int i = 0;
+		for (int letter = letters.nextSetBit(0); letter >= 0; letter = letters.nextSetBit(letter + 1)) {
+			result[i++] = (char) letter;
+		}
+		return result;
+	}
+
+	private static void writeHeader(
+			MemorySegment out,
+			BasicFileAttributes source,
+			char[] letters,
+			long[] rowsOfLetter,
+			long[] columnOffsets,
+			StationTable dictionary) {
+		out.set(ValueLayout.JAVA_LONG, 0, Sidecar.MAGIC);
+		out.set(ValueLayout.JAVA_INT, 8, Sidecar.VERSION);
+		out.set(ValueLayout.JAVA_INT, 12, letters.length);
+		out.set(ValueLayout.JAVA_LONG, 16, source.size());
+		out.set(ValueLayout.JAVA_LONG, 24, source
+				.lastModifiedTime()
+				.to(TimeUnit.NANOSECONDS));
+		out.set(ValueLayout.JAVA_INT, 32, dictionary.size());
+		out.set(ValueLayout.JAVA_INT, 36, 0);
+		for (int i = 0; i < letters.length; i++) {
+			long at = Sidecar.HEADER_SIZE + i * Sidecar.LETTER_ENTRY_SIZE;
+			out.set(ValueLayout.JAVA_INT, at, letters[i]);
+			out.set(ValueLayout.JAVA_INT, at + 4, (int) rowsOfLetter[i]);
+			out.set(ValueLayout.JAVA_LONG, at + 8, columnOffsets[i]);
+		}
+		long nameOffsets = Sidecar.HEADER_SIZE + letters.length * Sidecar.LETTER_ENTRY_SIZE;
+		long names = nameOffsets + (dictionary.size() + 1L) * Integer.BYTES;
+		int nameOffset = 0;
+		for (int e = 0; e < dictionary.size(); e++) {
+			out.setAtIndex(ValueLayout.JAVA_INT, nameOffsets / Integer.BYTES + e, nameOffset);
+			MemorySegment.copy(dictionary.nameSegment(), dictionary.nameOffset(e), out, names + nameOffset, dictionary.nameLength(e));
+			nameOffset += dictionary.nameLength(e);
+		}
+		out.setAtIndex(ValueLayout.JAVA_INT, nameOffsets / Integer.BYTES + dictionary.size(), nameOffset);
+	}
+
+	/// Collects and writes the columns of the letters `first..last`.
+	///
+	/// @return false if the file no longer matches the dictionary
+	private static boolean writeGroup(
+			Path source,
+			MemorySegment out,
+			StationTable dictionary,
+			int[] letterOfStation,
+			long[] rowsOfLetter,
+			long[] columnOffsets,
+			int first,
+			int last) throws IOException {
+		List<GroupCollector> chunks = MeasurementScanner.scan(
+				source,
+				ReadScheduler.Priority.BACKGROUND,
+				() -> new GroupCollector(dictionary, letterOfStation, first, last));
+		for (int letter = first; letter <= last; letter++) {
+			int slot = letter - first;
+			int rows = (int) rowsOfLetter[letter];
+			long collected = 0;
+			for (GroupCollector chunk : chunks) {
+				if (chunk.unknownStation) {
+					return false;
+				}
+				collected += chunk.temperatures[slot].size;
+			}
+			if (collected != rows) {
+				return false;
+			}
+
+			long temperatures = columnOffsets[letter] + 2L * rows * Integer.BYTES;
+			long stations = temperatures + (long) rows * Integer.BYTES;
+			int ordinal = 0;
+			for (GroupCollector chunk : chunks) {
+				IntList chunkTemperatures = chunk.temperatures[slot];
+				IntList chunkStations = chunk.stations[slot];
+				MemorySegment.copy(chunkTemperatures.values, 0, out, ValueLayout.JAVA_INT, temperatures + (long) ordinal * Integer.BYTES, chunkTemperatures.size);
+				MemorySegment.copy(chunkStations.values, 0, out, ValueLayout.JAVA_INT, stations + (long) ordinal * Integer.BYTES, chunkStations.size);
+				ordinal += chunkTemperatures.size;
+			}
+			sortColumn(out, columnOffsets[letter], rows);
+		}
+		return true;
+	}
+
+	/// Writes the sorted temperatures of a letter and the ordinal of each of them, from its temperature column.
+	private static void sortColumn(MemorySegment out, long columns, int rows) {
+		long sortedTemperatures = columns;
+		long sortedOrdinals = sortedTemperatures + (long) rows * Integer.BYTES;
+		long temperatures = sortedOrdinals + (long) rows * Integer.BYTES;
+		// Temperature in the high half and ordinal in the low half, sorting by the key sorts by temperature
+		// and keeps rows with the same temperature in file order
+		long[] keys = new long[rows];
+		for (int ordinal = 0; ordinal < rows; ordinal++) {
+			keys[ordinal] = (long) out.getAtIndex(ValueLayout.JAVA_INT, temperatures / Integer.BYTES + ordinal) << 32 | ordinal;
+		}
+		Arrays.parallelSort(keys);
+		for (int i = 0; i < rows; i++) {
+			out.setAtIndex(ValueLayout.JAVA_INT, sortedTemperatures / Integer.BYTES + i, (int) (keys[i] >> 32));
+			out.setAtIndex(ValueLayout.JAVA_INT, sortedOrdinals / Integer.BYTES + i, (int) keys[i]);
+		}
+	}
+
+	/// Collects the rows of a group of letters in a single chunk, in file order.
+	private static final class GroupCollector implements RowVisitor {
+		private final StationTable dictionary;
+		private final int[] letterOfStation;
+		private final int first;
+		private final IntList[] temperatures;
+		private final IntList[] stations;
+		private boolean unknownStation;
+
+		GroupCollector(StationTable dictionary, int[] letterOfStation, int first, int last) {
+			this.dictionary = dictionary;
+			this.letterOfStation = letterOfStation;
+			this.first = first;
+			this.temperatures = new IntList[last - first + 1];
+			this.stations = new IntList[last - first + 1];
+			for (int i = 0; i < temperatures.length; i++) {
+				temperatures[i] = new IntList();
+				stations[i] = new IntList();
+			}
+		}
+
+		@Override
+		public void visit(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+			// The dictionary isn't modified anymore, so it can be read from every chunk at once
+			int station = dictionary.find(data, nameOffset, nameLength);
+			if (station < 0) {
+				unknownStation = true;
+				return;
+			}
+			int slot = letterOfStation[station] - first;
+			if (slot < 0 || slot >= temperatures.length) {
+				return;
+			}
+			temperatures[slot].add(temperature);
+			stations[slot].add(station);
+		}
+	}
+
+	private static final class IntList {
+		private int[] values = new int[64];
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, values.length * 2);
+			}
+			values[size++] = value;
+		}
+	}
+}
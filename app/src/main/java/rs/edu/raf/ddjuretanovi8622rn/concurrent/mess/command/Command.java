@@ -6,7 +6,12 @@ public sealed interface Command extends Message {
 
 	record Stop(boolean saveJobs) implements Command {}
 
-	record Scan(double min, double max, char letter, String outputFilename, String jobName) implements Command {
+	///  Jobs with a higher `priority` are started first when more jobs are waiting than are allowed to run,
+	///  jobs with the same priority in the order they were submitted.
+	record Scan(double min, double max, char letter, String outputFilename, String jobName, int priority)
+			implements Command {
+		public static final int DEFAULT_PRIORITY = 0;
+
 		public Scan {
 			if (outputFilename == null || outputFilename.isBlank()) {
 				throw new IllegalArgumentException("Output filename cannot be null or blank");
@@ -14,10 +19,26 @@ public sealed interface Command extends Message {
 			if (jobName == null || jobName.isBlank()) {
 				throw new IllegalArgumentException("Job name cannot be null or blank");
 			}
+			if (Double.isNaN(min) || Double.isNaN(max)) {
+				throw new IllegalArgumentException("Min and max have to be numbers");
+			}
 			if (min > max) {
 				throw new IllegalArgumentException("Min cannot be greater than max");
 			}
 		}
+
+		public Scan(double min, double max, char letter, String outputFilename, String jobName) {
+			this(min, max, letter, outputFilename, jobName, DEFAULT_PRIORITY);
+		}
+
+		///  The one place a SCAN is validated, both the CLI and the HTTP API create it here once they have
+		///  read its arguments. The letter is checked here, everything else by the constructor.
+		public static Scan of(double min, double max, String letter, String outputFilename, String jobName, int priority) {
+			if (letter == null || letter.length() != 1) {
+				throw new IllegalArgumentException("Letter must be a single character.");
+			}
+			return new Scan(min, max, letter.charAt(0), outputFilename, jobName, priority);
+		}
 	}
 
 	///  A null jobname is treated as a wildcard, meaning all jobs will be returned.
@@ -26,4 +47,7 @@ public sealed interface Command extends Message {
 	record Map() implements Command {}
 
 	record ExportMap() implements Command {}
+
+	///  Per station min/mean/max, printed or, with `export` set, written to a CSV file.
+	record Stations(boolean export) implements Command {}
 }
@@ -8,27 +8,19 @@ import org.slf4j.LoggerFactory;
 public final class CommandParser {
 
 	private static final Logger log = LoggerFactory.getLogger(CommandParser.class);
-	private static final Map<String, String> SCAN_FLAG_TO_PARAM = Map.of(
-			"--min",
-			"min",
-			"-m",
-			"min",
-			"--max",
-			"max",
-			"-M",
-			"max",
-			"--letter",
-			"letter",
-			"-l",
-			"letter",
-			"--output",
-			"output",
-			"-o",
-			"output",
-			"--job",
-			"job",
-			"-j",
-			"job");
+	private static final Map<String, String> SCAN_FLAG_TO_PARAM = Map.ofEntries(
+			Map.entry("--min", "min"),
+			Map.entry("-m", "min"),
+			Map.entry("--max", "max"),
+			Map.entry("-M", "max"),
+			Map.entry("--letter", "letter"),
+			Map.entry("-l", "letter"),
+			Map.entry("--output", "output"),
+			Map.entry("-o", "output"),
+			Map.entry("--job", "job"),
+			Map.entry("-j", "job"),
+			Map.entry("--priority", "priority"),
+			Map.entry("-p", "priority"));
 
 	private CommandParser() {}
 
@@ -70,6 +62,18 @@ public final class CommandParser {
 			case "EXPORTMAP" -> new Command.ExportMap();
 			case "MAP" -> new Command.Map();
 			case "STATUS" -> parseStatus(parts);
+			case "STATIONS" -> {
+				if (parts.length > 2) {
+					throw new IllegalArgumentException("Too many arguments for STATIONS command");
+				}
+				if (parts.length == 1) {
+					yield new Command.Stations(false);
+				}
+				if (parts[1].equalsIgnoreCase("-e") || parts[1].equalsIgnoreCase("--export")) {
+					yield new Command.Stations(true);
+				}
+				throw new IllegalArgumentException("Invalid argument for STATIONS command: " + parts[1]);
+			}
 			default -> {
 				throw new IllegalArgumentException("Unknown command: " + parts[0]);
 			}
@@ -122,17 +126,16 @@ public final class CommandParser {
 		} catch (NumberFormatException e) {
 			throw new IllegalArgumentException("Invalid number format for min or max.");
 		}
-		if (min > max) {
-			throw new IllegalArgumentException("Min value must not exceed max value.");
-		}
-		String letterStr = options.get("letter");
-		if (letterStr.length() != 1) {
-			throw new IllegalArgumentException("Letter must be a single character.");
+
+		int priority = Command.Scan.DEFAULT_PRIORITY;
+		if (options.containsKey("priority")) {
+			try {
+				priority = Integer.parseInt(options.get("priority"));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Priority must be a whole number.");
+			}
 		}
-		char letter = letterStr.charAt(0);
-		String output = options.get("output");
-		String job = options.get("job");
 
-		return new Command.Scan(min, max, letter, output, job);
+		return Command.Scan.of(min, max, options.get("letter"), options.get("output"), options.get("job"), priority);
 	}
 }
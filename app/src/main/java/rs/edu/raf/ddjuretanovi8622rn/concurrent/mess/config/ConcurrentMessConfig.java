@@ -1,3 +1,40 @@
 package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.config;
 
-public record ConcurrentMessConfig(String watchDirectory) {}
+import module java.base;
+
+/// Everything but the watch directories is optional, see `JobSettings`, `WatcherSettings`
+/// and `ReadSettings` for the defaults.
+///
+/// @param watchDirectory                  the directory measurement files are taken from, subdirectories included
+/// @param watchDirectories                more directories like `watchDirectory`, either of them can be left out
+/// @param cacheDirectory                  where the scan sidecars are kept, has to be outside the watch directory
+/// @param cacheMemoryMb                   how much memory the sidecars of files the watcher just read may take up
+/// @param scanBatchWindowMillis           how long scans of the same file wait for each other to share a single read
+/// @param maxTasksPerJob                  how many files a single job processes at once
+/// @param maxRunningJobs                  how many jobs run at once, the rest wait in the queue
+/// @param jobMemoryBudgetMb               how much memory the running jobs may need together
+/// @param jobFileBudget                   how many files the running jobs may read at once together
+/// @param httpPort                        port of the local control API, it isn't started if this is missing
+/// @param watcherSnapshot                 where the watcher saves what it read, so a restart only reads what changed since
+/// @param watcherSnapshotIntervalSeconds  how often the watcher saves it while running
+/// @param watcherQuietPeriodMillis        how long a file has to stop changing before the watcher reads it
+/// @param watcherReconcileIntervalSeconds how often the watcher lists its directory to catch changes it missed
+/// @param ioReadersPerDevice              how many threads read from the same storage device at once
+/// @param ioReadaheadMb                   how much of a file is read at once
+public record ConcurrentMessConfig(
+		String watchDirectory,
+		List<String> watchDirectories,
+		String cacheDirectory,
+		Integer cacheMemoryMb,
+		Integer scanBatchWindowMillis,
+		Integer maxTasksPerJob,
+		Integer maxRunningJobs,
+		Integer jobMemoryBudgetMb,
+		Integer jobFileBudget,
+		Integer httpPort,
+		String watcherSnapshot,
+		Integer watcherSnapshotIntervalSeconds,
+		Integer watcherQuietPeriodMillis,
+		Integer watcherReconcileIntervalSeconds,
+		Integer ioReadersPerDevice,
+		Integer ioReadaheadMb) {}
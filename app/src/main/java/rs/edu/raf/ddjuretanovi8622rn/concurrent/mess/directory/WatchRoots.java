@@ -0,0 +1,115 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.config.ConcurrentMessConfig;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.InputFormat;
+
+/// The directories measurement files are taken from, including every subdirectory below them.
+///
+/// Roots are absolute and normalized, and a root inside another root is dropped, so no file is found twice.
+/// Walks are streamed: every file is handed over as it's found, together with the attributes the walk already read.
+public record WatchRoots(List<Path> directories) {
+
+	public WatchRoots {
+		var roots = new ArrayList<Path>();
+		for (Path directory : directories) {
+			Path root = directory
+					.toAbsolutePath()
+					.normalize();
+			if (roots
+					.stream()
+					.anyMatch(root::startsWith)) {
+				continue;
+			}
+			roots.removeIf(other -> other.startsWith(root));
+			roots.add(root);
+		}
+		if (roots.isEmpty()) {
+			throw new IllegalArgumentException("There has to be at least one watch directory");
+		}
+		directories = List.copyOf(roots);
+	}
+
+	public static WatchRoots of(Path... directories) {
+		return new WatchRoots(List.of(directories));
+	}
+
+	/// `watch_directory` followed by every entry of `watch_directories`, either of them can be left out.
+	public static WatchRoots of(ConcurrentMessConfig config) {
+		var directories = new ArrayList<Path>();
+		if (config.watchDirectory() != null) {
+			directories.add(Path.of(config.watchDirectory()));
+		}
+		if (config.watchDirectories() != null) {
+			for (String directory : config.watchDirectories()) {
+				directories.add(Path.of(directory));
+			}
+		}
+		return new WatchRoots(directories);
+	}
+
+	/// @return whether `file` is below one of the roots
+	public boolean contains(Path file) {
+		return directories
+				.stream()
+				.anyMatch(file::startsWith);
+	}
+
+	/// Walks every root, see [#walk(Path, Visitor)].
+	public void walk(Visitor visitor) throws IOException {
+		for (Path root : directories) {
+			walk(root, visitor);
+		}
+	}
+
+	/// Every measurement file below the roots.
+	public List<Path> files() throws IOException {
+		var files = new ArrayList<Path>();
+		walk((file, _) -> files.add(file));
+		return files;
+	}
+
+	/// Visits `start` and every directory below it, and every measurement file in them, without following links.
+	/// A file or directory that vanishes while it's walked is skipped.
+	public static void walk(Path start, Visitor visitor) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+				visitor.directory(directory);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				if (attributes.isRegularFile() && InputFormat.isMeasurementFile(file)) {
+					visitor.file(file, attributes);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+				if (e instanceof NoSuchFileException) {
+					return FileVisitResult.CONTINUE;
+				}
+				throw e;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+				if (e != null && !(e instanceof NoSuchFileException)) {
+					throw e;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	public interface Visitor {
+
+		/// Called before anything inside `directory` is visited.
+		default void directory(Path directory) throws IOException {}
+
+		void file(Path file, BasicFileAttributes attributes) throws IOException;
+	}
+}
@@ -4,20 +4,65 @@ import module java.base;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.AggregateData;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache.ColumnarCache;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache.Ingest;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.WatchRoots;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr.FileParseEvent;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr.WatchEventHandlingEvent;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.InputFormat;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementParser;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementScanner;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ReadScheduler;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.RowVisitor;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.StationTable;
 
 public class DirectoryWatcher {
 	private static final Logger log = LoggerFactory.getLogger(DirectoryWatcher.class);
+	/// How much of the start of a file is checksummed to notice that it was rewritten.
+	private static final int HEAD_CHECKSUM_LENGTH = 4096;
+	/// A last line without a newline that is longer than this is not counted until it's terminated.
+	private static final int MAX_PENDING_LINE_LENGTH = 64 * 1024;
+	/// How many files are read at once, every file is parsed in parallel chunks on top of that
+	private static final int PARALLEL_FILES = Runtime
+			.getRuntime()
+			.availableProcessors();
 
 	private final ExecutorService executorService;
-	private final Path watchDirectory;
-	private final AtomicReference<Map<Character, AggregateData>> aggregateMap = new AtomicReference<>(new HashMap<>());
-	private final Map<Path, Instant> lastModifiedTimes = new ConcurrentHashMap<>();
+	private final WatchRoots roots;
+	/// Every directory below the roots that is registered with the watch service
+	private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+	private final Semaphore readPermits = new Semaphore(PARALLEL_FILES);
+	private final LetterAccumulator aggregate = new LetterAccumulator();
+	private final StationStatistics stations = new StationStatistics();
+	private final Map<Path, FileState> fileStates = new ConcurrentHashMap<>();
+	/// Gets the rows of every file that is read whole, so scans don't read it again, null to only aggregate
+	private final ColumnarCache cache;
+	/// Where the state is saved between runs, null to always start from scratch
+	private final Path snapshotFile;
+	private final Duration snapshotInterval;
+	private final Duration reconcileInterval;
+	private final WriteDebouncer debouncer;
+	/// Set while a reconciliation is waiting to start, further requests until then are covered by it
+	private final AtomicBoolean reconcileRequested = new AtomicBoolean();
+	/// Counts every applied delta, a snapshot is only written if it changed since the last one
+	private final AtomicLong changes = new AtomicLong();
+	private final Lock snapshotLock = new ReentrantLock();
+	private long savedChanges;
 	private WatchService watchService;
-	private boolean isRunning = false;
+	private volatile boolean isRunning = false;
 
 	public DirectoryWatcher(Path watchDirectory) {
-		this.watchDirectory = watchDirectory;
+		this(WatchRoots.of(watchDirectory), WatcherSettings.defaults(), null);
+	}
+
+	public DirectoryWatcher(WatchRoots roots, WatcherSettings settings, ColumnarCache cache) {
+		this.roots = roots;
+		this.cache = cache;
+		this.snapshotFile = settings.snapshotFile();
+		this.snapshotInterval = settings.snapshotInterval();
+		this.reconcileInterval = settings.reconcileInterval();
 		this.executorService = Executors.newVirtualThreadPerTaskExecutor();
+		this.debouncer = new WriteDebouncer(settings.quietPeriod(), executorService, this::handle);
 	}
 
 	public void start() {
@@ -27,180 +72,695 @@ public class DirectoryWatcher {
 		}
 
 		try {
-			Files.createDirectories(watchDirectory);
+			for (Path root : roots.directories()) {
+				Files.createDirectories(root);
+			}
 
-			// Initial scan of all files to build the aggregate map
+			restoreSnapshot();
+
+			// Directories are registered by the initial scan, so that nothing that changes while it runs is missed
+			watchService = FileSystems
+					.getDefault().newWatchService();
+
+			// Initial scan of all files to build the aggregate map, or of the ones that changed since the snapshot
 			processAllFiles();
 
+			// Set before the loops are submitted, they run only while it's true
+			isRunning = true;
 			// Start watching for changes
 			startWatchService();
-
-			isRunning = true;
-			log.info("Directory watcher started for: {}", watchDirectory);
+			startSnapshots();
+			startReconciliation();
+			log.info("Directory watcher started for: {}", roots.directories());
 		} catch (IOException e) {
+			isRunning = false;
 			log.error("Failed to start directory watcher: {}", e.getMessage());
 		}
 	}
 
+	/// Stops watching and saves the snapshot.
+	public void stop() {
+		isRunning = false;
+		executorService.shutdownNow();
+		try {
+			executorService.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread
+					.currentThread()
+					.interrupt();
+		}
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				log.warn("Could not close the watch service: {}", e.getMessage());
+			}
+		}
+		saveSnapshot();
+	}
+
 	public Map<Character, AggregateData> getAggregateMap() {
-		return new HashMap<>(aggregateMap.get());
+		return aggregate.snapshot();
+	}
+
+	/// Min/mean/max of every station in the watch directory, sorted by name.
+	public List<StationSummary> getStationSummaries() {
+		return stations.summaries(() -> {
+			var contributions = new ArrayList<StationTable>();
+			for (FileState state : fileStates.values()) {
+				contributions.add(state.contribution());
+				contributions.add(state.pending());
+			}
+			return contributions;
+		});
 	}
 
+	/// Events only mark a file as changed, the [WriteDebouncer] calls [#handle] once it stopped changing.
 	private void startWatchService() {
 		executorService.submit(() -> {
-			try {
-				watchService = FileSystems
-						.getDefault().newWatchService();
-				watchDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
-				                        StandardWatchEventKinds.ENTRY_MODIFY);
-
-				while (isRunning) {
-					WatchKey key;
-					try {
-						key = watchService.take(); // Wait for events
-					} catch (InterruptedException e) {
-						Thread.currentThread().interrupt();
-						break;
-					}
+			debouncer.run();
+			return null;
+		});
+		executorService.submit(() -> {
+			while (isRunning) {
+				WatchKey key;
+				try {
+					key = watchService.take(); // Wait for events
+				} catch (InterruptedException | ClosedWatchServiceException e) {
+					break;
+				}
+				Path directory = (Path) key.watchable();
 
-					for (WatchEvent<?> event : key.pollEvents()) {
-						WatchEvent.Kind<?> kind = event.kind();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					WatchEvent.Kind<?> kind = event.kind();
 
-						if (kind == StandardWatchEventKinds.OVERFLOW) {
-							continue;
-						}
+					if (kind == StandardWatchEventKinds.OVERFLOW) {
+						log.warn("Watch events of {} were lost, reconciling", directory);
+						requestReconcile();
+						continue;
+					}
 
-						@SuppressWarnings("unchecked")
-						WatchEvent<Path> pathEvent = (WatchEvent<Path>) event;
-						Path filename = pathEvent.context();
-						Path filePath = watchDirectory.resolve(filename);
+					@SuppressWarnings("unchecked")
+					WatchEvent<Path> pathEvent = (WatchEvent<Path>) event;
+					Path filePath = directory.resolve(pathEvent.context());
+					if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(
+							filePath,
+							LinkOption.NOFOLLOW_LINKS)) {
+						watchNewDirectory(filePath);
+					} else if (InputFormat.isMeasurementFile(filePath)) {
+						debouncer.touch(filePath, kind);
+					} else if (kind == StandardWatchEventKinds.ENTRY_DELETE && watchedDirectories.containsKey(filePath)) {
+						unwatchDirectory(filePath);
+					}
+				}
 
-						if (!Files.isRegularFile(filePath)) {
-							continue;
-						}
+				if (!key.reset()) {
+					// The directory itself is gone
+					unwatchDirectory(directory);
+				}
+			}
+		});
+	}
 
-						String fileExtension = getFileExtension(filePath);
-						if (!".txt".equals(fileExtension) && !".csv".equals(fileExtension)) {
-							continue;
-						}
+	private void register(Path directory) throws IOException {
+		watchedDirectories.put(
+				directory,
+				directory.register(
+						watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY,
+						StandardWatchEventKinds.ENTRY_DELETE));
+	}
 
-						Instant lastModified = Files.getLastModifiedTime(filePath).toInstant();
-						Instant previousModified = lastModifiedTimes.get(filePath);
+	/// Registers a directory that was created or moved in, and everything below it.
+	/// Files that are already in it are queued, they can have been written before it was registered.
+	private void watchNewDirectory(Path directory) {
+		try {
+			WatchRoots.walk(directory, new WatchRoots.Visitor() {
+				@Override
+				public void directory(Path directory) throws IOException {
+					register(directory);
+				}
 
-						if (previousModified == null || !previousModified.equals(lastModified)) {
-							log.info("File changed: {}", filePath);
-							lastModifiedTimes.put(filePath, lastModified);
+				@Override
+				public void file(Path file, BasicFileAttributes attributes) {
+					debouncer.touch(file, StandardWatchEventKinds.ENTRY_CREATE);
+				}
+			});
+			log.info("Watching new directory {}", directory);
+		} catch (IOException e) {
+			log.warn("Could not watch new directory {}, reconciling: {}", directory, e.getMessage());
+			requestReconcile();
+		}
+	}
 
-							// Process the changed file
-							processFile(filePath);
-						}
+	/// Stops watching a directory that was deleted or moved away and everything below it,
+	/// the files that went with it are taken out by a reconciliation.
+	private void unwatchDirectory(Path directory) {
+		watchedDirectories
+				.entrySet()
+				.removeIf(watched -> {
+					if (!watched
+							.getKey()
+							.startsWith(directory)) {
+						return false;
 					}
+					watched
+							.getValue()
+							.cancel();
+					return true;
+				});
+		requestReconcile();
+	}
 
-					boolean valid = key.reset();
-					if (!valid) {
-						break;
-					}
+	private void handle(WriteDebouncer.Settled settled) {
+		var handling = new WatchEventHandlingEvent();
+		handling.begin();
+		String outcome = handle(settled.file());
+		handling.end();
+		if (handling.shouldCommit()) {
+			handling.kind = settled
+					.lastKind()
+					.name();
+			handling.path = settled
+					.file()
+					.toString();
+			handling.events = settled.events();
+			handling.outcome = outcome;
+			handling.commit();
+		}
+	}
+
+	/// Brings the aggregates up to date with a file that settled, whatever its events were.
+	///
+	/// @return what was done about the file, for [WatchEventHandlingEvent]
+	private String handle(Path filePath) {
+		if (Files.notExists(filePath)) {
+			removeFile(filePath);
+			return "removed";
+		}
+
+		if (!Files.isRegularFile(filePath)) {
+			return "ignored";
+		}
+
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+		} catch (IOException e) {
+			log.warn("Could not read attributes of {}: {}", filePath, e.getMessage());
+			return "failed";
+		}
+		FileState previous = fileStates.get(filePath);
+
+		if (previous == null || previous.isOutdated(attributes)) {
+			log.info("File changed: {}", filePath);
+
+			// Process the changed file, waiting while too many others are read
+			readPermits.acquireUninterruptibly();
+			try {
+				processFile(filePath);
+			} finally {
+				readPermits.release();
+			}
+			return "processed";
+		}
+		return "unchanged";
+	}
+
+	private void startReconciliation() {
+		executorService.submit(() -> {
+			while (isRunning) {
+				try {
+					Thread.sleep(reconcileInterval);
+				} catch (InterruptedException e) {
+					return;
 				}
-			} catch (IOException e) {
-				log.error("Error in watch service: {}", e.getMessage());
+				requestReconcile();
 			}
 		});
 	}
 
-	private String getFileExtension(Path path) {
-		String name = path.toString();
-		int lastIndexOf = name.lastIndexOf(".");
-		return lastIndexOf == -1 ? "" : name.substring(lastIndexOf).toLowerCase();
+	private void requestReconcile() {
+		if (reconcileRequested.compareAndSet(false, true)) {
+			executorService.submit(() -> {
+				// Cleared before listing, a request that comes in during the listing may have lost events it doesn't see
+				reconcileRequested.set(false);
+				reconcile();
+			});
+		}
 	}
 
-	private void processAllFiles() {
-		List<Path> files = getFilesToProcess();
-		if (files.isEmpty()) {
-			log.info("No files found in watch directory");
+	/// Walks the roots and queues every file whose fileKey, size or modification time differ from what
+	/// the watcher last read, and every file it knows that is gone. Unchanged files aren't read again.
+	/// Directories whose creation was missed are registered on the way.
+	private void reconcile() {
+		long start = System.nanoTime();
+		var listed = new HashSet<Path>();
+		var queued = new AtomicInteger();
+		try {
+			roots.walk(new WatchRoots.Visitor() {
+				@Override
+				public void directory(Path directory) throws IOException {
+					if (!watchedDirectories.containsKey(directory)) {
+						register(directory);
+					}
+				}
+
+				@Override
+				public void file(Path file, BasicFileAttributes attributes) {
+					listed.add(file);
+					FileState state = fileStates.get(file);
+					if (state == null || state.isOutdated(attributes)) {
+						debouncer.touch(file, StandardWatchEventKinds.OVERFLOW);
+						queued.incrementAndGet();
+					}
+				}
+			});
+		} catch (IOException e) {
+			log.error("Could not list {} to reconcile them: {}", roots.directories(), e.getMessage());
 			return;
 		}
+		for (Path known : fileStates.keySet()) {
+			if (!listed.contains(known)) {
+				debouncer.touch(known, StandardWatchEventKinds.ENTRY_DELETE);
+				queued.incrementAndGet();
+			}
+		}
+		log.info(
+				"Reconciled {} files in {}ms, {} changed",
+				listed.size(),
+				(System.nanoTime() - start) / 1_000_000,
+				queued.get());
+	}
 
-		log.info("Processing {} files for initial aggregate map", files.size());
-		Map<Character, AggregateData> newMap = new ConcurrentHashMap<>();
-		CountDownLatch latch = new CountDownLatch(files.size());
+	/// Registers every directory and reads every file that isn't known yet or changed since the snapshot,
+	/// while the roots are walked. The walk waits whenever [#PARALLEL_FILES] files are being read,
+	/// so neither the listing nor the number of threads grows with the number of files.
+	private void processAllFiles() throws IOException {
+		long start = System.nanoTime();
+		var files = new AtomicInteger();
+		var outdated = new AtomicInteger();
+		roots.walk(new WatchRoots.Visitor() {
+			@Override
+			public void directory(Path directory) throws IOException {
+				register(directory);
+			}
 
-		for (Path file : files) {
-			executorService.submit(() -> {
-				try {
-					processFileForAggregateMap(file, newMap);
-					Instant lastModified = Files.getLastModifiedTime(file).toInstant();
-					lastModifiedTimes.put(file, lastModified);
-				} catch (IOException e) {
-					log.error("Error getting last modified time for {}: {}", file, e.getMessage());
-				} finally {
-					latch.countDown();
+			@Override
+			public void file(Path file, BasicFileAttributes attributes) {
+				files.incrementAndGet();
+				FileState state = fileStates.get(file);
+				if (state == null || state.isOutdated(attributes)) {
+					outdated.incrementAndGet();
+					readPermits.acquireUninterruptibly();
+					executorService.submit(() -> {
+						try {
+							processFile(file);
+						} finally {
+							readPermits.release();
+						}
+					});
 				}
-			});
-		}
+			}
+		});
+		// All permits are back once the last file was read
+		readPermits.acquireUninterruptibly(PARALLEL_FILES);
+		readPermits.release(PARALLEL_FILES);
+		log.info(
+				"Initial aggregate map created with {} letters from {} of {} files in {} directories in {}ms",
+				aggregate
+						.snapshot()
+						.size(),
+				outdated.get(),
+				files.get(),
+				watchedDirectories.size(),
+				(System.nanoTime() - start) / 1_000_000);
+	}
 
+	/// Takes over the state of every file of the snapshot that is still the same file.
+	/// Files that were replaced or deleted since are taken back out of the saved aggregates,
+	/// files that only grew or changed keep their state and are read from where they were left by [#processAllFiles()].
+	private void restoreSnapshot() {
+		if (snapshotFile == null) {
+			return;
+		}
+		long start = System.nanoTime();
+		Optional<WatcherSnapshot> read;
 		try {
-			latch.await(5, TimeUnit.MINUTES);
-			aggregateMap.set(new HashMap<>(newMap));
-			log.info("Initial aggregate map created with {} letters", newMap.size());
-		} catch (InterruptedException e) {
-			log.error("Interrupted while waiting for files to process", e);
-			Thread.currentThread().interrupt();
+			read = WatcherSnapshot.read(snapshotFile);
+		} catch (IOException e) {
+			log.warn("Could not read the snapshot {}, reading every file: {}", snapshotFile, e.getMessage());
+			return;
 		}
+		if (read.isEmpty()) {
+			log.info("No usable snapshot in {}, reading every file", snapshotFile);
+			return;
+		}
+		WatcherSnapshot snapshot = read.get();
+		LetterCounts letters = snapshot.letters();
+		for (var saved : snapshot
+				.files()
+				.entrySet()) {
+			Path file = roots
+					.directories()
+					.getFirst()
+					.resolve(saved.getKey());
+			WatcherSnapshot.FileEntry entry = saved.getValue();
+			BasicFileAttributes attributes;
+			try {
+				// A file of a root that isn't watched anymore counts as gone
+				attributes = roots.contains(file) ? Files.readAttributes(file, BasicFileAttributes.class) : null;
+			} catch (IOException e) {
+				attributes = null;
+			}
+			if (attributes == null || !Objects.equals(savedFileKey(attributes.fileKey()), entry.fileKey())) {
+				addLetters(letters, entry.contribution(), -1);
+				addLetters(letters, entry.pending(), -1);
+				continue;
+			}
+			var state = new FileState(
+					attributes.fileKey(),
+					entry.size(),
+					entry.lastModified(),
+					entry.offset(),
+					entry.headChecksum(),
+					entry.contribution(),
+					entry.pending());
+			stations.update(
+					List.of(state.contribution(), state.pending()),
+					List.of(),
+					() -> fileStates.put(file, state));
+		}
+		aggregate.add(letters);
+		log.info(
+				"Restored {} of {} files from {} in {}ms",
+				fileStates.size(),
+				snapshot
+						.files()
+						.size(),
+				snapshotFile,
+				(System.nanoTime() - start) / 1_000_000);
 	}
 
-	private void processFile(Path file) {
-		Map<Character, AggregateData> currentMap = new HashMap<>(aggregateMap.get());
-		processFileForAggregateMap(file, currentMap);
-		aggregateMap.set(currentMap);
+	/// Files of the first root are saved relative to it, so moving the whole directory keeps the snapshot usable,
+	/// files of the other roots with their absolute path.
+	private String snapshotPath(Path file) {
+		Path first = roots
+				.directories()
+				.getFirst();
+		return file.startsWith(first) ? first
+				.relativize(file)
+				.toString() : file.toString();
+	}
+
+	private static String savedFileKey(Object fileKey) {
+		return fileKey == null ? null : fileKey.toString();
+	}
+
+	private void startSnapshots() {
+		if (snapshotFile == null) {
+			return;
+		}
+		executorService.submit(() -> {
+			while (isRunning) {
+				try {
+					Thread.sleep(snapshotInterval);
+				} catch (InterruptedException e) {
+					return;
+				}
+				saveSnapshot();
+			}
+		});
 	}
 
-	private List<Path> getFilesToProcess() {
+	/// Saves the state of every file, and the letter aggregates derived from exactly those states,
+	/// so the snapshot is consistent even while passes are still running.
+	private void saveSnapshot() {
+		if (snapshotFile == null) {
+			return;
+		}
+		snapshotLock.lock();
 		try {
-			try (Stream<String> stream = Files.walk(watchDirectory, 1)
-			                                  .filter(Files::isRegularFile)
-			                                  .map(Path::toString)
-			                                  .filter(string -> {
-				                                  String filename = string.toLowerCase();
-				                                  return filename.endsWith(".txt") || filename.endsWith(".csv");
-			                                  })) {
-				return stream.map(Path::of).collect(Collectors.toList());
+			long version = changes.get();
+			if (version == savedChanges) {
+				return;
+			}
+			long start = System.nanoTime();
+			var letters = new LetterCounts();
+			var files = new HashMap<String, WatcherSnapshot.FileEntry>();
+			for (var known : fileStates.entrySet()) {
+				FileState state = known.getValue();
+				addLetters(letters, state.contribution(), 1);
+				addLetters(letters, state.pending(), 1);
+				files.put(
+						snapshotPath(known.getKey()),
+						new WatcherSnapshot.FileEntry(
+								savedFileKey(state.fileKey()),
+								state.size(),
+								state.lastModified(),
+								state.offset(),
+								state.headChecksum(),
+								state.contribution(),
+								state.pending()));
 			}
+			new WatcherSnapshot(letters, files).write(snapshotFile);
+			savedChanges = version;
+			log.debug("Saved the state of {} files to {} in {}ms", files.size(), snapshotFile, (System.nanoTime() - start) / 1_000_000);
 		} catch (IOException e) {
-			log.error("Error getting files to process: {}", e.getMessage());
-			return List.of();
+			log.warn("Could not save the snapshot {}: {}", snapshotFile, e.getMessage());
+		} finally {
+			snapshotLock.unlock();
 		}
 	}
 
-	private void processFileForAggregateMap(Path file, Map<Character, AggregateData> map) {
-		boolean isCsv = file.toString().toLowerCase().endsWith(".csv");
-		log.info("Processing file for aggregate map: {}", file);
+	private void processFile(Path file) {
+		apply(processFileForAggregateMap(file));
+	}
 
-		try (Stream<String> lines = Files.lines(file)) {
-			Stream<String> dataLines = isCsv ? lines.skip(1) : lines;
+	/// Takes the whole contribution of a deleted file back out of the map.
+	private void removeFile(Path file) {
+		FileState previous = fileStates.get(file);
+		if (cache != null) {
+			cache.forget(file);
+		}
+		if (previous == null) {
+			return;
+		}
+		log.info("File deleted: {}", file);
+		apply(new FileUpdate(
+				List.of(),
+				List.of(previous.contribution(), previous.pending()),
+				() -> fileStates.remove(file)));
+	}
 
-			dataLines.forEach(line -> {
-				try {
-					String[] parts = line.split(isCsv ? "," : ";");
-					if (parts.length != 2) {
-						log.warn("Invalid line format: {}", line);
-						return;
-					}
+	/// Applies a file's delta to both the letter map and the station statistics, the file's state changes together
+	/// with the statistics. The letter delta is derived from the station tables, so it costs as much as there are
+	/// stations, not rows.
+	private void apply(FileUpdate update) {
+		var letters = new LetterCounts();
+		for (StationTable table : update.added()) {
+			addLetters(letters, table, 1);
+		}
+		for (StationTable table : update.removed()) {
+			addLetters(letters, table, -1);
+		}
+		stations.update(update.added(), update.removed(), update.publish());
+		aggregate.add(letters);
+		changes.incrementAndGet();
+	}
 
-					String stationName = parts[0].trim();
-					if (stationName.isEmpty()) return;
+	private static void addLetters(LetterCounts letters, StationTable table, int sign) {
+		var names = table.nameSegment();
+		for (int e = 0; e < table.size(); e++) {
+			if (table.count(e) == 0) {
+				continue;
+			}
+			char letter = Character.toUpperCase(MeasurementParser.firstChar(names, table.nameOffset(e), table.nameLength(e)));
+			letters.add(letter, sign * table.count(e), sign * table.sum(e));
+		}
+	}
 
-					char firstLetter = Character.toUpperCase(stationName.charAt(0));
-					double temperature = Double.parseDouble(parts[1].trim());
+	/// Reads everything appended to `file` since the last pass and updates its [FileState].
+	/// Only complete lines are consumed, a last line that is still being written is counted provisionally
+	/// and taken back out on the next pass, once it can be read in full.
+	/// A rewritten file is read from the start and its new contribution replaces the old one.
+	/// The rows of a file that is read whole in this pass go to the [ColumnarCache] as well, an append makes what it
+	/// has of the file outdated.
+	///
+	/// @return what has to be added to and taken out of the aggregates, the new [FileState] is only stored by [#apply]
+	FileUpdate processFileForAggregateMap(Path file) {
+		Ingest ingest = Ingest.aggregating();
+		try {
+			var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			FileState previous = fileStates.get(file);
+			long from = 0;
+			var contribution = new StationTable();
+			var removed = new ArrayList<StationTable>();
+			if (previous != null) {
+				if (isRewritten(file, previous, attributes)) {
+					log.info("File {} was truncated or rewritten, replacing its contribution", file);
+					removed.add(previous.contribution());
+				} else {
+					from = previous.offset();
+					contribution.addAll(previous.contribution());
+				}
+				removed.add(previous.pending());
+			}
+			log.info("Processing file for aggregate map: {} (from byte {})", file, from);
+			if (cache != null && from == 0) {
+				ingest = cache.ingest();
+			} else if (cache != null) {
+				cache.forget(file);
+			}
 
-					map.compute(firstLetter, (_, v) -> {
-						if (v == null) return new AggregateData(1, temperature);
-						return new AggregateData(v.count() + 1, v.sum() + temperature);
-					});
-				} catch (NumberFormatException | IndexOutOfBoundsException _) {
+			var parse = new FileParseEvent();
+			parse.begin();
+			var result = MeasurementScanner.scan(file, ReadScheduler.Priority.INGEST, from, false, ingest::chunk);
+			var tables = result
+					.chunks()
+					.stream()
+					.map(Ingest.Chunk::stations)
+					.toList();
+			parse.end();
+			if (parse.shouldCommit()) {
+				parse.path = file.toString();
+				parse.reader = "watcher";
+				parse.offset = from;
+				parse.bytes = result.end() - from;
+				for (StationTable chunk : tables) {
+					for (int e = 0; e < chunk.size(); e++) {
+						parse.lines += chunk.count(e);
+					}
 				}
-			});
+				parse.commit();
+			}
+			var added = new ArrayList<StationTable>(tables);
+			for (StationTable chunk : tables) {
+				contribution.addAll(chunk);
+			}
+			var pending = ingest.chunk();
+			boolean whole = parsePendingLine(file, result, pending) && result.size() == attributes.size();
+			// Kept for as long as the file is there, with hundreds of thousands of files spare room adds up
+			var state = new FileState(
+					attributes.fileKey(),
+					result.size(),
+					attributes
+							.lastModifiedTime()
+							.toInstant(),
+					result.end(),
+					headChecksum(file, result.end()),
+					contribution.compact(),
+					pending
+							.stations()
+							.compact());
+			added.add(state.pending());
+			if (cache != null && from == 0 && whole) {
+				var chunks = new ArrayList<>(result.chunks());
+				chunks.add(pending);
+				cache.ingested(file, attributes, ingest, chunks);
+			} else {
+				ingest.release();
+			}
+			return new FileUpdate(added, removed, () -> fileStates.put(file, state));
 		} catch (IOException e) {
+			ingest.release();
 			log.error("Error processing file {}: {}", file, e.getMessage());
+			return new FileUpdate(List.of(), List.of(), () -> {});
+		}
+	}
+
+	/// Parses the unterminated last line of `file` into `pending`, if there is one.
+	/// A compressed file never has one, what's left after the scan is a member that isn't completely written yet.
+	///
+	/// @return whether the file was read to its end, false if something after the scan is left for the next pass
+	private boolean parsePendingLine(Path file, MeasurementScanner.Result<?> result, RowVisitor pending) throws IOException {
+		long length = result.size() - result.end();
+		if (length == 0) {
+			return true;
+		}
+		var format = InputFormat.of(file);
+		// With a CSV file stopping at 0 means that the header itself isn't complete
+		boolean headerPending = format.hasHeader() && result.end() == 0;
+		if (length > MAX_PENDING_LINE_LENGTH || headerPending || InputFormat.isCompressed(file)) {
+			return false;
+		}
+		var buffer = ByteBuffer.allocate((int) length);
+		try (var _ = ReadScheduler
+				.reader(file, ReadScheduler.Priority.INGEST)
+				.acquire(); var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (buffer.hasRemaining() && channel.read(buffer, result.end() + buffer.position()) > 0) {
+				// keep reading
+			}
+		}
+		MeasurementParser.parseLines(
+				MemorySegment.ofArray(buffer.array()),
+				0,
+				buffer.position(),
+				format.separator(),
+				true,
+				pending);
+		return buffer.position() == length;
+	}
+
+	/// A file has to be read from the start again if it was replaced, truncated, or if the part we already read changed.
+	private boolean isRewritten(Path file, FileState previous, BasicFileAttributes attributes) throws IOException {
+		if (attributes.fileKey() != null && !attributes
+				.fileKey()
+				.equals(previous.fileKey())) {
+			return true;
 		}
+		if (attributes.size() < previous.offset()) {
+			return true;
+		}
+		return headChecksum(file, previous.offset()) != previous.headChecksum();
+	}
+
+	/// CRC32 of the first [#HEAD_CHECKSUM_LENGTH] bytes of `file` that were already consumed.
+	private long headChecksum(Path file, long consumed) throws IOException {
+		int length = (int) Math.min(consumed, HEAD_CHECKSUM_LENGTH);
+		var crc = new CRC32();
+		if (length == 0) {
+			return crc.getValue();
+		}
+		try (var _ = ReadScheduler
+				.reader(file, ReadScheduler.Priority.INGEST)
+				.acquire(); var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			var buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+				// keep reading
+			}
+			crc.update(buffer.flip());
+		}
+		return crc.getValue();
 	}
-}
\ No newline at end of file
+
+	/// What has already been read from a file, and what it added to the aggregate map.
+	///
+	/// @param offset       where the next pass should continue, always the start of a line
+	/// @param headChecksum see [#headChecksum]
+	/// @param contribution per station aggregate of every line before `offset`
+	/// @param pending      aggregate of the unterminated line after `offset`
+	private record FileState(
+			Object fileKey,
+			long size,
+			Instant lastModified,
+			long offset,
+			long headChecksum,
+			StationTable contribution,
+			StationTable pending) {
+
+		boolean isOutdated(BasicFileAttributes attributes) {
+			return size != attributes.size() || !lastModified.equals(attributes
+					                                                         .lastModifiedTime()
+					                                                         .toInstant()) || !Objects.equals(
+					fileKey,
+					attributes.fileKey());
+		}
+	}
+
+	/// Station tables to add to and to take out of the aggregates after a pass over a file.
+	///
+	/// @param publish stores or removes the file's [FileState], run together with the change to the statistics
+	record FileUpdate(List<StationTable> added, List<StationTable> removed, Runnable publish) {}
+}
@@ -0,0 +1,155 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.AggregateData;
+
+/// The live letter aggregate, shared by every file pass.
+///
+/// Counts and sums (in tenths of a degree) live in fixed arrays of longs, striped by thread like a [LongAdder],
+/// so concurrent passes don't fight over the same cache lines.
+/// Letters get their slot the first time they are seen and keep it forever.
+///
+/// Every stripe counts the deltas that started and finished on it, so a [#snapshot()] can tell whether it read
+/// everything without a writer in between and never shows half of a file's delta. A reader retries that a bounded
+/// number of times, then holds new writers off until the ones that already started are done and reads once more.
+/// Writers only ever wait for such a reader.
+final class LetterAccumulator {
+
+	/// Maximum number of distinct letters.
+	private static final int CAPACITY = 1024;
+
+	private static final int STRIPES = Integer.highestOneBit(Runtime
+			                                                         .getRuntime()
+			                                                         .availableProcessors() * 2 - 1);
+	/// Longs between the counters of two stripes, so that they're on different cache lines
+	private static final int PADDING = 16;
+	/// Reads a snapshot tries before it holds the writers off
+	private static final int OPTIMISTIC_READS = 64;
+
+	/// `letter + 1` per slot, 0 marks a free slot
+	private final AtomicIntegerArray letters = new AtomicIntegerArray(CAPACITY);
+	private final AtomicLongArray counts = new AtomicLongArray(STRIPES * CAPACITY);
+	private final AtomicLongArray sums = new AtomicLongArray(STRIPES * CAPACITY);
+
+	/// Deltas started and finished per stripe, a stripe is quiet while they're equal
+	private final AtomicLongArray started = new AtomicLongArray(STRIPES * PADDING);
+	private final AtomicLongArray finished = new AtomicLongArray(STRIPES * PADDING);
+	/// Held by a reader that holds the writers off, new writers wait for it while `blocked` is set
+	private final Lock exclusive = new ReentrantLock();
+	private volatile boolean blocked;
+
+	void add(LetterCounts delta) {
+		if (delta.isEmpty()) {
+			return;
+		}
+		int stripe = stripe();
+		while (true) {
+			started.getAndIncrement(stripe * PADDING);
+			if (!blocked) {
+				break;
+			}
+			// Backs out, so the reader doesn't wait for this one
+			finished.getAndIncrement(stripe * PADDING);
+			exclusive.lock();
+			exclusive.unlock();
+		}
+		try {
+			int base = stripe * CAPACITY;
+			delta.forEach((letter, count, sum) -> {
+				int slot = slotOf(letter);
+				counts.getAndAdd(base + slot, count);
+				sums.getAndAdd(base + slot, sum);
+			});
+		} finally {
+			finished.getAndIncrement(stripe * PADDING);
+		}
+	}
+
+	/// @return a consistent copy of the aggregate, letters without rows are left out
+	Map<Character, AggregateData> snapshot() {
+		long[] done = new long[STRIPES];
+		for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+			if (quiet(done)) {
+				var snapshot = read();
+				if (unchanged(done)) {
+					return snapshot;
+				}
+			}
+			Thread.onSpinWait();
+		}
+		exclusive.lock();
+		try {
+			blocked = true;
+			// Only the writers that got in before blocked was set are left, and they don't wait for anything
+			while (!quiet(done)) {
+				Thread.onSpinWait();
+			}
+			return read();
+		} finally {
+			blocked = false;
+			exclusive.unlock();
+		}
+	}
+
+	/// @param done filled with the deltas finished on every stripe
+	/// @return whether no delta is being added right now
+	private boolean quiet(long[] done) {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			done[stripe] = finished.get(stripe * PADDING);
+			if (started.get(stripe * PADDING) != done[stripe]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/// @return whether no delta started since `done` was read by [#quiet]
+	private boolean unchanged(long[] done) {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			if (started.get(stripe * PADDING) != done[stripe]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Map<Character, AggregateData> read() {
+		var map = new HashMap<Character, AggregateData>();
+		for (int slot = 0; slot < CAPACITY; slot++) {
+			int letter = letters.get(slot);
+			if (letter == 0) {
+				continue;
+			}
+			long count = 0;
+			long sum = 0;
+			for (int stripe = 0; stripe < STRIPES; stripe++) {
+				count += counts.get(stripe * CAPACITY + slot);
+				sum += sums.get(stripe * CAPACITY + slot);
+			}
+			if (count != 0) {
+				map.put((char) (letter - 1), new AggregateData(count, sum / 10.0));
+			}
+		}
+		return map;
+	}
+
+	private int slotOf(char letter) {
+		int key = letter + 1;
+		int slot = (letter * 0x9E3779B1) >>> 16 & (CAPACITY - 1);
+		for (int probes = 0; probes < CAPACITY; probes++) {
+			int current = letters.get(slot);
+			if (current == key || (current == 0 && (letters.compareAndSet(slot, 0, key) || letters.get(slot) == key))) {
+				return slot;
+			}
+			slot = (slot + 1) & (CAPACITY - 1);
+		}
+		throw new IllegalStateException("More than " + CAPACITY + " distinct letters");
+	}
+
+	private static int stripe() {
+		long id = Thread
+				.currentThread()
+				.threadId();
+		return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+	}
+}
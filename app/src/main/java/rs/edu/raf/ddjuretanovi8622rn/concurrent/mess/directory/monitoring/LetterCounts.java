@@ -0,0 +1,82 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+
+/// Small open addressing map from a letter to a row count and a temperature sum in tenths of a degree.
+/// Everything is kept in primitive arrays, so adding to it never allocates.
+/// Not thread safe, an instance is filled by a single file pass and only read afterwards.
+final class LetterCounts {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/// `letter + 1`, so that 0 marks an empty slot
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private long[] counts = new long[INITIAL_CAPACITY];
+	private long[] sums = new long[INITIAL_CAPACITY];
+	private int size;
+
+	void add(char letter, long count, long sum) {
+		int slot = slotOf(letter);
+		counts[slot] += count;
+		sums[slot] += sum;
+	}
+
+	/// Visits every letter that has a non-zero count or sum.
+	void forEach(LetterConsumer consumer) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0 && (counts[i] != 0 || sums[i] != 0)) {
+				consumer.accept((char) (keys[i] - 1), counts[i], sums[i]);
+			}
+		}
+	}
+
+	boolean isEmpty() {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0 && (counts[i] != 0 || sums[i] != 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int slotOf(char letter) {
+		int key = letter + 1;
+		int mask = keys.length - 1;
+		int slot = (letter * 0x9E3779B1) >>> 16 & mask;
+		while (true) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			if (keys[slot] == 0) {
+				if ((size + 1) * 2 > keys.length) {
+					grow();
+					return slotOf(letter);
+				}
+				keys[slot] = key;
+				size++;
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		long[] oldCounts = counts;
+		long[] oldSums = sums;
+		keys = new int[oldKeys.length * 2];
+		counts = new long[oldKeys.length * 2];
+		sums = new long[oldKeys.length * 2];
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				add((char) (oldKeys[i] - 1), oldCounts[i], oldSums[i]);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	interface LetterConsumer {
+		void accept(char letter, long count, long sum);
+	}
+}
@@ -4,10 +4,12 @@ import module java.base;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.AggregateData;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr.CsvExportEvent;
 
 public class MapReportService {
 	private static final Logger log = LoggerFactory.getLogger(MapReportService.class);
 	private static final Path CSV_FILE_PATH = Paths.get("meteorological_data_map.csv");
+	private static final Path STATIONS_CSV_FILE_PATH = Paths.get("meteorological_data_stations.csv");
 	private static final Lock exportLock = new ReentrantLock();
 
 	private final DirectoryWatcher directoryWatcher;
@@ -29,6 +31,7 @@ public class MapReportService {
 				() -> {
 					log.info("Generating periodic report");
 					exportMapToCsv();
+					exportStationsToCsv();
 				}, 1, 1, TimeUnit.MINUTES);
 		log.info("Map report service started");
 	}
@@ -91,6 +94,8 @@ public class MapReportService {
 	}
 
 	public void exportMapToCsv() {
+		var event = new CsvExportEvent();
+		event.begin();
 		exportLock.lock();
 		try {
 			Map<Character, AggregateData> map = Collections.unmodifiableMap(directoryWatcher.getAggregateMap());
@@ -132,13 +137,97 @@ public class MapReportService {
 					writer.write(fd.toString());
 					writer.newLine();
 				}
+				event.rows = data.size();
+				event.succeeded = true;
 				log.info("Map exported to {}", CSV_FILE_PATH);
 			} catch (IOException e) {
 				log.error("Error exporting map to CSV: {}", e.getMessage());
 			}
 		} finally {
 			exportLock.unlock();
+			commit(event, CSV_FILE_PATH);
 		}
 	}
 
-}
\ No newline at end of file
+	public void printStations() {
+		List<StationSummary> summaries = directoryWatcher.getStationSummaries();
+		if (summaries.isEmpty()) {
+			log.info("Station statistics are not yet available");
+			return;
+		}
+		for (StationSummary summary : summaries) {
+			log.info(
+					"{}: {}/{}/{} ({} rows)",
+					summary.name(),
+					summary.min(),
+					summary.mean(),
+					summary.max(),
+					summary.count());
+		}
+	}
+
+	public void exportStationsToCsv() {
+		var event = new CsvExportEvent();
+		event.begin();
+		exportLock.lock();
+		try {
+			List<StationSummary> summaries = directoryWatcher.getStationSummaries();
+			if (summaries.isEmpty()) {
+				log.warn("Station statistics are not yet available");
+				return;
+			}
+
+			try (BufferedWriter writer = Files.newBufferedWriter(
+					STATIONS_CSV_FILE_PATH,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				writer.write("Station,Count,Min,Mean,Max");
+				writer.newLine();
+
+				for (StationSummary summary : summaries) {
+					writer.write(String.format(
+							"%s,%d,%.1f,%.1f,%.1f",
+							csvField(summary.name()),
+							summary.count(),
+							summary.min(),
+							summary.mean(),
+							summary.max()));
+					writer.newLine();
+				}
+				event.rows = summaries.size();
+				event.succeeded = true;
+				log.info("Station statistics exported to {}", STATIONS_CSV_FILE_PATH);
+			} catch (IOException e) {
+				log.error("Error exporting station statistics to CSV: {}", e.getMessage());
+			}
+		} finally {
+			exportLock.unlock();
+			commit(event, STATIONS_CSV_FILE_PATH);
+		}
+	}
+
+	/// An export that found nothing to write is committed too, with no rows and `succeeded` unset.
+	private static void commit(CsvExportEvent event, Path file) {
+		event.end();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.file = file.toString();
+		if (event.succeeded) {
+			try {
+				event.bytes = Files.size(file);
+			} catch (IOException _) {
+				// Only the size is missing from the event
+			}
+		}
+		event.commit();
+	}
+
+	/// Station names come from `;` separated files, so they may contain commas or quotes.
+	private static String csvField(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+}
@@ -0,0 +1,111 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.StationTable;
+
+/// Live per station min/mean/max over every file in the watch directory.
+///
+/// Counts and sums are kept up to date with every delta. A min or max can't be subtracted though,
+/// so retracting a file that held a station's extreme only marks that station as dirty,
+/// and its min/max are rebuilt from the per file contributions the next time a summary is requested.
+/// Whoever keeps those contributions has to change them in [#update], so that a rebuild never sees
+/// a contribution that isn't part of the totals yet, or one that already isn't anymore.
+final class StationStatistics {
+
+	private final Lock lock = new ReentrantLock();
+	private final StationTable totals = new StationTable(16 * 1024);
+	/// Entries of `totals` whose min/max may be stale
+	private final BitSet dirty = new BitSet();
+
+	void add(StationTable table) {
+		lock.lock();
+		try {
+			totals.addAll(table);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// Adds and subtracts the tables and runs `publish` while holding the same lock as [#summaries].
+	///
+	/// @param publish makes the change visible to the contributions [#summaries] is given
+	void update(Collection<StationTable> added, Collection<StationTable> removed, Runnable publish) {
+		lock.lock();
+		try {
+			for (StationTable table : added) {
+				add(table);
+			}
+			for (StationTable table : removed) {
+				subtract(table);
+			}
+			publish.run();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void subtract(StationTable table) {
+		lock.lock();
+		try {
+			for (int e = 0; e < table.size(); e++) {
+				if (table.count(e) == 0) {
+					continue;
+				}
+				int entry = totals.entryOf(table.nameSegment(), table.nameOffset(e), table.nameLength(e));
+				totals.subtract(entry, table.count(e), table.sum(e));
+				if (table.min(e) <= totals.min(entry) || table.max(e) >= totals.max(entry)) {
+					dirty.set(entry);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// @param contributions every per file table that is currently part of the totals,
+	///                      only asked for under the lock and only if a min/max has to be rebuilt
+	/// @return every station that still has rows, sorted by name
+	List<StationSummary> summaries(Supplier<? extends Collection<StationTable>> contributions) {
+		lock.lock();
+		try {
+			if (!dirty.isEmpty()) {
+				rebuildMinMax(contributions.get());
+			}
+			var summaries = new ArrayList<StationSummary>(totals.size());
+			for (int e = 0; e < totals.size(); e++) {
+				long count = totals.count(e);
+				if (count == 0) {
+					continue;
+				}
+				summaries.add(new StationSummary(
+						totals.name(e),
+						count,
+						totals.min(e) / 10.0,
+						Math.round((double) totals.sum(e) / count) / 10.0,
+						totals.max(e) / 10.0));
+			}
+			summaries.sort(Comparator.comparing(StationSummary::name));
+			return summaries;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void rebuildMinMax(Collection<StationTable> contributions) {
+		dirty
+				.stream()
+				.forEach(totals::resetMinMax);
+		var names = totals.nameSegment();
+		for (StationTable table : contributions) {
+			dirty
+					.stream()
+					.forEach(entry -> {
+						int e = table.find(names, totals.nameOffset(entry), totals.nameLength(entry));
+						if (e >= 0 && table.count(e) > 0) {
+							totals.mergeMinMax(entry, table.min(e), table.max(e));
+						}
+					});
+		}
+		dirty.clear();
+	}
+}
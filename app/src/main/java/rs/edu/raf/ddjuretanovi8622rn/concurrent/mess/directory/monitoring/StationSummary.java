@@ -0,0 +1,4 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+/// Temperatures are in degrees, rounded to one decimal place.
+public record StationSummary(String name, long count, double min, double mean, double max) {}
@@ -0,0 +1,51 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.config.ConcurrentMessConfig;
+
+/// Tuning of the [DirectoryWatcher].
+///
+/// @param snapshotFile      where the aggregates and how far every file was read are saved, see [WatcherSnapshot].
+///                          Has to be outside the watch directory, null to always start from scratch
+/// @param snapshotInterval  how often the snapshot is saved while running, it's also saved by [DirectoryWatcher#stop()]
+/// @param quietPeriod       how long a file has to go without events and without changing before it's read,
+///                          see [WriteDebouncer]
+/// @param reconcileInterval how often the directory is listed to catch changes whose events were lost,
+///                          it's also listed whenever the watch service reports an overflow
+public record WatcherSettings(Path snapshotFile, Duration snapshotInterval, Duration quietPeriod, Duration reconcileInterval) {
+
+	private static final Path DEFAULT_SNAPSHOT = Path.of("watcher.snapshot");
+
+	public WatcherSettings {
+		if (!snapshotInterval.isPositive()) {
+			throw new IllegalArgumentException("The snapshot interval has to be positive");
+		}
+		if (quietPeriod.isNegative()) {
+			throw new IllegalArgumentException("The quiet period can't be negative");
+		}
+		if (!reconcileInterval.isPositive()) {
+			throw new IllegalArgumentException("The reconcile interval has to be positive");
+		}
+	}
+
+	/// Without a snapshot, the app only saves one if [#of] is used.
+	public static WatcherSettings defaults() {
+		return new WatcherSettings(null, Duration.ofMinutes(1), Duration.ofMillis(500), Duration.ofMinutes(5));
+	}
+
+	/// Takes every value that is set in `config`, the snapshot is saved to `watcher.snapshot` if it isn't set.
+	public static WatcherSettings of(ConcurrentMessConfig config) {
+		var defaults = defaults();
+		return new WatcherSettings(
+				config.watcherSnapshot() == null ? DEFAULT_SNAPSHOT : Path.of(config.watcherSnapshot()),
+				config.watcherSnapshotIntervalSeconds() == null
+						? defaults.snapshotInterval()
+						: Duration.ofSeconds(config.watcherSnapshotIntervalSeconds()),
+				config.watcherQuietPeriodMillis() == null
+						? defaults.quietPeriod()
+						: Duration.ofMillis(config.watcherQuietPeriodMillis()),
+				config.watcherReconcileIntervalSeconds() == null
+						? defaults.reconcileInterval()
+						: Duration.ofSeconds(config.watcherReconcileIntervalSeconds()));
+	}
+}
@@ -0,0 +1,139 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.StationTable;
+
+/// Everything the [DirectoryWatcher] knows about its directory, saved so that a restart doesn't have to parse it again.
+///
+/// Layout, every number big endian:
+/// ```
+/// header   long magic, int version
+/// letters  int letters, per letter: char letter, long rows, long sum in tenths
+/// files    int files, per file: UTF name relative to the watch directory, UTF file key (empty if there is none),
+///          long size, long mtime seconds, int mtime nanos, long offset, long head checksum,
+///          contribution table, pending table
+/// table    int stations, per station: int name length, UTF-8 name, long count, long sum, int min, int max
+///```
+/// The letters are the sum of every file's tables, they're kept so that `MAP` can be answered without going
+/// through the tables.
+///
+/// @param letters per letter row count and temperature sum
+/// @param files   per file state, keyed by the name relative to the watch directory
+record WatcherSnapshot(LetterCounts letters, Map<String, FileEntry> files) {
+
+	static final long MAGIC = 0x4D45535357415431L; // MESSWAT1
+	static final int VERSION = 1;
+
+	/// Writes the snapshot next to `file` first and then moves it over, so a crash never leaves half of one behind.
+	void write(Path file) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			// forEach can't throw, so the letters are collected first
+			var totals = new ArrayList<LetterTotal>();
+			letters.forEach((letter, count, sum) -> totals.add(new LetterTotal(letter, count, sum)));
+			out.writeInt(totals.size());
+			for (LetterTotal total : totals) {
+				out.writeChar(total.letter());
+				out.writeLong(total.count());
+				out.writeLong(total.sum());
+			}
+			out.writeInt(files.size());
+			for (var saved : files.entrySet()) {
+				FileEntry entry = saved.getValue();
+				out.writeUTF(saved.getKey());
+				out.writeUTF(entry.fileKey() == null ? "" : entry.fileKey());
+				out.writeLong(entry.size());
+				out.writeLong(entry.lastModified().getEpochSecond());
+				out.writeInt(entry.lastModified().getNano());
+				out.writeLong(entry.offset());
+				out.writeLong(entry.headChecksum());
+				writeTable(out, entry.contribution());
+				writeTable(out, entry.pending());
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/// @return the snapshot, or empty if there is none or it was written by a different version
+	static Optional<WatcherSnapshot> read(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return Optional.empty();
+		}
+		try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+				return Optional.empty();
+			}
+			var letters = new LetterCounts();
+			int letterCount = in.readInt();
+			for (int i = 0; i < letterCount; i++) {
+				letters.add(in.readChar(), in.readLong(), in.readLong());
+			}
+			int fileCount = in.readInt();
+			var files = new HashMap<String, FileEntry>(fileCount * 2);
+			for (int i = 0; i < fileCount; i++) {
+				String name = in.readUTF();
+				String fileKey = in.readUTF();
+				files.put(name, new FileEntry(
+						fileKey.isEmpty() ? null : fileKey,
+						in.readLong(),
+						Instant.ofEpochSecond(in.readLong(), in.readInt()),
+						in.readLong(),
+						in.readLong(),
+						readTable(in),
+						readTable(in)));
+			}
+			return Optional.of(new WatcherSnapshot(letters, files));
+		}
+	}
+
+	private static void writeTable(DataOutputStream out, StationTable table) throws IOException {
+		int stations = 0;
+		for (int e = 0; e < table.size(); e++) {
+			if (table.count(e) != 0) {
+				stations++;
+			}
+		}
+		out.writeInt(stations);
+		var names = table.nameSegment();
+		for (int e = 0; e < table.size(); e++) {
+			if (table.count(e) == 0) {
+				continue;
+			}
+			byte[] name = names
+					.asSlice(table.nameOffset(e), table.nameLength(e))
+					.toArray(ValueLayout.JAVA_BYTE);
+			out.writeInt(name.length);
+			out.write(name);
+			out.writeLong(table.count(e));
+			out.writeLong(table.sum(e));
+			out.writeInt(table.min(e));
+			out.writeInt(table.max(e));
+		}
+	}
+
+	private static StationTable readTable(DataInputStream in) throws IOException {
+		int stations = in.readInt();
+		var table = new StationTable(stations);
+		for (int i = 0; i < stations; i++) {
+			byte[] name = in.readNBytes(in.readInt());
+			table.merge(MemorySegment.ofArray(name), 0, name.length, in.readLong(), in.readLong(), in.readInt(), in.readInt());
+		}
+		return table.compact();
+	}
+
+	private record LetterTotal(char letter, long count, long sum) {}
+
+	/// The saved part of a file's state in the watcher.
+	///
+	/// @param fileKey [BasicFileAttributes#fileKey()] as a string, null if the file system has none
+	record FileEntry(
+			String fileKey,
+			long size,
+			Instant lastModified,
+			long offset,
+			long headChecksum,
+			StationTable contribution,
+			StationTable pending) {}
+}
@@ -0,0 +1,157 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+
+/// Coalesces the watch events of every file until the file has stopped changing,
+/// so that a file that is still being written is read once it's done instead of once per event.
+///
+/// A file is handed over once it went a whole quiet period without an event,
+/// and its size and modification time are still what they were at its last event.
+/// Different files are handed over in parallel, the same file never twice at once:
+/// events that come in while a file is handed over wait for that to finish.
+final class WriteDebouncer {
+
+	private final Duration quietPeriod;
+	private final Executor executor;
+	private final Consumer<Settled> onSettled;
+	private final Lock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	/// Files with events that weren't handed over yet
+	private final Map<Path, Pending> pending = new HashMap<>();
+	/// Files that are being handed over right now
+	private final Set<Path> settling = new HashSet<>();
+
+	/// @param onSettled called on `executor` for every file that settled
+	WriteDebouncer(Duration quietPeriod, Executor executor, Consumer<Settled> onSettled) {
+		this.quietPeriod = quietPeriod;
+		this.executor = executor;
+		this.onSettled = onSettled;
+	}
+
+	/// Records an event of `file`, which pushes back when it's handed over.
+	void touch(Path file, WatchEvent.Kind<?> kind) {
+		Stamp stamp = Stamp.of(file);
+		lock.lock();
+		try {
+			Pending previous = pending.get(file);
+			pending.put(file, new Pending(
+					System.nanoTime() + quietPeriod.toNanos(),
+					stamp,
+					kind,
+					previous == null ? 1 : previous.events() + 1));
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// Hands over files as they settle, until interrupted.
+	void run() throws InterruptedException {
+		while (true) {
+			for (var due : awaitDue()) {
+				Path file = due.getKey();
+				// A changed size or modification time means it's still being written, even if no event said so
+				Stamp stamp = Stamp.of(file);
+				lock.lock();
+				try {
+					Pending current = pending.get(file);
+					if (current != due.getValue()) {
+						// Touched again in the meantime
+						continue;
+					}
+					if (settling.contains(file) || !stamp.equals(current.stamp())) {
+						pending.put(file, current.postponed(System.nanoTime() + quietPeriod.toNanos(), stamp));
+						continue;
+					}
+					pending.remove(file);
+					settling.add(file);
+				} finally {
+					lock.unlock();
+				}
+				Pending settled = due.getValue();
+				executor.execute(() -> {
+					try {
+						onSettled.accept(new Settled(file, settled.lastKind(), settled.events()));
+					} finally {
+						finished(file);
+					}
+				});
+			}
+		}
+	}
+
+	/// Waits for the first files that went a quiet period without events.
+	private List<Map.Entry<Path, Pending>> awaitDue() throws InterruptedException {
+		lock.lock();
+		try {
+			while (true) {
+				long now = System.nanoTime();
+				long next = Long.MAX_VALUE;
+				var due = new ArrayList<Map.Entry<Path, Pending>>();
+				for (var entry : pending.entrySet()) {
+					long at = entry
+							.getValue()
+							.dueAt();
+					if (at - now <= 0) {
+						due.add(Map.entry(entry.getKey(), entry.getValue()));
+					} else {
+						next = Math.min(next, at - now);
+					}
+				}
+				if (!due.isEmpty()) {
+					return due;
+				}
+				if (next == Long.MAX_VALUE) {
+					changed.await();
+				} else {
+					changed.awaitNanos(next);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void finished(Path file) {
+		lock.lock();
+		try {
+			settling.remove(file);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// A file that is ready to be read.
+	///
+	/// @param lastKind kind of the last event of the file, it can be gone after an `ENTRY_CREATE`
+	/// @param events   how many events were coalesced into this one
+	record Settled(Path file, WatchEvent.Kind<?> lastKind, int events) {}
+
+	/// @param dueAt [System#nanoTime()] at which the file is checked again
+	/// @param stamp the file at its last event or check
+	private record Pending(long dueAt, Stamp stamp, WatchEvent.Kind<?> lastKind, int events) {
+
+		Pending postponed(long dueAt, Stamp stamp) {
+			return new Pending(dueAt, stamp, lastKind, events);
+		}
+	}
+
+	/// Size and modification time of a file, both -1 once it's gone.
+	private record Stamp(long size, long lastModified) {
+
+		private static final Stamp MISSING = new Stamp(-1, -1);
+
+		static Stamp of(Path file) {
+			try {
+				var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				return new Stamp(
+						attributes.size(),
+						attributes
+								.lastModifiedTime()
+								.to(TimeUnit.NANOSECONDS));
+			} catch (IOException e) {
+				return MISSING;
+			}
+		}
+	}
+}
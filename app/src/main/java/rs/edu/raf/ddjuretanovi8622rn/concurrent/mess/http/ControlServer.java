@@ -0,0 +1,228 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.http;
+
+import module java.base;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.App;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job.JobManager;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job.JobStatus;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.queue.MessageQueue;
+
+/// Local HTTP/JSON front end for the commands the CLI reads from stdin.
+///
+/// - `POST /commands` takes a command, or an array of them, and puts them into the message queue just like the CLI:
+///   `{"type": "SCAN", "min": -10, "max": 10, "letter": "A", "output": "a.txt", "job": "a", "priority": 1}`,
+///   `{"type": "STATUS", "job": "a"}`, `{"type": "MAP"}` or `{"type": "EXPORTMAP"}`.
+///   A scan without a `job` gets a generated name. If any of the commands is invalid, none of them are queued.
+///   Answers with `202` and the names of the scanned jobs, the commands run once the queue gets to them.
+/// - `GET /jobs` and `GET /jobs/{name}` return the [JobStatus] of every job or of a single one.
+///   They are read straight from the [JobManager], without going through the queue or logging anything.
+/// - `GET /jobs/{name}/events` streams the status of a job as server-sent events until the job is finished.
+///
+/// Every exchange is handled on its own virtual thread.
+public final class ControlServer implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(ControlServer.class);
+	private static final Duration EVENT_INTERVAL = Duration.ofMillis(500);
+	private static final String EVENTS_SUFFIX = "/events";
+
+	private final HttpServer server;
+	private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+	private final ObjectMapper mapper = App.ObjectMapperHolder.getObjectMapper();
+	private final MessageQueue queue;
+	private final JobManager jobManager;
+
+	public ControlServer(InetSocketAddress address, MessageQueue queue, JobManager jobManager) throws IOException {
+		this.queue = queue;
+		this.jobManager = jobManager;
+		this.server = HttpServer.create(address, 0);
+		server.setExecutor(executorService);
+		server.createContext("/commands", exchange -> handle(exchange, this::commands));
+		server.createContext("/jobs", exchange -> handle(exchange, this::jobs));
+	}
+
+	public void start() {
+		server.start();
+		InetSocketAddress address = server.getAddress();
+		log.info("Control API listening on http://{}:{}", address.getHostString(), address.getPort());
+	}
+
+	/// Stops accepting requests, open event streams are cut off.
+	@Override
+	public void close() {
+		server.stop(0);
+		executorService.shutdownNow();
+	}
+
+	private void commands(HttpExchange exchange) throws IOException {
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			sendError(exchange, 405, "Use POST");
+			return;
+		}
+		JsonNode body;
+		try (var in = exchange.getRequestBody()) {
+			body = mapper.readTree(in);
+		}
+		if (body == null || !(body.isObject() || body.isArray())) {
+			throw new IllegalArgumentException("Expected a command or an array of commands");
+		}
+		var commands = new ArrayList<Command>();
+		for (JsonNode node : body.isArray() ? body : List.of(body)) {
+			commands.add(toCommand(node));
+		}
+		var jobs = new ArrayList<String>();
+		for (Command command : commands) {
+			queue.emit(command);
+			if (command instanceof Command.Scan scan) {
+				jobs.add(scan.jobName());
+			}
+		}
+		send(exchange, 202, Map.of("accepted", commands.size(), "jobs", jobs));
+	}
+
+	private void jobs(HttpExchange exchange) throws IOException, InterruptedException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			sendError(exchange, 405, "Use GET");
+			return;
+		}
+		String path = exchange
+				.getRequestURI()
+				.getPath()
+				.substring("/jobs".length());
+		if (path.isEmpty() || path.equals("/")) {
+			send(exchange, 200, jobManager.getJobStatuses());
+			return;
+		}
+		boolean events = path.endsWith(EVENTS_SUFFIX);
+		String jobName = path.substring(1, events ? path.length() - EVENTS_SUFFIX.length() : path.length());
+		Optional<JobStatus> status = jobManager.getJobStatus(jobName);
+		if (status.isEmpty()) {
+			sendError(exchange, 404, "No job named " + jobName);
+			return;
+		}
+		if (events) {
+			streamEvents(exchange, jobName);
+		} else {
+			send(exchange, 200, status.get());
+		}
+	}
+
+	/// Sends the job's status every [#EVENT_INTERVAL], the last event is the one of the finished job.
+	private void streamEvents(HttpExchange exchange, String jobName) throws IOException, InterruptedException {
+		exchange
+				.getResponseHeaders()
+				.set("Content-Type", "text/event-stream");
+		exchange
+				.getResponseHeaders()
+				.set("Cache-Control", "no-cache");
+		// A length of 0 makes the response chunked, so every event is sent as soon as it's flushed
+		exchange.sendResponseHeaders(200, 0);
+		try (var out = exchange.getResponseBody()) {
+			while (true) {
+				JobStatus status = jobManager
+						.getJobStatus(jobName)
+						.orElseThrow();
+				out.write(("data: " + mapper.writeValueAsString(status) + "\n\n").getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				if (status.isFinished()) {
+					return;
+				}
+				Thread.sleep(EVENT_INTERVAL);
+			}
+		}
+	}
+
+	static Command toCommand(JsonNode node) {
+		String type = text(node, "type").toUpperCase();
+		return switch (type) {
+			case "SCAN" -> {
+				int priority = Command.Scan.DEFAULT_PRIORITY;
+				if (node.hasNonNull("priority")) {
+					JsonNode value = node.get("priority");
+					if (!value.isIntegralNumber() || !value.canConvertToInt()) {
+						throw new IllegalArgumentException("Priority must be a whole number.");
+					}
+					priority = value.intValue();
+				}
+				String job = node.hasNonNull("job") ? text(node, "job") : "job-" + UUID.randomUUID();
+				yield Command.Scan.of(
+						number(node, "min"),
+						number(node, "max"),
+						text(node, "letter"),
+						text(node, "output"),
+						job,
+						priority);
+			}
+			case "STATUS" -> new Command.Status(node.hasNonNull("job") ? text(node, "job") : null);
+			case "MAP" -> new Command.Map();
+			case "EXPORTMAP" -> new Command.ExportMap();
+			default -> throw new IllegalArgumentException("Unsupported command type: " + type);
+		};
+	}
+
+	private static String text(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		if (value == null || !value.isTextual() || value
+				.asText()
+				.isBlank()) {
+			throw new IllegalArgumentException("Missing or invalid '" + field + "'");
+		}
+		return value.asText();
+	}
+
+	private static double number(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		if (value == null || !value.isNumber()) {
+			throw new IllegalArgumentException("Missing or invalid '" + field + "'");
+		}
+		return value.doubleValue();
+	}
+
+	private void handle(HttpExchange exchange, Handler handler) {
+		try (exchange) {
+			try {
+				handler.handle(exchange);
+			} catch (IllegalArgumentException | JsonProcessingException e) {
+				sendError(exchange, 400, e.getMessage());
+			} catch (InterruptedException e) {
+				Thread
+						.currentThread()
+						.interrupt();
+			} catch (IOException e) {
+				// Mostly clients that went away in the middle of an event stream
+				log.debug("Control API exchange failed: {}", e.getMessage());
+			} catch (Exception e) {
+				log.error("Control API request {} failed: {}", exchange.getRequestURI(), e.getMessage());
+				sendError(exchange, 500, "Internal error");
+			}
+		} catch (IOException e) {
+			log.debug("Could not answer the control API request: {}", e.getMessage());
+		}
+	}
+
+	private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		send(exchange, status, Map.of("error", message == null ? "" : message));
+	}
+
+	private void send(HttpExchange exchange, int status, Object body) throws IOException {
+		byte[] json = mapper.writeValueAsBytes(body);
+		exchange
+				.getResponseHeaders()
+				.set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, json.length);
+		try (var out = exchange.getResponseBody()) {
+			out.write(json);
+		}
+	}
+
+	@FunctionalInterface
+	private interface Handler {
+		void handle(HttpExchange exchange) throws IOException, InterruptedException;
+	}
+}
@@ -0,0 +1,27 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/// A run of one of the CSV reports, including the time spent waiting for the export lock.
+@Name("ConcurrentMess.CsvExport")
+@Label("CSV Export")
+@Category({"Concurrent Mess", "Reports"})
+public final class CsvExportEvent extends Event {
+
+	@Label("File")
+	public String file;
+
+	@Label("Rows")
+	public int rows;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+
+	@Label("Succeeded")
+	public boolean succeeded;
+}
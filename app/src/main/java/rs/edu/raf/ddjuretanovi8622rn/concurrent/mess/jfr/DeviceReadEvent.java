@@ -0,0 +1,36 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/// A read that went through the read scheduler, from when the reader started waiting for the device
+/// to when it let go of it.
+@Name("ConcurrentMess.DeviceRead")
+@Label("Device Read")
+@Category({"Concurrent Mess", "Parsing"})
+public final class DeviceReadEvent extends Event {
+
+	@Label("Device")
+	public String device;
+
+	@Label("Path")
+	public String path;
+
+	@Label("Priority")
+	public String priority;
+
+	@Label("Waited")
+	@Description("How long the reader waited for its turn on the device")
+	@Timespan
+	public long waited;
+
+	@Label("Bytes")
+	@Description("Bytes paged in, zero for reads that aren't of a mapped file")
+	@DataAmount
+	public long bytes;
+}
@@ -0,0 +1,42 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/// A single pass over a measurement file, by a job or by the directory watcher.
+@Name("ConcurrentMess.FileParse")
+@Label("File Parse")
+@Category({"Concurrent Mess", "Parsing"})
+public final class FileParseEvent extends Event {
+
+	@Label("Path")
+	public String path;
+
+	@Label("Reader")
+	@Description("Name of the job that read the file, or watcher")
+	public String reader;
+
+	@Label("Offset")
+	@Description("Where the pass started, the watcher only reads what was appended since its last pass")
+	@DataAmount
+	public long offset;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+
+	@Label("Lines")
+	@Description("Rows parsed, zero when the pass was answered from the sidecar")
+	public long lines;
+
+	@Label("Matched")
+	@Description("Rows that matched the scan, only set for jobs")
+	public long matched;
+
+	@Label("From Sidecar")
+	public boolean fromSidecar;
+}
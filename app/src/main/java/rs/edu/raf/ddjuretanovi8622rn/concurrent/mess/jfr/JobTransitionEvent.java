@@ -0,0 +1,38 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/// A job moving from one state to the next, the first one of a job is its submission and has no `from` state.
+@Name("ConcurrentMess.JobTransition")
+@Label("Job Transition")
+@Category({"Concurrent Mess", "Jobs"})
+public final class JobTransitionEvent extends Event {
+
+	@Label("Job")
+	public String job;
+
+	@Label("From")
+	public String from;
+
+	@Label("To")
+	public String to;
+
+	@Label("Time In Previous State")
+	@Timespan
+	public long timeInPreviousState;
+
+	@Label("Priority")
+	public int priority;
+
+	@Label("Files")
+	public int files;
+
+	@Label("Input Size")
+	@DataAmount
+	public long inputBytes;
+}
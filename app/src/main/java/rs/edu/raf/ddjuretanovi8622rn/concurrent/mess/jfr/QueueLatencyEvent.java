@@ -0,0 +1,22 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/// Spans from when a message is put into the message queue to when it's taken out,
+/// so the duration of the event is how long the message waited.
+@Name("ConcurrentMess.QueueLatency")
+@Label("Message Queue Latency")
+@Category({"Concurrent Mess", "Queue"})
+public final class QueueLatencyEvent extends Event {
+
+	@Label("Message Type")
+	public String messageType;
+
+	@Label("Queue Length")
+	@Description("Messages left in the queue after this one was taken")
+	public int queueLength;
+}
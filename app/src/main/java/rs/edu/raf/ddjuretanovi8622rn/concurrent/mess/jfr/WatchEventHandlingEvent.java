@@ -0,0 +1,26 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/// The directory watcher handling a file once its file system events settled.
+@Name("ConcurrentMess.WatchEventHandling")
+@Label("Watch Event Handling")
+@Category({"Concurrent Mess", "Watcher"})
+public final class WatchEventHandlingEvent extends Event {
+
+	/// Of the last event
+	@Label("Kind")
+	public String kind;
+
+	@Label("Path")
+	public String path;
+
+	@Label("Coalesced Events")
+	public int events;
+
+	@Label("Outcome")
+	public String outcome;
+}
@@ -0,0 +1,127 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+
+/// Decides when a submitted job may start.
+///
+/// At most `maxRunningJobs` run at once, and together they may not reserve more than `memoryBudget` bytes
+/// or read more than `fileBudget` files at once. A job that is bigger than either budget still runs, but only on its own.
+/// Whose reads go first is up to the `ReadScheduler`, the file budget keeps the running jobs from opening more files
+/// than the disks can keep reading sequentially.
+/// Waiting jobs start by priority, then in the order they were submitted. A job that doesn't fit yet blocks the ones
+/// behind it, otherwise a stream of small jobs could starve a big one forever.
+final class AdmissionController {
+
+	private static final Comparator<Waiting> ORDER = Comparator
+			.comparing(Waiting::priority, Comparator.reverseOrder())
+			.thenComparingLong(Waiting::sequence);
+
+	private final int maxRunningJobs;
+	private final long memoryBudget;
+	private final int fileBudget;
+	/// Called outside the lock with every job that was just admitted
+	private final Consumer<Admitted> starter;
+	private final Lock lock = new ReentrantLock();
+	private final PriorityQueue<Waiting> waiting = new PriorityQueue<>(ORDER);
+	private long sequence;
+	private int running;
+	private long reservedMemory;
+	private int reservedFiles;
+	private boolean closed;
+
+	AdmissionController(int maxRunningJobs, long memoryBudget, int fileBudget, Consumer<Admitted> starter) {
+		this.maxRunningJobs = maxRunningJobs;
+		this.memoryBudget = memoryBudget;
+		this.fileBudget = fileBudget;
+		this.starter = starter;
+	}
+
+	void submit(Job job, int priority, Reservation reservation) {
+		List<Admitted> admitted;
+		lock.lock();
+		try {
+			waiting.add(new Waiting(job, priority, sequence++, reservation));
+			admitted = admit();
+		} finally {
+			lock.unlock();
+		}
+		admitted.forEach(starter);
+	}
+
+	/// Releases what `job` reserved when it was admitted.
+	void finished(Admitted job) {
+		List<Admitted> admitted;
+		lock.lock();
+		try {
+			running--;
+			reservedMemory -= job
+					.reservation()
+					.memory();
+			reservedFiles -= job
+					.reservation()
+					.files();
+			admitted = admit();
+		} finally {
+			lock.unlock();
+		}
+		admitted.forEach(starter);
+	}
+
+	/// @return the 1 based position of `job` among the waiting jobs, empty if it isn't waiting
+	OptionalInt position(Job job) {
+		lock.lock();
+		try {
+			var ordered = new ArrayList<>(waiting);
+			ordered.sort(ORDER);
+			for (int i = 0; i < ordered.size(); i++) {
+				if (ordered.get(i).job() == job) {
+					return OptionalInt.of(i + 1);
+				}
+			}
+			return OptionalInt.empty();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// Stops admitting jobs, the waiting ones stay pending.
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private List<Admitted> admit() {
+		var admitted = new ArrayList<Admitted>();
+		while (!closed && !waiting.isEmpty() && running < maxRunningJobs) {
+			Waiting next = waiting.peek();
+			Reservation reservation = next.reservation();
+			if (running > 0 && !fits(reservation)) {
+				break;
+			}
+			waiting.poll();
+			running++;
+			reservedMemory += reservation.memory();
+			reservedFiles += reservation.files();
+			admitted.add(new Admitted(next.job(), reservation));
+		}
+		return admitted;
+	}
+
+	private boolean fits(Reservation reservation) {
+		return reservedMemory + reservation.memory() <= memoryBudget && reservedFiles + reservation.files() <= fileBudget;
+	}
+
+	/// What a job holds while it runs.
+	///
+	/// @param memory bytes the job may hold at once
+	/// @param files  files the job reads at once
+	record Reservation(long memory, int files) {}
+
+	record Admitted(Job job, Reservation reservation) {}
+
+	private record Waiting(Job job, int priority, long sequence, Reservation reservation) {}
+}
@@ -3,83 +3,244 @@ package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
 import module java.base;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache.ColumnarCache;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr.FileParseEvent;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ChunkSink;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementParser;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementScanner;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ReadScheduler;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.RowVisitor;
 
 public class FileProcessingTask implements Runnable {
 
 	private static final Logger log = LoggerFactory.getLogger(FileProcessingTask.class);
+	/// A file is read in segments of this size, every one of them ends with a checkpoint.
+	/// Segments start at multiples of it, so that jobs reading the same file can still share their passes.
+	/// The matches of a segment are written out chunk by chunk while it's read, so it isn't buffered as a whole.
+	static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+	/// Matches of a sidecar query are handed over in batches of about this size
+	private static final int SIDECAR_BATCH_BYTES = 1024 * 1024;
 
 	private final Path path;
 
-	/// If true, treat file as CSV otherwise semicolon separated.
-	private final boolean isCsv;
+	/// Bounds in tenths of a degree, inclusive.
+	private final int minTenths;
 
-	private final double min;
+	private final int maxTenths;
 
-	private final double max;
+	private final char letter;
 
-	private final char targetChar;
+	/// UTF-8 encoding of the target letter, matched against the raw station name bytes.
+	private final byte[] targetPrefix;
 
-	private final String outputFile;
-	private final String jobName;
+	/// Answers the scan without parsing the file when it has an up to date sidecar, null to always parse.
+	private final ColumnarCache cache;
+
+	/// Shares the pass over the file with other jobs scanning it at the same time, null to always read it alone.
+	private final SharedScanCoordinator coordinator;
+
+	/// The job's writer, null if the task runs on its own and opens the output file itself.
+	private final JobOutput output;
 
+	/// The job's counters, a task that runs on its own has its own
+	private final JobProgress jobProgress;
 
-	// Reference to the job's overall result map.
+	private final JobProgress.FileProgress progress;
+
+	/// Index of the file in the job's list of files, for its checkpoints
+	private final int fileIndex;
+
+	/// Where the file continues, non zero when the job is resumed
+	private final long startOffset;
+
+	private final String outputFile;
+	private final String jobName;
 
 
 	public FileProcessingTask(Path path, Command.Scan scanParameters, String jobName) {
+		this(path, scanParameters, jobName, null, null, null, null, 0, 0);
+	}
+
+	FileProcessingTask(
+			Path path,
+			Command.Scan scanParameters,
+			String jobName,
+			ColumnarCache cache,
+			SharedScanCoordinator coordinator,
+			JobOutput output,
+			JobProgress progress,
+			int fileIndex,
+			long startOffset) {
 		this.path = path;
-		this.isCsv = path
-				.toString()
-				.endsWith(".csv");
-		this.min = scanParameters.min();
-		this.max = scanParameters.max();
-		this.targetChar = scanParameters.letter();
+		this.minTenths = MeasurementParser.ceilTenths(scanParameters.min());
+		this.maxTenths = MeasurementParser.floorTenths(scanParameters.max());
+		this.letter = scanParameters.letter();
+		this.targetPrefix = String
+				.valueOf(scanParameters.letter())
+				.getBytes(StandardCharsets.UTF_8);
 		this.outputFile = scanParameters.outputFilename();
 		this.jobName = jobName;
+		this.cache = cache;
+		this.coordinator = coordinator;
+		this.output = output;
+		this.jobProgress = progress == null ? new JobProgress(List.of(path)) : progress;
+		this.progress = jobProgress.file(path);
+		this.fileIndex = fileIndex;
+		this.startOffset = startOffset;
 	}
 
 	@Override
 	public void run() {
 		try {
-			var outputPath = Paths.get(outputFile);
-			try (var stream = Files.lines(path); var writer = Files.newBufferedWriter(
-					outputPath,
-					StandardOpenOption.APPEND)) {
-				Stream<String> s = isCsv ? stream.skip(1) : stream;
-
-				AtomicInteger count = new AtomicInteger(0);
-
-				s
-						.filter(string -> string.charAt(0) == targetChar)
-						.map(this::parseLine)
-						.filter(l -> l.temperature >= min && l.temperature <= max)
-						.forEach(m -> {
-							try {
-								writer.write(String.format("%s;%.1f%n", m.stationName, m.temperature));
-								count.incrementAndGet();
-							} catch (IOException e) {
-								log.error("{} - Error writing to output file: {}", jobName, e.getMessage());
-							}
-						});
-				log.info("{} - Got {} results for file {}", jobName, count.get(), path);
+			if (output != null) {
+				process(output);
+				return;
+			}
+			try (var ownOutput = new JobOutput(Path.of(outputFile), jobName, jobProgress, null)) {
+				process(ownOutput);
 			}
+		} catch (InterruptedException | InterruptedIOException e) {
+			Thread
+					.currentThread()
+					.interrupt();
+			log.info("{} - Interrupted while processing {}", jobName, path);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	private Measurement parseLine(String line) {
-		String[] parts = line.split(isCsv ? "," : ";");
-		if (parts.length != 2) {
-			throw new IllegalArgumentException("Invalid line format: " + line);
+	private void process(JobOutput output) throws IOException, InterruptedException {
+		var event = new FileParseEvent();
+		event.begin();
+		progress.started();
+		try {
+			processFile(output, event);
+		} finally {
+			progress.finished();
+			event.end();
+			if (event.shouldCommit()) {
+				event.path = path.toString();
+				event.reader = jobName;
+				event.commit();
+			}
 		}
-		String stationName = parts[0].trim();
-		double temperature = Double.parseDouble(parts[1].trim());
-		return new Measurement(stationName, temperature);
 	}
 
-	record Measurement(String stationName, double temperature) {}
+	private void processFile(JobOutput output, FileParseEvent event) throws IOException, InterruptedException {
+		event.offset = startOffset;
+		if (cache != null && startOffset == 0) {
+			var collector = new MatchCollector();
+			boolean cached;
+			try {
+				cached = cache.scan(path, minTenths, maxTenths, letter, (data, nameOffset, nameLength, temperature) -> {
+					collector.visit(data, nameOffset, nameLength, temperature);
+					if (collector.output.size() >= SIDECAR_BATCH_BYTES) {
+						try {
+							flush(output, collector, null);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			if (cached) {
+				event.fromSidecar = true;
+				event.matched = collector.count;
+				progress.chunkDone(0, 0, collector.count);
+				flush(output, collector, new JobJournal.Checkpoint(fileIndex, Files.size(path), true, 0));
+				log.info("{} - Got {} results for file {} from its sidecar", jobName, collector.count, path);
+				return;
+			}
+		}
+		long offset = startOffset;
+		long count = 0;
+		long lines = 0;
+		boolean done;
+		ChunkSink<MatchCollector> flush = (chunk, next) -> flush(
+				output,
+				chunk,
+				next < 0 ? null : new JobJournal.Checkpoint(fileIndex, next, false, 0));
+		do {
+			long limit = (offset / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+			MeasurementScanner.Result<MatchCollector> segment;
+			if (coordinator == null) {
+				segment = MeasurementScanner.scan(
+						path,
+						ReadScheduler.Priority.SCAN,
+						offset,
+						limit,
+						true,
+						MatchCollector::new,
+						(chunk, bytes) -> progress.chunkDone(bytes, chunk.visited, chunk.count),
+						flush);
+			} else {
+				segment = coordinator.scan(
+						path,
+						offset,
+						limit,
+						targetPrefix[0],
+						MatchCollector::new,
+						(chunk, bytes, rows) -> {
+							chunk.visited = rows;
+							progress.chunkDone(bytes, rows, chunk.count);
+						},
+						flush);
+			}
+			// The rows are already handed over, only the segment's end is left
+			for (MatchCollector chunk : segment.chunks()) {
+				count += chunk.count;
+				lines += chunk.visited;
+			}
+			offset = segment.end();
+			done = offset >= segment.size();
+			output.write(fileIndex, List.of(), 0, new JobJournal.Checkpoint(fileIndex, offset, done, 0));
+		} while (!done);
+		event.bytes = progress.bytes();
+		event.lines = lines;
+		event.matched = count;
+		log.info("{} - Got {} results for file {}", jobName, count, path);
+	}
+
+	/// Hands the rows of a chunk that weren't handed over yet to the output, in file order.
+	///
+	/// @param checkpoint where the file continues after them, null if it can't continue there
+	private void flush(JobOutput output, MatchCollector chunk, JobJournal.Checkpoint checkpoint) throws IOException {
+		try {
+			output.write(fileIndex, chunk.output.take(), chunk.count - chunk.flushed, checkpoint);
+			chunk.flushed = chunk.count;
+		} catch (InterruptedException e) {
+			Thread
+					.currentThread()
+					.interrupt();
+			throw new InterruptedIOException("Interrupted while writing the results for " + path);
+		}
+	}
+
+	/// Collects the matching rows of a single chunk, already encoded the way they're written out.
+	private final class MatchCollector implements RowVisitor {
+		private final OutputBuffer output = new OutputBuffer();
+		private long count;
+		/// Of `count`, handed over to the output already
+		private long flushed;
+		/// Every row of the chunk, when the chunk is part of a shared pass it's set from the pass' count instead
+		private long visited;
+
+		@Override
+		public void visit(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+			visited++;
+			if (temperature < minTenths || temperature > maxTenths) {
+				return;
+			}
+			if (!MeasurementParser.startsWith(data, nameOffset, nameLength, targetPrefix)) {
+				return;
+			}
+			output.appendRow(data, nameOffset, nameLength, temperature);
+			count++;
+		}
+	}
 
 	record Stats(double sum, int count) {}
-}
\ No newline at end of file
+}
@@ -1,7 +1,9 @@
 package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
 
 import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache.ColumnarCache;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr.JobTransitionEvent;
 
 public final class Job {
 	private final List<Path> filesToProcess;
@@ -9,44 +11,132 @@ public final class Job {
 	private final Map<String, Map<String, Double>> resultMap;
 	private final ExecutorService executorService;
 	private final List<Future<?>> futures;
+	private final ColumnarCache cache;
+	private final SharedScanCoordinator coordinator;
+	/// Files that are processed at once, the rest wait for a permit
+	private final Semaphore permits;
+	private final JobProgress progress;
+	/// Null if the job isn't journaled
+	private final JobJournal journal;
+	/// What an earlier run of the job got done, null if the job starts from scratch
+	private final JobJournal.Progress resumeFrom;
 
 
 	private JobInfo jobInfo;
+	/// When the job entered its current state
+	private long stateSince;
 
 
-	public Job(String jobName, Command.Scan scanParams, List<Path> filesToProcess) {
+	Job(
+			String jobName,
+			Command.Scan scanParams,
+			List<Path> filesToProcess,
+			ColumnarCache cache,
+			SharedScanCoordinator coordinator,
+			int maxTasks,
+			JobJournal journal,
+			JobJournal.Progress resumeFrom) {
 		this.filesToProcess = filesToProcess;
+		this.cache = cache;
+		this.coordinator = coordinator;
+		this.permits = new Semaphore(maxTasks);
+		this.journal = journal;
+		this.resumeFrom = resumeFrom;
+		this.progress = new JobProgress(filesToProcess);
+		if (resumeFrom != null) {
+			for (int i = 0; i < filesToProcess.size(); i++) {
+				progress.resumed(filesToProcess.get(i), resumeFrom.offset(i));
+			}
+		}
 		this.executorService = Executors.newVirtualThreadPerTaskExecutor();
 		this.resultMap = new ConcurrentHashMap<>();
-		this.futures = new ArrayList<>();
+		// Cancelled from another thread while start() is still adding to it
+		this.futures = new CopyOnWriteArrayList<>();
 
-		this.jobInfo = new JobInfo(jobName, scanParams, JobState.PENDING);
+		this.jobInfo = new JobInfo(jobName, scanParams, null);
+		transition(JobState.PENDING);
 	}
 
 	public void start() throws ExecutionException, InterruptedException, IOException {
-		this.jobInfo = new JobInfo(this.jobInfo.jobName, this.jobInfo.scanParams, JobState.RUNNING);
+		transition(JobState.RUNNING);
 		var outputFile = this.jobInfo.scanParams.outputFilename();
-		for (Path file : filesToProcess) {
-			FileProcessingTask task = new FileProcessingTask(file, this.jobInfo.scanParams, this.jobInfo.jobName);
-			Future<?> future = executorService.submit(task);
-			futures.add(future);
-			for (Future<?> f : futures) {
-				f.get();
+		progress.started();
+		try (var output = new JobOutput(Path.of(outputFile), this.jobInfo.jobName, progress, journal)) {
+			for (int i = 0; i < filesToProcess.size(); i++) {
+				if (resumeFrom != null && resumeFrom.isDone(i)) {
+					continue;
+				}
+				FileProcessingTask task = new FileProcessingTask(
+						filesToProcess.get(i),
+						this.jobInfo.scanParams,
+						this.jobInfo.jobName,
+						cache,
+						coordinator,
+						output,
+						progress,
+						i,
+						resumeFrom == null ? 0 : resumeFrom.offset(i));
+				// Every file is submitted right away, the permits only limit how many of them run at once
+				futures.add(executorService.submit(() -> {
+					permits.acquire();
+					try {
+						task.run();
+					} finally {
+						permits.release();
+					}
+					return null;
+				}));
 			}
+			try {
+				for (Future<?> f : futures) {
+					f.get();
+				}
+			} catch (InterruptedException e) {
+				// Stop reading the files too, a resumed run picks them up from their last checkpoint
+				for (Future<?> f : futures) {
+					f.cancel(true);
+				}
+				throw e;
+			}
+		} finally {
+			progress.finished();
 		}
-		this.jobInfo = new JobInfo(this.jobInfo.jobName, this.jobInfo.scanParams, JobState.COMPLETED);
+		transition(JobState.COMPLETED);
 	}
 	public void cancel() {
-		this.jobInfo = new JobInfo(this.jobInfo.jobName, this.jobInfo.scanParams, JobState.CANCELLED);
+		transition(JobState.CANCELLED);
 		for (Future<?> f : futures) {
 			f.cancel(true);
 		}
 		this.executorService.shutdownNow();
 	}
 
+	private void transition(JobState state) {
+		JobState previous = this.jobInfo.state;
+		this.jobInfo = new JobInfo(this.jobInfo.jobName, this.jobInfo.scanParams, state);
+		long now = System.nanoTime();
+		var event = new JobTransitionEvent();
+		if (event.shouldCommit()) {
+			event.job = jobInfo.jobName;
+			event.from = previous == null ? null : previous.name();
+			event.to = state.name();
+			event.timeInPreviousState = previous == null ? 0 : now - stateSince;
+			event.priority = jobInfo.scanParams.priority();
+			event.files = filesToProcess.size();
+			event.inputBytes = progress.totalBytes();
+			event.commit();
+		}
+		stateSince = now;
+	}
+
 	public JobInfo getJobInfo() {
 		return jobInfo;
 	}
 
+	/// @return empty until the job starts
+	Optional<JobProgress.Snapshot> progress() {
+		return progress.snapshot();
+	}
+
 	public record JobInfo(String jobName, Command.Scan scanParams, JobState state) {}
 }
\ No newline at end of file
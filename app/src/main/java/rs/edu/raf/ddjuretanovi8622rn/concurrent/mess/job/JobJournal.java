@@ -0,0 +1,325 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.App;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+
+/// Append only log of how far every job got, so that `START -l` can resume jobs where they stopped,
+/// even when the app was killed instead of stopped.
+///
+/// Every line is a JSON record:
+/// - `started`, with the scan and the files of a job, and the size, modification time and fileKey of every file,
+/// - `checkpoint`, once a segment of one of the files is in the job's output, with the offset the file continues from
+///   and the length of the output at that point,
+/// - `finished`, once the job doesn't have to be resumed anymore.
+///
+/// Checkpoints of several files that are only right together are written as one line per file, and only the last of
+/// them has the output length. The lines before it don't count until it's there too.
+///
+/// A line cut off by a crash is ignored. The journal is compacted every time it's loaded.
+final class JobJournal {
+
+	private static final Logger log = LoggerFactory.getLogger(JobJournal.class);
+	private static final String STARTED = "started";
+	private static final String CHECKPOINT = "checkpoint";
+	private static final String FINISHED = "finished";
+
+	private final Path file;
+	private final ObjectMapper mapper = App.ObjectMapperHolder.getObjectMapper();
+	private final Lock lock = new ReentrantLock();
+
+	JobJournal(Path file) {
+		this.file = file;
+	}
+
+	void started(String jobName, Command.Scan scan, List<Path> files) throws IOException {
+		var versions = new ArrayList<FileVersion>(files.size());
+		for (Path file : files) {
+			versions.add(FileVersion.of(file));
+		}
+		append(List.of(startedLine(jobName, scan, files, versions)));
+	}
+
+	/// Has to be called only after the output the checkpoints cover is on disk.
+	/// Consecutive checkpoints with the same output length are only resumed from together.
+	void checkpoints(String jobName, List<Checkpoint> checkpoints) throws IOException {
+		append(checkpointLines(jobName, checkpoints));
+	}
+
+	void finished(String jobName) throws IOException {
+		append(List.of(new Line(FINISHED, jobName, null, null, null, null, null, null, null)));
+	}
+
+	/// Forgets every job.
+	void clear() throws IOException {
+		lock.lock();
+		try {
+			Files.deleteIfExists(file);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// Reads the jobs that haven't finished, in the order they were started,
+	/// and rewrites the journal with only what is needed to resume them.
+	List<Progress> load() throws IOException {
+		lock.lock();
+		try {
+			if (!Files.exists(file)) {
+				return List.of();
+			}
+			var jobs = new LinkedHashMap<String, Progress>();
+			try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+				for (String text : (Iterable<String>) lines::iterator) {
+					Line line;
+					try {
+						line = mapper.readValue(text, Line.class);
+					} catch (IOException e) {
+						log.warn("Skipping a damaged line of {}: {}", file, e.getMessage());
+						continue;
+					}
+					apply(jobs, line);
+				}
+			}
+			var unfinished = List.copyOf(jobs.values());
+			compact(unfinished);
+			return unfinished;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static void apply(Map<String, Progress> jobs, Line line) {
+		switch (line.type()) {
+			case STARTED -> jobs.put(
+					line.job(),
+					new Progress(
+							line.job(),
+							line
+									.scan()
+									.toScanCommand(line.job()),
+							line
+									.files()
+									.stream()
+									.map(Path::of)
+									.toList(),
+							line.versions()));
+			case CHECKPOINT -> {
+				Progress progress = jobs.get(line.job());
+				// Checkpoints of a job that was forgotten can still trickle in while it's being stopped
+				if (progress != null && line.file() < progress.offsets.length) {
+					progress.pending.add(line);
+					if (line.output() != null) {
+						progress.commit(line.output());
+					}
+				}
+			}
+			case FINISHED -> jobs.remove(line.job());
+			default -> log.warn("Unknown journal record {}", line.type());
+		}
+	}
+
+	private void compact(List<Progress> jobs) throws IOException {
+		var lines = new ArrayList<Line>();
+		for (Progress progress : jobs) {
+			lines.add(startedLine(progress.jobName, progress.scan, progress.files, progress.versions));
+			var checkpoints = new ArrayList<Checkpoint>();
+			for (int i = 0; i < progress.files.size(); i++) {
+				if (progress.offsets[i] > 0 || progress.done[i]) {
+					checkpoints.add(new Checkpoint(i, progress.offsets[i], progress.done[i], progress.outputLength));
+				}
+			}
+			lines.addAll(checkpointLines(progress.jobName, checkpoints));
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(temporary, encode(lines));
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void append(List<Line> lines) throws IOException {
+		byte[] bytes = encode(lines);
+		lock.lock();
+		try (var channel = FileChannel.open(
+				file,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			var buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private byte[] encode(List<Line> lines) throws IOException {
+		var out = new ByteArrayOutputStream();
+		for (Line line : lines) {
+			out.write(mapper.writeValueAsBytes(line));
+			out.write('\n');
+		}
+		return out.toByteArray();
+	}
+
+	private static Line startedLine(String jobName, Command.Scan scan, List<Path> files, List<FileVersion> versions) {
+		return new Line(
+				STARTED,
+				jobName,
+				SavedJob
+						.fromCommand(scan)
+						.scanParams(),
+				files
+						.stream()
+						.map(Path::toString)
+						.toList(),
+				versions,
+				null,
+				null,
+				null,
+				null);
+	}
+
+	/// Only the last line of every run of checkpoints with the same output length gets it.
+	private static List<Line> checkpointLines(String jobName, List<Checkpoint> checkpoints) {
+		var lines = new ArrayList<Line>(checkpoints.size());
+		for (int i = 0; i < checkpoints.size(); i++) {
+			Checkpoint checkpoint = checkpoints.get(i);
+			boolean last = i == checkpoints.size() - 1 || checkpoints
+					.get(i + 1)
+					.outputLength() != checkpoint.outputLength();
+			lines.add(new Line(
+					CHECKPOINT,
+					jobName,
+					null,
+					null,
+					null,
+					checkpoint.file(),
+					checkpoint.offset(),
+					checkpoint.done(),
+					last ? checkpoint.outputLength() : null));
+		}
+		return lines;
+	}
+
+	/// @param file         index of the file in the job's list of files
+	/// @param offset       where the file continues, always the start of a line
+	/// @param done         whether the whole file was read
+	/// @param outputLength length of the job's output once this and every earlier checkpoint of the job was written
+	record Checkpoint(int file, long offset, boolean done, long outputLength) {
+
+		Checkpoint withOutputLength(long length) {
+			return new Checkpoint(file, offset, done, length);
+		}
+	}
+
+	/// What a file looked like when its job started. Offsets into it are only where the job left off while it still
+	/// looks the same, a file that was replaced or written to since may have different lines at them.
+	///
+	/// @param modified modification time in nanoseconds
+	/// @param key      the file system's [BasicFileAttributes#fileKey()] as a string, null if it has none
+	record FileVersion(long size, long modified, String key) {
+
+		static FileVersion of(Path file) throws IOException {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return new FileVersion(
+					attributes.size(),
+					attributes
+							.lastModifiedTime()
+							.to(TimeUnit.NANOSECONDS),
+					Objects.toString(attributes.fileKey(), null));
+		}
+	}
+
+	/// How far an unfinished job got.
+	static final class Progress {
+		private final String jobName;
+		private final Command.Scan scan;
+		private final List<Path> files;
+		private final List<FileVersion> versions;
+		private final long[] offsets;
+		private final boolean[] done;
+		private long outputLength;
+		/// Checkpoint lines read since the last one with an output length
+		private final List<Line> pending = new ArrayList<>();
+
+		private Progress(String jobName, Command.Scan scan, List<Path> files, List<FileVersion> versions) {
+			this.jobName = jobName;
+			this.scan = scan;
+			this.files = files;
+			this.versions = versions;
+			this.offsets = new long[files.size()];
+			this.done = new boolean[files.size()];
+		}
+
+		private void commit(long outputLength) {
+			for (Line line : pending) {
+				offsets[line.file()] = line.offset();
+				done[line.file()] = line.done();
+			}
+			pending.clear();
+			this.outputLength = outputLength;
+		}
+
+		String jobName() {
+			return jobName;
+		}
+
+		Command.Scan scan() {
+			return scan;
+		}
+
+		List<Path> files() {
+			return files;
+		}
+
+		long offset(int file) {
+			return offsets[file];
+		}
+
+		boolean isDone(int file) {
+			return done[file];
+		}
+
+		/// @return whether every file is still there and looks like it did when the job started
+		boolean filesUnchanged() {
+			if (versions.size() != files.size()) {
+				return false;
+			}
+			for (int i = 0; i < files.size(); i++) {
+				try {
+					if (!FileVersion
+							.of(files.get(i))
+							.equals(versions.get(i))) {
+						return false;
+					}
+				} catch (IOException e) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/// Everything after this in the output was written after the last checkpoint, and is written again on resume.
+		long outputLength() {
+			return outputLength;
+		}
+	}
+
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private record Line(
+			String type,
+			String job,
+			SavedScanParameters scan,
+			List<String> files,
+			List<FileVersion> versions,
+			Integer file,
+			Long offset,
+			Boolean done,
+			Long output) {}
+}
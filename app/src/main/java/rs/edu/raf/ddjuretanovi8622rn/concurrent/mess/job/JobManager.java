@@ -5,38 +5,66 @@ import com.fasterxml.jackson.dataformat.toml.TomlMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.App;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache.ColumnarCache;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.WatchRoots;
 
 public final class JobManager {
 
 	private static final Logger log = LoggerFactory.getLogger(JobManager.class);
 	private static final Path JOBS_CONFIG_FILE = Path.of("load_config.toml");
+	private static final Path JOURNAL_FILE = Path.of("jobs.journal");
 
 
 	private final ExecutorService executorService;
 
 	private final Map<String, Job> jobs = new ConcurrentHashMap<>();
 
+	private final ColumnarCache cache;
+
+	private final SharedScanCoordinator coordinator;
+
+	private final JobSettings settings;
+
+	private final AdmissionController admission;
+
+	private final JobJournal journal = new JobJournal(JOURNAL_FILE);
+
 	private boolean started = false;
 
-	private Path watchDir;
+	private WatchRoots watchRoots;
 
 	public JobManager() {
+		this(JobSettings.defaults());
+	}
+
+	public JobManager(JobSettings settings) {
 		executorService = Executors.newVirtualThreadPerTaskExecutor();
+		cache = new ColumnarCache(settings.cacheDirectory(), settings.cacheMemory());
+		coordinator = new SharedScanCoordinator(settings.scanBatchWindow());
+		this.settings = settings;
+		admission = new AdmissionController(
+				settings.maxRunningJobs(),
+				settings.jobMemoryBudget(),
+				settings.jobFileBudget(),
+				this::run);
 	}
 
 
-	public void init(boolean loadJobs, Path watchDir) {
+	public void init(boolean loadJobs, WatchRoots watchRoots) {
 		if (started) {
 			throw new IllegalStateException("JobManager is already started");
 		}
 		started = true;
-		this.watchDir = watchDir;
-		log.info("JobManager initialized with watch directory: {}", watchDir);
+		this.watchRoots = watchRoots;
+		log.info("JobManager initialized with watch directories: {}", watchRoots.directories());
 
 
 		if (loadJobs) {
+			resumeJournaledJobs();
 			loadSavedJobs();
+		} else {
+			clearJournal();
 		}
 	}
 
@@ -46,9 +74,12 @@ public final class JobManager {
 			return;
 		}
 
+		admission.close();
 		if (saveJobs) {
 			log.info("Saving unexecuted jobs to {}", JOBS_CONFIG_FILE);
 			saveUnexecutedJobs();
+		} else {
+			clearJournal();
 		}
 		log.debug("Shutting down executor service");
 
@@ -99,32 +130,152 @@ public final class JobManager {
 				return;
 			}
 
-			Job job = new Job(scan.jobName(), scan, filesToProcess);
+			Job job = new Job(
+					scan.jobName(),
+					scan,
+					filesToProcess,
+					cache,
+					coordinator,
+					settings.maxTasksPerJob(),
+					journal,
+					null);
 			jobs.put(scan.jobName(), job);
+			try {
+				journal.started(scan.jobName(), scan, filesToProcess);
+			} catch (IOException e) {
+				log.warn("Job {} - Could not journal the job, it can't be resumed: {}", scan.jobName(), e.getMessage());
+			}
 
-			executorService.submit(() -> {
-				try {
-					job.start();
-					log.info("Job {} - completed", scan.jobName());
-				}
-				catch (InterruptedException | CancellationException e) {
-					log.info("Job {} - interrupted / cancelled", scan.jobName());
-				} catch (Exception e) {
-					log.error(
-							"Job {} - Error in job: {} error: {}",
-							scan.jobName(),
-							e.getMessage(),
-							e
-									.getClass()
-									.getSimpleName());
-					job.cancel();
-				}
-			});
+			submit(job, filesToProcess);
 		} catch (Exception e) {
 			log.error("Failed to start scan job: {}", e.getMessage());
 		}
 	}
 
+	private void submit(Job job, List<Path> files) {
+		Job.JobInfo info = job.getJobInfo();
+		var reservation = new AdmissionController.Reservation(
+				estimateMemory(files),
+				Math.min(files.size(), settings.maxTasksPerJob()));
+		admission.submit(job, info.scanParams().priority(), reservation);
+		admission
+				.position(job)
+				.ifPresent(position -> log.info("Job {} - waiting to start, position {} in the queue", info.jobName(), position));
+	}
+
+	private void run(AdmissionController.Admitted admitted) {
+		Job job = admitted.job();
+		String jobName = job
+				.getJobInfo()
+				.jobName();
+		executorService.submit(() -> {
+			try {
+				job.start();
+				log.info("Job {} - completed", jobName);
+				journalFinished(jobName);
+			}
+			catch (InterruptedException | CancellationException e) {
+				// Stays in the journal, so that it can be resumed
+				log.info("Job {} - interrupted / cancelled", jobName);
+			} catch (Exception e) {
+				journalFinished(jobName);
+				log.error(
+						"Job {} - Error in job: {} error: {}",
+						jobName,
+						e.getMessage(),
+						e
+								.getClass()
+								.getSimpleName());
+				job.cancel();
+			} finally {
+				admission.finished(admitted);
+			}
+		});
+	}
+
+	private void journalFinished(String jobName) {
+		try {
+			journal.finished(jobName);
+		} catch (IOException e) {
+			log.warn("Job {} - Could not journal that the job finished: {}", jobName, e.getMessage());
+		}
+	}
+
+	private void clearJournal() {
+		try {
+			journal.clear();
+		} catch (IOException e) {
+			log.warn("Could not clear {}: {}", JOURNAL_FILE, e.getMessage());
+		}
+	}
+
+	/// Picks up every job of the journal that didn't finish where its last checkpoint left it.
+	///
+	/// The output is cut back to its length at that checkpoint, whatever was written after it is written again.
+	/// A job whose output isn't there anymore, or whose files are gone or changed since it started, starts from scratch.
+	private void resumeJournaledJobs() {
+		List<JobJournal.Progress> unfinished;
+		try {
+			unfinished = journal.load();
+		} catch (IOException e) {
+			log.error("Failed to read {}: {}", JOURNAL_FILE, e.getMessage());
+			return;
+		}
+		for (JobJournal.Progress progress : unfinished) {
+			String jobName = progress.jobName();
+			Command.Scan scan = progress.scan();
+			Path output = Path.of(scan.outputFilename());
+			boolean resumable;
+			try {
+				resumable = progress.filesUnchanged() && Files.size(output) >= progress.outputLength();
+			} catch (IOException e) {
+				resumable = false;
+			}
+			if (!resumable) {
+				log.warn("Job {} - Its files or output changed, starting it again", jobName);
+				scan(scan);
+				continue;
+			}
+			try (var channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+				channel.truncate(progress.outputLength());
+			} catch (IOException e) {
+				log.error("Job {} - Could not resume it: {}", jobName, e.getMessage());
+				continue;
+			}
+			Job job = new Job(
+					jobName,
+					scan,
+					progress.files(),
+					cache,
+					coordinator,
+					settings.maxTasksPerJob(),
+					journal,
+					progress);
+			jobs.put(jobName, job);
+			log.info("Resuming job {}", jobName);
+			submit(job, progress.files());
+		}
+	}
+
+	/// Worst case, every row matches. Matches are written out chunk by chunk, so a file that's being read holds at most
+	/// the ones of the segment it's in, and the output's queue holds up to [JobOutput#QUEUE_BYTES] of them on top.
+	private long estimateMemory(List<Path> files) {
+		return JobOutput.QUEUE_BYTES + files
+				.stream()
+				.mapToLong(file -> {
+					try {
+						return Math.min(Files.size(file), FileProcessingTask.SEGMENT_SIZE);
+					} catch (IOException e) {
+						return 0;
+					}
+				})
+				.boxed()
+				.sorted(Comparator.reverseOrder())
+				.limit(settings.maxTasksPerJob())
+				.mapToLong(Long::longValue)
+				.sum();
+	}
+
 	public void status(String jobName) {
 		if (!started) {
 			log.error("JobManager not started, cannot check status");
@@ -132,16 +283,7 @@ public final class JobManager {
 		}
 		if (jobName == null || jobName.isEmpty()) {
 			log.info("No job name provided, showing status of all jobs");
-			jobs.forEach((name, job) -> {
-				Job.JobInfo jobInfo = job.getJobInfo();
-				log.info(
-						"{} is {}",
-						name,
-						jobInfo
-								.state()
-								.name()
-								.toLowerCase());
-			});
+			jobs.forEach(this::logStatus);
 			return;
 		}
 
@@ -157,35 +299,102 @@ public final class JobManager {
 			return;
 		}
 
-		Job.JobInfo jobInfo = job.getJobInfo();
+		logStatus(jobName, job);
+	}
+
+	private void logStatus(String jobName, Job job) {
+		JobStatus status = statusOf(jobName, job);
+		String state = status
+				.state()
+				.name()
+				.toLowerCase();
+		if (status.queuePosition() != null) {
+			log.info("{} is {}, position {} in the queue", jobName, state, status.queuePosition());
+			return;
+		}
+		JobStatus.Progress progress = status.progress();
+		if (progress == null) {
+			log.info("{} is {}", jobName, state);
+			return;
+		}
 		log.info(
-				"{} is {}",
+				"{} is {}, {}% done, {} rows/s, {} MB/s, ETA {}, {} matched, {} written{}",
 				jobName,
-				jobInfo
-						.state()
-						.name()
-						.toLowerCase());
+				state,
+				String.format("%.1f", progress.percent()),
+				String.format("%.0f", progress.rowsPerSecond()),
+				String.format("%.1f", progress.bytesPerSecond() / (1024 * 1024)),
+				progress.etaSeconds() == null ? "unknown" : progress.etaSeconds() + "s",
+				progress.linesMatched(),
+				progress.rowsWritten(),
+				progress.slowestFile() == null ? "" : String.format(
+						", slowest file %s at %.1f MB/s",
+						progress.slowestFile(),
+						progress.slowestFileBytesPerSecond() / (1024 * 1024)));
+	}
+
+	/// Doesn't log anything and doesn't go through the message queue, so it can be polled as often as needed.
+	public Optional<JobStatus> getJobStatus(String jobName) {
+		return Optional
+				.ofNullable(jobs.get(jobName))
+				.map(job -> statusOf(jobName, job));
+	}
 
+	/// Like [#getJobStatus(String)], for every job, sorted by name.
+	public List<JobStatus> getJobStatuses() {
+		return jobs
+				.entrySet()
+				.stream()
+				.sorted(Map.Entry.comparingByKey())
+				.map(entry -> statusOf(entry.getKey(), entry.getValue()))
+				.toList();
+	}
+
+	private JobStatus statusOf(String jobName, Job job) {
+		JobState state = job
+				.getJobInfo()
+				.state();
+		if (state == JobState.PENDING) {
+			OptionalInt position = admission.position(job);
+			if (position.isPresent()) {
+				return new JobStatus(jobName, state, position.getAsInt(), null);
+			}
+		}
+		JobStatus.Progress progress = job
+				.progress()
+				.map(snapshot -> new JobStatus.Progress(
+						snapshot.percent(),
+						snapshot.rowsPerSecond(),
+						snapshot.bytesPerSecond(),
+						snapshot.eta() == null ? null : snapshot.eta().toSeconds(),
+						snapshot.linesMatched(),
+						snapshot.rowsWritten(),
+						snapshot.slowestFile() == null ? null : snapshot.slowestFile().getFileName().toString(),
+						snapshot.slowestBytesPerSecond()))
+				.orElse(null);
+		return new JobStatus(jobName, state, null, progress);
 	}
 
 	public boolean isStarted() {
 		return started;
 	}
 
+	/// The sidecars scans are answered from, the watcher fills it with every file it reads.
+	public ColumnarCache getCache() {
+		return cache;
+	}
+
+	public Optional<Job.JobInfo> getJobInfo(String jobName) {
+		return Optional
+				.ofNullable(jobs.get(jobName))
+				.map(Job::getJobInfo);
+	}
 
+
+	/// Every measurement file below the watch directories, the attributes the walk reads are enough to filter them.
 	private List<Path> getFilesToProcess() {
 		try {
-			try (var stream = Files.walk(watchDir, 1)) {
-				return stream
-						.filter(Files::isRegularFile)
-						.filter(p -> {
-							String filename = p
-									.toString()
-									.toLowerCase();
-							return filename.endsWith(".txt") || filename.endsWith(".csv");
-						})
-						.collect(Collectors.toList());
-			}
+			return watchRoots.files();
 		} catch (IOException e) {
 			log.error("Error getting files to process: {}", e.getMessage());
 			return List.of();
@@ -210,6 +419,10 @@ public final class JobManager {
 			}
 
 			for (SavedJob savedJob : savedJobs.jobs()) {
+				if (jobs.containsKey(savedJob.jobName())) {
+					log.info("Saved job {} was already resumed from {}", savedJob.jobName(), JOURNAL_FILE);
+					continue;
+				}
 				if ("SCAN".equals(savedJob.jobType())) {
 					Command.Scan scanCommand = savedJob
 							.scanParams()
@@ -261,14 +474,16 @@ record SavedJob(String jobName, String jobType, SavedScanParameters scanParams)
 				scan.min(),
 		                                                     scan.max(),
 		                                                     scan.letter(),
-		                                                     scan.outputFilename());
+		                                                     scan.outputFilename(),
+		                                                     scan.priority());
 		return new SavedJob(scan.jobName(), "SCAN", params);
 	}
 }
 
-record SavedScanParameters(double min, double max, char letter, String outputFilename) {
+/// `priority` is 0 for jobs saved before it existed.
+record SavedScanParameters(double min, double max, char letter, String outputFilename, int priority) {
 	public Command.Scan toScanCommand(String jobName) {
-		return new Command.Scan(min, max, letter, outputFilename, jobName);
+		return new Command.Scan(min, max, letter, outputFilename, jobName, priority);
 	}
 }
 
@@ -0,0 +1,217 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/// The only writer of a job's output file.
+///
+/// File tasks hand over the encoded rows of every chunk as soon as the chunk is parsed, they're queued and appended by
+/// a single thread with gathering writes, so rows of different chunks never interleave and the file is only opened once
+/// per job. Every file is handed over by one thread at a time, so its batches are queued, and written, in file order.
+/// The queue is bounded by the bytes it holds, a task that produces faster than the disk can take it waits.
+///
+/// Batches can say where their file continues, that's passed on to the [JobJournal] once the batch is on disk.
+/// Rows of different files interleave, so it's only journaled once no file has rows in the output past the last such
+/// position, the output then ends exactly where the journaled positions say and a resume doesn't write a row twice.
+/// To not sync the disk for every batch, that happens at most once per [#SYNC_INTERVAL], and when the output is closed.
+final class JobOutput implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(JobOutput.class);
+	/// Bytes of rows that may wait for the writer
+	static final long QUEUE_BYTES = 16L * 1024 * 1024;
+	/// Most systems don't accept more buffers than this (`IOV_MAX`) in a single gathering write.
+	private static final int MAX_BUFFERS_PER_WRITE = 1024;
+	private static final Duration SYNC_INTERVAL = Duration.ofSeconds(1);
+	/// Marks the end of the output, compared by identity
+	private static final Batch END = new Batch(-1, List.of(), 0, 0, null);
+
+	private final Path file;
+	private final String jobName;
+	private final FileChannel channel;
+	private final JobProgress progress;
+	/// Null if the job isn't journaled
+	private final JobJournal journal;
+	private final BlockingQueue<Batch> queue = new LinkedBlockingQueue<>();
+	private final Lock lock = new ReentrantLock();
+	private final Condition drained = lock.newCondition();
+	/// Bytes of the batches in the queue
+	private long queuedBytes;
+	private boolean closed;
+	private final Thread writer;
+	private volatile IOException failure;
+
+	JobOutput(Path file, String jobName, JobProgress progress, JobJournal journal) throws IOException {
+		this.file = file;
+		this.jobName = jobName;
+		this.progress = progress;
+		this.journal = journal;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.writer = Thread
+				.ofVirtual()
+				.name(jobName + "-output")
+				.start(this::drain);
+	}
+
+	/// Queues `batch` to be appended as one piece, waits while the queue is full.
+	/// A batch that's bigger than the whole queue goes through once the queue is empty.
+	///
+	/// @param file       index of the file the rows come from
+	/// @param rows       how many rows `batch` holds, counted as written once it is
+	/// @param checkpoint where the file continues right after `batch`, null if it can't continue there,
+	///                   its output length is filled in once the batch is written
+	void write(int file, List<ByteBuffer> batch, long rows, JobJournal.Checkpoint checkpoint) throws IOException, InterruptedException {
+		if (batch.isEmpty() && checkpoint == null) {
+			return;
+		}
+		long bytes = 0;
+		for (ByteBuffer buffer : batch) {
+			bytes += buffer.remaining();
+		}
+		lock.lock();
+		try {
+			while (failure == null && !closed && queuedBytes > 0 && queuedBytes + bytes > QUEUE_BYTES) {
+				drained.await();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			if (closed) {
+				throw new IOException("The output of " + jobName + " is already closed");
+			}
+			queuedBytes += bytes;
+			queue.add(new Batch(file, batch, bytes, rows, checkpoint));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/// Waits for everything queued so far to be written and closes the file.
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			closed = true;
+			queue.add(END);
+			drained.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		boolean interrupted = false;
+		while (true) {
+			try {
+				writer.join();
+				break;
+			} catch (InterruptedException e) {
+				// The rows that were already handed over still have to make it to the file
+				interrupted = true;
+			}
+		}
+		channel.close();
+		if (interrupted) {
+			Thread
+					.currentThread()
+					.interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void drain() {
+		var batches = new ArrayList<Batch>();
+		var buffers = new ArrayList<ByteBuffer>();
+		// Files with rows written past the last position they can continue from
+		var unfinished = new HashSet<Integer>();
+		// The latest position of every file that moved since the last consistent cut
+		var positions = new LinkedHashMap<Integer, JobJournal.Checkpoint>();
+		// Checkpoints of batches that were written, but not synced yet
+		var unsynced = new ArrayList<JobJournal.Checkpoint>();
+		long lastSync = System.nanoTime();
+		while (true) {
+			try {
+				batches.add(queue.take());
+			} catch (InterruptedException e) {
+				continue;
+			}
+			queue.drainTo(batches);
+			boolean end = false;
+			long rows = 0;
+			long bytes = 0;
+			for (Batch batch : batches) {
+				if (batch == END) {
+					end = true;
+					break;
+				}
+				buffers.addAll(batch.buffers());
+				rows += batch.rows();
+				bytes += batch.bytes();
+				if (batch.checkpoint() != null) {
+					unfinished.remove(batch.file());
+					positions.put(batch.file(), batch.checkpoint());
+				} else if (!batch.buffers().isEmpty()) {
+					unfinished.add(batch.file());
+				}
+			}
+			batches.clear();
+			if (failure == null) {
+				try {
+					writeAll(buffers);
+					progress.rowsWritten(rows);
+					if (journal != null && unfinished.isEmpty() && !positions.isEmpty()) {
+						long length = channel.size();
+						for (JobJournal.Checkpoint checkpoint : positions.values()) {
+							unsynced.add(checkpoint.withOutputLength(length));
+						}
+						positions.clear();
+					}
+					if (!unsynced.isEmpty() && (end || System.nanoTime() - lastSync >= SYNC_INTERVAL.toNanos())) {
+						sync(unsynced);
+						unsynced.clear();
+						lastSync = System.nanoTime();
+					}
+				} catch (IOException e) {
+					log.error("Could not write to {}: {}", file, e.getMessage());
+					// Tasks that are still producing fail on their next batch instead of waiting for the queue
+					failure = e;
+				}
+			}
+			buffers.clear();
+			lock.lock();
+			try {
+				queuedBytes -= bytes;
+				drained.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			if (end) {
+				return;
+			}
+		}
+	}
+
+	/// The rows go to disk before the checkpoints that say they're there.
+	private void sync(List<JobJournal.Checkpoint> checkpoints) throws IOException {
+		channel.force(false);
+		try {
+			journal.checkpoints(jobName, checkpoints);
+		} catch (IOException e) {
+			// The job itself is fine, only a resume would have to redo more of it
+			log.warn("Could not journal the progress of {}: {}", jobName, e.getMessage());
+		}
+	}
+
+	private void writeAll(List<ByteBuffer> buffers) throws IOException {
+		for (int from = 0; from < buffers.size(); from += MAX_BUFFERS_PER_WRITE) {
+			ByteBuffer[] group = buffers
+					.subList(from, Math.min(buffers.size(), from + MAX_BUFFERS_PER_WRITE))
+					.toArray(ByteBuffer[]::new);
+			int last = group.length - 1;
+			while (group[last].hasRemaining()) {
+				channel.write(group);
+			}
+		}
+	}
+
+	private record Batch(int file, List<ByteBuffer> buffers, long bytes, long rows, JobJournal.Checkpoint checkpoint) {}
+}
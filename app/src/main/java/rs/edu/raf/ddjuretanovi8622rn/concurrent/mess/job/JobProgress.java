@@ -0,0 +1,165 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+
+/// Progress of a job, for `STATUS`.
+///
+/// The counters are only updated once per chunk of a file (at least a megabyte) and once per written batch,
+/// never per row, and they are [LongAdder]s, so the workers of different chunks don't contend on them either.
+final class JobProgress {
+
+	private final Map<Path, FileProgress> files;
+	private final long totalBytes;
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder linesParsed = new LongAdder();
+	private final LongAdder linesMatched = new LongAdder();
+	private final LongAdder rowsWritten = new LongAdder();
+	/// Bytes an earlier run of a resumed job already read, they count towards the percentage but not the rates
+	private final LongAdder resumedBytes = new LongAdder();
+	private volatile long startNanos;
+	private volatile long endNanos;
+
+	JobProgress(List<Path> files) {
+		var byPath = new HashMap<Path, FileProgress>();
+		long total = 0;
+		for (Path file : files) {
+			var progress = new FileProgress(file, sizeOf(file));
+			byPath.put(file, progress);
+			total += progress.size;
+		}
+		this.files = Map.copyOf(byPath);
+		this.totalBytes = total;
+	}
+
+	void started() {
+		startNanos = System.nanoTime();
+	}
+
+	void finished() {
+		endNanos = System.nanoTime();
+	}
+
+	long totalBytes() {
+		return totalBytes;
+	}
+
+	FileProgress file(Path file) {
+		return files.get(file);
+	}
+
+	/// Counts the first `bytes` of `file` as read by an earlier run of the job.
+	void resumed(Path file, long bytes) {
+		FileProgress progress = files.get(file);
+		long resumed = Math.min(bytes, progress.size);
+		progress.resumed = resumed;
+		resumedBytes.add(resumed);
+	}
+
+	void rowsWritten(long rows) {
+		rowsWritten.add(rows);
+	}
+
+	/// @return empty if the job hasn't started yet
+	Optional<Snapshot> snapshot() {
+		long start = startNanos;
+		if (start == 0) {
+			return Optional.empty();
+		}
+		long end = endNanos;
+		long now = end == 0 ? System.nanoTime() : end;
+		double seconds = Math.max(1, now - start) / 1e9;
+		long bytes = bytesRead.sum();
+		long resumed = resumedBytes.sum();
+		double bytesPerSecond = bytes / seconds;
+		double percent = totalBytes == 0 ? 100 : Math.min(100, 100.0 * (bytes + resumed) / totalBytes);
+		Duration eta = null;
+		if (end != 0) {
+			eta = Duration.ZERO;
+		} else if (bytes > 0) {
+			eta = Duration.ofSeconds((long) (Math.max(0, totalBytes - resumed - bytes) / bytesPerSecond));
+		}
+		FileProgress slowest = files
+				.values()
+				.stream()
+				// A file only reports once its first chunk is done, before that it would always look like the slowest
+				.filter(file -> file.bytes.sum() > 0)
+				.min(Comparator.comparingDouble(file -> file.bytesPerSecond(now)))
+				.orElse(null);
+		return Optional.of(new Snapshot(
+				percent,
+				linesParsed.sum() / seconds,
+				bytesPerSecond,
+				eta,
+				linesMatched.sum(),
+				rowsWritten.sum(),
+				slowest == null ? null : slowest.file,
+				slowest == null ? 0 : slowest.bytesPerSecond(now)));
+	}
+
+	private static long sizeOf(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/// @param eta         null while nothing has been read yet
+	/// @param slowestFile the file read the slowest so far, null until one has made some progress
+	record Snapshot(
+			double percent,
+			double rowsPerSecond,
+			double bytesPerSecond,
+			Duration eta,
+			long linesMatched,
+			long rowsWritten,
+			Path slowestFile,
+			double slowestBytesPerSecond) {}
+
+	/// Progress of a single file of the job.
+	final class FileProgress {
+		private final Path file;
+		private final long size;
+		private final LongAdder bytes = new LongAdder();
+		private volatile long resumed;
+		private volatile long startNanos;
+		private volatile long endNanos;
+
+		private FileProgress(Path file, long size) {
+			this.file = file;
+			this.size = size;
+		}
+
+		void started() {
+			startNanos = System.nanoTime();
+		}
+
+		/// Safe to call from the workers of different chunks at once.
+		void chunkDone(long chunkBytes, long lines, long matched) {
+			bytes.add(chunkBytes);
+			bytesRead.add(chunkBytes);
+			linesParsed.add(lines);
+			linesMatched.add(matched);
+		}
+
+		/// @return bytes reported chunk by chunk so far
+		long bytes() {
+			return bytes.sum();
+		}
+
+		/// Counts whatever wasn't reported chunk by chunk (a CSV header, a file answered from its sidecar) as read.
+		void finished() {
+			long rest = size - resumed - bytes.sum();
+			if (rest > 0) {
+				bytes.add(rest);
+				bytesRead.add(rest);
+			}
+			endNanos = System.nanoTime();
+		}
+
+		private double bytesPerSecond(long now) {
+			long end = endNanos;
+			return bytes.sum() / (Math.max(1, (end == 0 ? now : end) - startNanos) / 1e9);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.config.ConcurrentMessConfig;
+
+/// Tuning of the job engine.
+///
+/// @param cacheDirectory  where the sidecars that speed up repeated scans of the same files are kept
+/// @param cacheMemory     bytes the sidecars of files the watcher just read may take up on the heap
+/// @param scanBatchWindow how long a scan of a file waits for scans of the same file by other jobs to share its pass
+/// @param maxTasksPerJob  how many files a single job processes at once
+/// @param maxRunningJobs  how many jobs run at once, the rest wait in the queue
+/// @param jobMemoryBudget bytes that the running jobs may hold at once, see [JobManager] for how a job is estimated
+/// @param jobFileBudget   files that the running jobs may read at once, a job reads up to `maxTasksPerJob`
+public record JobSettings(
+		Path cacheDirectory,
+		long cacheMemory,
+		Duration scanBatchWindow,
+		int maxTasksPerJob,
+		int maxRunningJobs,
+		long jobMemoryBudget,
+		int jobFileBudget) {
+
+	public JobSettings {
+		if (maxTasksPerJob < 1 || maxRunningJobs < 1 || jobFileBudget < 1) {
+			throw new IllegalArgumentException("At least one job with at least one task has to be able to run");
+		}
+	}
+
+	public static JobSettings defaults() {
+		return new JobSettings(
+				Path.of("cache"),
+				Runtime
+						.getRuntime()
+						.maxMemory() / 8,
+				Duration.ofMillis(20),
+				Runtime
+						.getRuntime()
+						.availableProcessors(),
+				4,
+				Runtime
+						.getRuntime()
+						.maxMemory() / 2,
+				Runtime
+						.getRuntime()
+						.availableProcessors() * 2);
+	}
+
+	/// Takes every value that is set in `config`, the rest are [#defaults()].
+	public static JobSettings of(ConcurrentMessConfig config) {
+		var defaults = defaults();
+		return new JobSettings(
+				config.cacheDirectory() == null ? defaults.cacheDirectory() : Path.of(config.cacheDirectory()),
+				config.cacheMemoryMb() == null ? defaults.cacheMemory() : config.cacheMemoryMb() * 1024L * 1024L,
+				config.scanBatchWindowMillis() == null
+						? defaults.scanBatchWindow()
+						: Duration.ofMillis(config.scanBatchWindowMillis()),
+				config.maxTasksPerJob() == null ? defaults.maxTasksPerJob() : config.maxTasksPerJob(),
+				config.maxRunningJobs() == null ? defaults.maxRunningJobs() : config.maxRunningJobs(),
+				config.jobMemoryBudgetMb() == null ? defaults.jobMemoryBudget() : config.jobMemoryBudgetMb() * 1024L * 1024L,
+				config.jobFileBudget() == null ? defaults.jobFileBudget() : config.jobFileBudget());
+	}
+}
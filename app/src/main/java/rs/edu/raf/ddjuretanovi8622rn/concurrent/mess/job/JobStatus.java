@@ -0,0 +1,24 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+/// Point in time status of a job, what `STATUS` prints and the HTTP API returns.
+///
+/// @param queuePosition 1 based position among the jobs waiting to start, null if the job isn't waiting
+/// @param progress      null until the job starts
+public record JobStatus(String jobName, JobState state, Integer queuePosition, Progress progress) {
+
+	public boolean isFinished() {
+		return state == JobState.COMPLETED || state == JobState.CANCELLED || state == JobState.FAILED;
+	}
+
+	/// @param etaSeconds  null while nothing has been read yet
+	/// @param slowestFile the file read the slowest so far, null until one has made some progress
+	public record Progress(
+			double percent,
+			double rowsPerSecond,
+			double bytesPerSecond,
+			Long etaSeconds,
+			long linesMatched,
+			long rowsWritten,
+			String slowestFile,
+			double slowestFileBytesPerSecond) {}
+}
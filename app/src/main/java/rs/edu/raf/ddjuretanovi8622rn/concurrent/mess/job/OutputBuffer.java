@@ -0,0 +1,66 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementParser;
+
+/// Task local buffer that matched rows are encoded into as `station;temperature` lines.
+/// Rows go into fixed size blocks, so growing it never copies what was already written.
+/// Not thread safe, every chunk of a scan has its own.
+final class OutputBuffer {
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final byte[] LINE_SEPARATOR = System
+			.lineSeparator()
+			.getBytes(StandardCharsets.UTF_8);
+
+	private final List<ByteBuffer> blocks = new ArrayList<>();
+	private byte[] block;
+	private int position;
+	/// Bytes written since the last [#take()]
+	private long size;
+
+	/// @param temperature in tenths of a degree
+	void appendRow(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+		ensureCapacity(nameLength + 1 + MeasurementParser.MAX_FORMATTED_LENGTH + LINE_SEPARATOR.length);
+		int start = position;
+		MemorySegment.copy(data, ValueLayout.JAVA_BYTE, nameOffset, block, position, nameLength);
+		position += nameLength;
+		block[position++] = ';';
+		position = MeasurementParser.formatTenths(temperature, block, position);
+		System.arraycopy(LINE_SEPARATOR, 0, block, position, LINE_SEPARATOR.length);
+		position += LINE_SEPARATOR.length;
+		size += position - start;
+	}
+
+	/// @return bytes written since the last [#take()]
+	long size() {
+		return size;
+	}
+
+	/// Hands over everything written since the last call, the buffer doesn't keep any of it.
+	///
+	/// @return the blocks, ready to be written out in order
+	List<ByteBuffer> take() {
+		if (block != null && position > 0) {
+			blocks.add(ByteBuffer.wrap(block, 0, position));
+			block = null;
+			position = 0;
+		}
+		var taken = List.copyOf(blocks);
+		blocks.clear();
+		size = 0;
+		return taken;
+	}
+
+	private void ensureCapacity(int length) {
+		if (block != null && position + length <= block.length) {
+			return;
+		}
+		if (block != null && position > 0) {
+			blocks.add(ByteBuffer.wrap(block, 0, position));
+		}
+		// A single row with an unusually long name gets a block of its own
+		block = new byte[Math.max(BLOCK_SIZE, length)];
+		position = 0;
+	}
+}
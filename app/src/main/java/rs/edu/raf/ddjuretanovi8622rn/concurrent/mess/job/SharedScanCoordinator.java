@@ -0,0 +1,249 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ChunkSink;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementScanner;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ReadScheduler;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.RowVisitor;
+
+/// Fuses the scans of the same file by different jobs into a single read and parse.
+///
+/// The first scan of a part of a file opens a batch and every scan of the same part that arrives within the window
+/// joins it. Jobs read files in segments with the same boundaries, so scans of the same file line up on those parts.
+/// A batch only starts after the previous pass over the same part is done, so scans that arrive while it's being
+/// read all end up in the next pass, and a part is never read by more than one pass at a time.
+/// The pass runs on the coordinator's own thread, cancelling one job only stops it from waiting for the result.
+///
+/// Scans only share a pass if they ask for exactly the same part, a resumed job that starts in the middle of a
+/// segment reads that segment alone. A scan that arrives after a pass started doesn't join it for the rest of the
+/// part either: its rows are written out in file order while they're parsed, so it would have to hold on to
+/// everything after the point it joined until the part before it was read again.
+final class SharedScanCoordinator {
+
+	private static final Logger log = LoggerFactory.getLogger(SharedScanCoordinator.class);
+
+	private final Duration window;
+	private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+	private final Lock lock = new ReentrantLock();
+	/// The latest batch of every part of a file, closed once its pass has started
+	private final Map<Part, Batch> batches = new HashMap<>();
+
+	SharedScanCoordinator(Duration window) {
+		this.window = window;
+	}
+
+	/// Scans the lines of `file` that start in `[from, limit)` together with every other scan of them that is batched
+	/// with this one.
+	/// Rows are only passed to visitors created by `visitorFactory` if the station name starts with `firstByte`,
+	/// the visitors have to check the rest of their predicate themselves.
+	///
+	/// `onChunkDone` is called as soon as a chunk of the pass is parsed, like in [MeasurementScanner#scan(Path, ReadScheduler.Priority, Supplier, ObjLongConsumer)].
+	/// `inOrder` gets the chunks in file order on the pass' thread, if it fails the pass goes on without it
+	/// and this scan fails once the pass is done.
+	///
+	/// @return the visitors of every chunk, in file order, like [MeasurementScanner#scan(Path, ReadScheduler.Priority, long, long, boolean, Supplier, ObjLongConsumer, ChunkSink)]
+	<V extends RowVisitor> MeasurementScanner.Result<V> scan(
+			Path file,
+			long from,
+			long limit,
+			byte firstByte,
+			Supplier<V> visitorFactory,
+			ChunkListener<? super V> onChunkDone,
+			ChunkSink<? super V> inOrder) throws IOException, InterruptedException {
+		var subscriber = new Subscriber(firstByte, visitorFactory, onChunkDone, inOrder);
+		var part = new Part(file, from, limit);
+		Batch batch;
+		lock.lock();
+		try {
+			batch = batches.get(part);
+			if (batch == null || batch.closed) {
+				var next = new Batch(batch);
+				batches.put(part, next);
+				executorService.submit(() -> run(part, next));
+				batch = next;
+			}
+			batch.subscribers.add(subscriber);
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			batch.done.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException io) {
+				throw io;
+			}
+			throw new IOException("Shared scan of " + file + " failed", e.getCause());
+		}
+		if (subscriber.failure != null) {
+			throw subscriber.failure;
+		}
+		@SuppressWarnings("unchecked")
+		List<V> chunks = (List<V>) subscriber.chunks;
+		return new MeasurementScanner.Result<>(chunks, batch.end, batch.size);
+	}
+
+	private void run(Part part, Batch batch) {
+		try {
+			if (batch.previous != null) {
+				batch.previous.done
+						.exceptionally(_ -> null)
+						.join();
+				// Otherwise every batch of a busy file would keep all of the ones before it alive
+				batch.previous = null;
+			}
+			Thread.sleep(window);
+			List<Subscriber> subscribers;
+			lock.lock();
+			try {
+				batch.closed = true;
+				subscribers = List.copyOf(batch.subscribers);
+			} finally {
+				lock.unlock();
+			}
+			if (subscribers.size() > 1) {
+				log.info("Shared pass over {} from byte {} for {} scans", part.file(), part.from(), subscribers.size());
+			}
+
+			MeasurementScanner.Result<FusedVisitor> result = MeasurementScanner.scan(
+					part.file(),
+					ReadScheduler.Priority.SCAN,
+					part.from(),
+					part.limit(),
+					true,
+					() -> new FusedVisitor(subscribers),
+					(chunk, bytes) -> {
+						for (int i = 0; i < subscribers.size(); i++) {
+							subscribers
+									.get(i)
+									.chunkDone(chunk.visitors[i], bytes, chunk.rows);
+						}
+					},
+					(chunk, next) -> {
+						for (int i = 0; i < subscribers.size(); i++) {
+							subscribers
+									.get(i)
+									.accept(chunk.visitors[i], next);
+						}
+					});
+			List<FusedVisitor> chunks = result.chunks();
+			for (int i = 0; i < subscribers.size(); i++) {
+				var subscriberChunks = new ArrayList<RowVisitor>(chunks.size());
+				for (FusedVisitor chunk : chunks) {
+					subscriberChunks.add(chunk.visitors[i]);
+				}
+				subscribers.get(i).chunks = subscriberChunks;
+			}
+			batch.end = result.end();
+			batch.size = result.size();
+			batch.done.complete(null);
+		} catch (Exception e) {
+			batch.done.completeExceptionally(e);
+		} finally {
+			lock.lock();
+			try {
+				batches.remove(part, batch);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private record Part(Path file, long from, long limit) {}
+
+	private static final class Batch {
+		private Batch previous;
+		private final List<Subscriber> subscribers = new ArrayList<>();
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+		private boolean closed;
+		/// Set by the pass before the batch completes, see [MeasurementScanner.Result]
+		private long end;
+		private long size;
+
+		private Batch(Batch previous) {
+			this.previous = previous;
+		}
+	}
+
+	/// Receives every chunk of a pass as soon as it's parsed, called from the scanner's workers.
+	@FunctionalInterface
+	interface ChunkListener<V> {
+
+		/// @param rows every row of the chunk, not only the ones passed to `visitor`
+		void chunkDone(V visitor, long bytes, long rows);
+	}
+
+	private static final class Subscriber {
+		private final byte firstByte;
+		private final Supplier<? extends RowVisitor> visitorFactory;
+		private final ChunkListener<RowVisitor> onChunkDone;
+		private final ChunkSink<RowVisitor> inOrder;
+		/// Set by the pass before the batch completes
+		private List<RowVisitor> chunks;
+		/// Why `inOrder` failed, it doesn't get any more chunks after that
+		private IOException failure;
+
+		@SuppressWarnings("unchecked")
+		private <V extends RowVisitor> Subscriber(
+				byte firstByte,
+				Supplier<V> visitorFactory,
+				ChunkListener<? super V> onChunkDone,
+				ChunkSink<? super V> inOrder) {
+			this.firstByte = firstByte;
+			this.visitorFactory = visitorFactory;
+			// Only ever called with the visitors visitorFactory created
+			this.onChunkDone = (ChunkListener<RowVisitor>) onChunkDone;
+			this.inOrder = (ChunkSink<RowVisitor>) inOrder;
+		}
+
+		private void chunkDone(RowVisitor visitor, long bytes, long rows) {
+			onChunkDone.chunkDone(visitor, bytes, rows);
+		}
+
+		private void accept(RowVisitor visitor, long next) {
+			if (failure != null) {
+				return;
+			}
+			try {
+				inOrder.accept(visitor, next);
+			} catch (IOException e) {
+				// Most likely the job is gone, the other scans of the pass still want their rows
+				failure = e;
+			}
+		}
+	}
+
+	/// Visits a chunk on behalf of every subscriber, a row is only handed to the subscribers waiting for its first byte.
+	private static final class FusedVisitor implements RowVisitor {
+		private final RowVisitor[] visitors;
+		private final RowVisitor[][] byFirstByte = new RowVisitor[256][];
+		private long rows;
+
+		private FusedVisitor(List<Subscriber> subscribers) {
+			visitors = new RowVisitor[subscribers.size()];
+			int[] counts = new int[256];
+			for (int i = 0; i < visitors.length; i++) {
+				Subscriber subscriber = subscribers.get(i);
+				visitors[i] = subscriber.visitorFactory.get();
+				counts[subscriber.firstByte & 0xFF]++;
+			}
+			for (int b = 0; b < 256; b++) {
+				byFirstByte[b] = new RowVisitor[counts[b]];
+			}
+			for (int i = 0; i < visitors.length; i++) {
+				int b = subscribers.get(i).firstByte & 0xFF;
+				byFirstByte[b][--counts[b]] = visitors[i];
+			}
+		}
+
+		@Override
+		public void visit(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+			rows++;
+			for (RowVisitor visitor : byFirstByte[data.get(ValueLayout.JAVA_BYTE, nameOffset) & 0xFF]) {
+				visitor.visit(data, nameOffset, nameLength, temperature);
+			}
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// Receives the chunks of a scan in file order, on the thread that runs the scan, as soon as every chunk before
+/// them was handed over too. It may block, the scan doesn't page in more of the file meanwhile.
+@FunctionalInterface
+public interface ChunkSink<V> {
+
+	/// @param next where a scan of the file could continue right after the chunk's lines,
+	///             -1 if it can't, which is the case inside a gzip member
+	void accept(V chunk, long next) throws IOException;
+}
@@ -0,0 +1,50 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// Finds the bytes [MeasurementParser] splits lines at, many bytes at a time.
+///
+/// `VectorDelimiterSearch`, from the `vector` source set, is used when the JVM was started with
+/// `--add-modules jdk.incubator.vector` and the CPU has SIMD registers of at least 256 bits,
+/// [SwarDelimiterSearch] otherwise.
+/// `-Dconcurrent.mess.vector=false` forces the latter.
+interface DelimiterSearch {
+
+	String VECTOR_PROPERTY = "concurrent.mess.vector";
+
+	/// @return the position of the first `separator` or newline in `[from, to)`, or `to` if there is none
+	long findDelimiter(MemorySegment data, long from, long to, byte separator);
+
+	/// @return the position of the first newline in `[from, to)`, or `to` if there is none
+	long findNewline(MemorySegment data, long from, long to);
+
+	static DelimiterSearch load() {
+		boolean vectorAllowed = Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"));
+		return vectorAllowed
+				? vector().orElseGet(SwarDelimiterSearch::new)
+				: new SwarDelimiterSearch();
+	}
+
+	/// @return the `VectorDelimiterSearch`, empty without the module, its classes or wide enough vectors
+	static Optional<DelimiterSearch> vector() {
+		if (ModuleLayer
+				.boot()
+				.findModule("jdk.incubator.vector")
+				.isEmpty()) {
+			return Optional.empty();
+		}
+		// Only loaded by name, so that nothing links against the module when it isn't there
+		try {
+			Class<?> type = Class.forName(DelimiterSearch.class.getPackageName() + ".VectorDelimiterSearch");
+			var isSupported = type.getDeclaredMethod("isSupported");
+			if (!(boolean) isSupported.invoke(null)) {
+				return Optional.empty();
+			}
+			var constructor = type.getDeclaredConstructor();
+			return Optional.of((DelimiterSearch) constructor.newInstance());
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// No usable vector support, the SWAR search is next best
+			return Optional.empty();
+		}
+	}
+}
@@ -0,0 +1,529 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// Scans gzipped measurement files, inflating them window by window and parsing every window like a mapped file.
+///
+/// Only the compressed file is read from disk, through the [ReadScheduler] like a plain file,
+/// the inflated data never leaves memory.
+/// Offsets are positions in the compressed file, and a scan only stops at the end of a gzip member that ends with a
+/// newline. That keeps checkpoints and tailing working like they do for plain files: a file that grows by whole members
+/// is read from where the last scan stopped.
+///
+/// - BGZF files (written by `bgzip`, or `DatasetGenerator --gzip`) store the length of every member in its header,
+///   so the members of a window are found without inflating anything, and are inflated in parallel straight into
+///   the window. A last member that isn't completely written yet is left for the next scan.
+/// - Any other gzip file, multi-member or not, is inflated on the calling thread while the pool parses the previous
+///   window. A file that ends in the middle of a member can't be read.
+///
+/// A compressed file is read up to the end of its last member, so an unterminated last line is always parsed.
+final class GzipScanner {
+
+	/// Inflated bytes parsed at once
+	static final int WINDOW_SIZE = 32 << 20;
+	/// Inflated bytes per task when members are inflated in parallel
+	private static final int INFLATE_GRAIN = 1 << 20;
+	/// Bytes handed to and taken from an inflater at once, the inflater can't work on mapped memory of a shared arena
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int FIXED_HEADER_SIZE = 10;
+	private static final int TRAILER_SIZE = 8;
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	private static final ValueLayout.OfShort LITTLE_SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfInt LITTLE_INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	private GzipScanner() {}
+
+	/// Like [MeasurementScanner#scan(Path, ReadScheduler.Priority, long, long, boolean, Supplier, ObjLongConsumer)],
+	/// `from` has to be 0 or the end of an earlier scan. The lengths passed to `onChunkDone` are scaled down to
+	/// compressed bytes. `inOrder` only gets a position to continue from for the last chunk of a BGZF window
+	/// that ends at a member boundary, every other chunk ends inside a member.
+	static <V extends RowVisitor> MeasurementScanner.Result<V> scan(
+			Path file,
+			ReadScheduler.Reader reader,
+			long from,
+			long limit,
+			Supplier<V> visitorFactory,
+			ObjLongConsumer<? super V> onChunkDone,
+			ChunkSink<? super V> inOrder) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ); var arena = Arena.ofShared()) {
+			long size = channel.size();
+			if (size <= from) {
+				return new MeasurementScanner.Result<>(List.of(), Math.min(from, size), size);
+			}
+			MemorySegment data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+			return new Scan<>(file, reader, data, from, limit, visitorFactory, onChunkDone, inOrder).run();
+		}
+	}
+
+	/// A single scan of a file, windows are parsed in order and their visitors collected in `visitors`.
+	private static final class Scan<V extends RowVisitor> {
+		private final Path file;
+		private final ReadScheduler.Reader reader;
+		private final MemorySegment data;
+		private final long size;
+		private final long limit;
+		private final byte separator;
+		private final Supplier<V> visitorFactory;
+		private final ObjLongConsumer<? super V> onChunkDone;
+		private final ChunkSink<? super V> inOrder;
+		private final List<V> visitors = new ArrayList<>();
+		private final AtomicBoolean cancelled = new AtomicBoolean();
+		/// Whether the CSV header still has to be skipped
+		private boolean skipHeader;
+		/// Compressed position of the next member
+		private long position;
+		/// End of the last member whose lines were all parsed, the next scan continues there
+		private long clean;
+		/// Inflated bytes after the last parsed line
+		private byte[] carry = new byte[0];
+		/// Compressed bytes before this were paged in by the reader
+		private long loaded;
+
+		private Scan(
+				Path file,
+				ReadScheduler.Reader reader,
+				MemorySegment data,
+				long from,
+				long limit,
+				Supplier<V> visitorFactory,
+				ObjLongConsumer<? super V> onChunkDone,
+				ChunkSink<? super V> inOrder) {
+			var format = InputFormat.of(file);
+			this.file = file;
+			this.reader = reader;
+			this.data = data;
+			this.size = data.byteSize();
+			this.limit = limit;
+			this.separator = format.separator();
+			this.visitorFactory = visitorFactory;
+			this.onChunkDone = onChunkDone;
+			this.inOrder = inOrder;
+			this.skipHeader = from == 0 && format.hasHeader();
+			this.position = from;
+			this.clean = from;
+			this.loaded = from;
+		}
+
+		private MeasurementScanner.Result<V> run() throws IOException {
+			while (true) {
+				if (position >= size) {
+					parseCarry();
+					return new MeasurementScanner.Result<>(visitors, size, size);
+				}
+				if (position >= limit && carry.length == 0) {
+					return new MeasurementScanner.Result<>(visitors, position, size);
+				}
+				Header header = Header.read(file, data, position, size);
+				if (header == null) {
+					// The carry is dropped, the next scan starts at the last clean member again
+					return new MeasurementScanner.Result<>(visitors, clean, size);
+				}
+				if (header.blockSize() < 0) {
+					return inflateSequentially();
+				}
+				if (!inflateInParallel()) {
+					return new MeasurementScanner.Result<>(visitors, clean, size);
+				}
+			}
+		}
+
+		/// Inflates the next window of BGZF members in parallel and parses it up to the end of its last clean member,
+		/// or of the first one after the limit.
+		///
+		/// @return false if not a single complete member was left
+		private boolean inflateInParallel() throws IOException {
+			var members = new ArrayList<Member>();
+			long inflated = carry.length;
+			long afterLimit = 0;
+			long next = position;
+			while (next < size && inflated < WINDOW_SIZE && afterLimit < INFLATE_GRAIN) {
+				Header header = Header.read(file, data, next, size);
+				if (header == null || header.blockSize() < 0 || next + header.blockSize() > size) {
+					// Incomplete, or a plain gzip member that the next window inflates sequentially
+					break;
+				}
+				long end = next + header.blockSize();
+				int length = data.get(LITTLE_INT, end - Integer.BYTES);
+				if (length < 0 || length > WINDOW_SIZE) {
+					throw new IOException("Corrupt gzip member at byte " + next + " of " + file);
+				}
+				members.add(new Member(next, header.length(), end, inflated, length));
+				inflated += length;
+				if (next >= limit) {
+					afterLimit += length;
+				}
+				next = end;
+			}
+			if (members.isEmpty()) {
+				return false;
+			}
+			// The walk over the headers only touched a page per member, the tasks read the rest of them at once
+			load(next);
+
+			try (var arena = Arena.ofShared()) {
+				MemorySegment window = arena.allocate(Math.max(1, inflated));
+				MemorySegment.copy(carry, 0, window, ValueLayout.JAVA_BYTE, 0, carry.length);
+				var tasks = new ArrayList<InflateTask>();
+				int from = 0;
+				long grain = 0;
+				for (int i = 0; i < members.size(); i++) {
+					grain += members
+							.get(i)
+							.length();
+					if (grain >= INFLATE_GRAIN || i == members.size() - 1) {
+						tasks.add(new InflateTask(file, data, window, members.subList(from, i + 1)));
+						from = i + 1;
+						grain = 0;
+					}
+				}
+				MeasurementScanner.invoke(file, ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)), () -> {});
+
+				// Stop at the first clean member after the limit, otherwise at the last clean one
+				int cut = -1;
+				for (int i = 0; i < members.size(); i++) {
+					Member member = members.get(i);
+					long end = member.offset() + member.length();
+					if (end == 0 || window.get(ValueLayout.JAVA_BYTE, end - 1) == MeasurementParser.NEWLINE) {
+						cut = i;
+						if (member.end() >= limit) {
+							break;
+						}
+					}
+				}
+				long parsed = 0;
+				long consumed = next;
+				if (cut >= 0) {
+					Member member = members.get(cut);
+					parsed = member.offset() + member.length();
+					clean = member.end();
+					if (clean >= limit) {
+						consumed = clean;
+					}
+				}
+				var chunks = parse(window, parsed, consumed - position, inflated - carry.length);
+				carry = consumed == next
+						? window
+						.asSlice(parsed, inflated - parsed)
+						.toArray(ValueLayout.JAVA_BYTE)
+						: new byte[0];
+				position = consumed;
+				// Without a carry the window ends at a member boundary, which a later scan can start from
+				collect(chunks, carry.length == 0 ? position : -1);
+			}
+			return true;
+		}
+
+		/// Inflates the rest of the file member by member on this thread, parsing every full window on the pool while
+		/// the next one is inflated.
+		private MeasurementScanner.Result<V> inflateSequentially() throws IOException {
+			var inflater = new Inflater(true);
+			var crc = new CRC32();
+			byte[] input = new byte[BUFFER_SIZE];
+			byte[] output = new byte[BUFFER_SIZE];
+			ForkJoinTask<MeasurementScanner.Result<V>> parsing = null;
+			Arena parsingArena = null;
+			Arena filling = null;
+			try {
+				boolean inMember = false;
+				long memberStart = 0;
+				int headerLength = 0;
+				long memberLength = 0;
+				while (true) {
+					long before = inMember ? memberStart + headerLength + inflater.getBytesRead() : position;
+					filling = Arena.ofShared();
+					MemorySegment window = filling.allocate(carry.length + (long) WINDOW_SIZE);
+					MemorySegment.copy(carry, 0, window, ValueLayout.JAVA_BYTE, 0, carry.length);
+					long inflated = carry.length;
+					boolean last = false;
+					while (inflated < window.byteSize()) {
+						if (!inMember) {
+							boolean lineEnd = inflated == 0 || window.get(ValueLayout.JAVA_BYTE, inflated - 1) == MeasurementParser.NEWLINE;
+							if (position >= size || (position >= limit && lineEnd)) {
+								last = true;
+								break;
+							}
+							Header header = Header.read(file, data, position, size);
+							if (header == null) {
+								throw truncated();
+							}
+							inflater.reset();
+							crc.reset();
+							memberStart = position;
+							headerLength = header.length();
+							memberLength = 0;
+							inMember = true;
+						}
+						if (inflater.needsInput()) {
+							long next = memberStart + headerLength + inflater.getBytesRead();
+							if (next >= size) {
+								throw truncated();
+							}
+							int length = (int) Math.min(size - next, input.length);
+							load(next + length);
+							MemorySegment.copy(data, ValueLayout.JAVA_BYTE, next, input, 0, length);
+							inflater.setInput(input, 0, length);
+						}
+						int length;
+						try {
+							length = inflater.inflate(output, 0, (int) Math.min(output.length, window.byteSize() - inflated));
+						} catch (DataFormatException e) {
+							throw new IOException("Corrupt gzip member at byte " + memberStart + " of " + file, e);
+						}
+						crc.update(output, 0, length);
+						MemorySegment.copy(output, 0, window, ValueLayout.JAVA_BYTE, inflated, length);
+						inflated += length;
+						memberLength += length;
+						if (inflater.finished()) {
+							long trailer = memberStart + headerLength + inflater.getBytesRead();
+							if (trailer + TRAILER_SIZE > size) {
+								throw truncated();
+							}
+							verify(memberStart, trailer, (int) crc.getValue(), memberLength);
+							position = trailer + TRAILER_SIZE;
+							inMember = false;
+						}
+					}
+					long after = inMember ? memberStart + headerLength + inflater.getBytesRead() : position;
+					long parsed = last ? inflated : lastLineEnd(window, inflated);
+
+					if (parsing != null) {
+						collect(MeasurementScanner
+								        .join(file, parsing, () -> cancelled.set(true))
+								        .chunks(), -1);
+						parsing = null;
+						parsingArena.close();
+						parsingArena = null;
+					}
+					long start = skipHeader(window, parsed);
+					parsingArena = filling;
+					filling = null;
+					parsing = MeasurementScanner.fork(MeasurementScanner.parseTask(
+							window,
+							start,
+							parsed,
+							separator,
+							true,
+							visitorFactory,
+							scaled(after - before, inflated - carry.length),
+							cancelled));
+					carry = window
+							.asSlice(parsed, inflated - parsed)
+							.toArray(ValueLayout.JAVA_BYTE);
+					if (last) {
+						collect(MeasurementScanner
+								        .join(file, parsing, () -> cancelled.set(true))
+								        .chunks(), -1);
+						parsing = null;
+						return new MeasurementScanner.Result<>(visitors, position, size);
+					}
+				}
+			} finally {
+				if (parsing != null) {
+					cancelled.set(true);
+					parsing.quietlyJoin();
+				}
+				if (parsingArena != null) {
+					parsingArena.close();
+				}
+				if (filling != null) {
+					filling.close();
+				}
+				inflater.end();
+			}
+		}
+
+		/// Pages the compressed file in up to at least `until`, a readahead sized piece at a time.
+		private void load(long until) throws InterruptedIOException {
+			if (until > loaded) {
+				long next = Math.min(size, Math.max(until, loaded + reader.readahead()));
+				reader.load(data, loaded, next);
+				loaded = next;
+			}
+		}
+
+		/// Parses `[0, parsed)` of `window`, which took `compressed` bytes of the file to inflate `inflated` of them.
+		///
+		/// @return the visitors, they still have to be collected
+		private List<V> parse(MemorySegment window, long parsed, long compressed, long inflated) throws IOException {
+			long start = skipHeader(window, parsed);
+			return MeasurementScanner
+					.parse(file, window, start, parsed, separator, true, visitorFactory, scaled(compressed, inflated))
+					.chunks();
+		}
+
+		/// Parses the rest of the file, which doesn't end with a newline.
+		private void parseCarry() throws IOException {
+			if (carry.length > 0) {
+				collect(parse(MemorySegment.ofArray(carry), carry.length, 0, carry.length), -1);
+				carry = new byte[0];
+			}
+		}
+
+		/// Adds the visitors of a window to the result and hands them to `inOrder`,
+		/// `next` is where a scan can continue after the last of them.
+		private void collect(List<V> chunks, long next) throws IOException {
+			for (int i = 0; i < chunks.size(); i++) {
+				visitors.add(chunks.get(i));
+				inOrder.accept(chunks.get(i), i == chunks.size() - 1 ? next : -1);
+			}
+		}
+
+		private long skipHeader(MemorySegment window, long parsed) {
+			if (!skipHeader || parsed == 0) {
+				return 0;
+			}
+			skipHeader = false;
+			return MeasurementParser.nextLine(window, 0, parsed);
+		}
+
+		/// Progress is reported in compressed bytes, like the size of the file.
+		private ObjLongConsumer<V> scaled(long compressed, long inflated) {
+			double ratio = inflated == 0 ? 0 : (double) compressed / inflated;
+			return (visitor, bytes) -> onChunkDone.accept(visitor, Math.round(bytes * ratio));
+		}
+
+		private void verify(long memberStart, long trailer, int crc, long length) throws IOException {
+			if (data.get(LITTLE_INT, trailer) != crc || data.get(LITTLE_INT, trailer + Integer.BYTES) != (int) length) {
+				throw new IOException("Corrupt gzip member at byte " + memberStart + " of " + file);
+			}
+		}
+
+		private IOException truncated() {
+			return new IOException(file + " ends in the middle of a gzip member");
+		}
+	}
+
+	/// @return the position right after the last newline in `[0, length)`, 0 if there is none
+	private static long lastLineEnd(MemorySegment window, long length) {
+		for (long i = length - 1; i >= 0; i--) {
+			if (window.get(ValueLayout.JAVA_BYTE, i) == MeasurementParser.NEWLINE) {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/// Inflates a run of BGZF members into their places in the window.
+	private static final class InflateTask extends RecursiveAction {
+		private final Path file;
+		private final MemorySegment data;
+		private final MemorySegment window;
+		private final List<Member> members;
+
+		private InflateTask(Path file, MemorySegment data, MemorySegment window, List<Member> members) {
+			this.file = file;
+			this.data = data;
+			this.window = window;
+			this.members = members;
+		}
+
+		@Override
+		protected void compute() {
+			var inflater = new Inflater(true);
+			var crc = new CRC32();
+			byte[] input = new byte[BUFFER_SIZE];
+			byte[] output = new byte[BUFFER_SIZE];
+			try {
+				for (Member member : members) {
+					long from = member.start() + member.headerLength();
+					long trailer = member.end() - TRAILER_SIZE;
+					if (trailer - from > input.length) {
+						input = new byte[(int) (trailer - from)];
+					}
+					// One more byte than the member has, which is only written to if it inflates to more than it says
+					if (member.length() >= output.length) {
+						output = new byte[member.length() + 1];
+					}
+					MemorySegment.copy(data, ValueLayout.JAVA_BYTE, from, input, 0, (int) (trailer - from));
+					inflater.reset();
+					inflater.setInput(input, 0, (int) (trailer - from));
+					int length = 0;
+					while (!inflater.finished() && length <= member.length()) {
+						int inflated = inflater.inflate(output, length, member.length() + 1 - length);
+						if (inflated == 0 && inflater.needsInput()) {
+							break;
+						}
+						length += inflated;
+					}
+					crc.reset();
+					crc.update(output, 0, length);
+					if (!inflater.finished() || length != member.length() || data.get(LITTLE_INT, trailer) != (int) crc.getValue()) {
+						throw new IOException("Corrupt gzip member at byte " + member.start() + " of " + file);
+					}
+					MemorySegment.copy(output, 0, window, ValueLayout.JAVA_BYTE, member.offset(), length);
+				}
+			} catch (DataFormatException e) {
+				throw new UncheckedIOException(new IOException("Corrupt gzip data in " + file, e));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+
+	/// @param start        position of the member in the file
+	/// @param headerLength length of its gzip header
+	/// @param end          position right after its trailer
+	/// @param offset       where it's inflated to in the window
+	/// @param length       inflated length, from its trailer
+	private record Member(long start, int headerLength, long end, long offset, int length) {}
+
+	/// @param length    length of the gzip header, up to the compressed data
+	/// @param blockSize length of the whole member from its BGZF extra field, -1 if it doesn't have one
+	private record Header(int length, int blockSize) {
+
+		/// @return the header of the member at `position`, null if the file ends before the header does
+		static Header read(Path file, MemorySegment data, long position, long size) throws IOException {
+			if (size - position < FIXED_HEADER_SIZE) {
+				return null;
+			}
+			if (data.get(ValueLayout.JAVA_BYTE, position) != (byte) 0x1f
+					|| data.get(ValueLayout.JAVA_BYTE, position + 1) != (byte) 0x8b
+					|| data.get(ValueLayout.JAVA_BYTE, position + 2) != 8) {
+				throw new IOException("No gzip member at byte " + position + " of " + file);
+			}
+			int flags = data.get(ValueLayout.JAVA_BYTE, position + 3);
+			long at = position + FIXED_HEADER_SIZE;
+			int blockSize = -1;
+			if ((flags & FEXTRA) != 0) {
+				if (at + Short.BYTES > size) {
+					return null;
+				}
+				int extraLength = Short.toUnsignedInt(data.get(LITTLE_SHORT, at));
+				at += Short.BYTES;
+				if (at + extraLength > size) {
+					return null;
+				}
+				// Subfields are two id bytes, a length and the data, BGZF's is `BC` with the member length - 1
+				for (long field = at; field + 4 <= at + extraLength; ) {
+					int fieldLength = Short.toUnsignedInt(data.get(LITTLE_SHORT, field + 2));
+					if (data.get(ValueLayout.JAVA_BYTE, field) == 'B'
+							&& data.get(ValueLayout.JAVA_BYTE, field + 1) == 'C'
+							&& fieldLength == 2) {
+						blockSize = Short.toUnsignedInt(data.get(LITTLE_SHORT, field + 4)) + 1;
+					}
+					field += 4 + fieldLength;
+				}
+				at += extraLength;
+			}
+			for (int flag : new int[] {FNAME, FCOMMENT}) {
+				if ((flags & flag) != 0) {
+					while (at < size && data.get(ValueLayout.JAVA_BYTE, at) != 0) {
+						at++;
+					}
+					if (at++ >= size) {
+						return null;
+					}
+				}
+			}
+			if ((flags & FHCRC) != 0) {
+				at += Short.BYTES;
+			}
+			return at > size ? null : new Header((int) (at - position), blockSize);
+		}
+	}
+}
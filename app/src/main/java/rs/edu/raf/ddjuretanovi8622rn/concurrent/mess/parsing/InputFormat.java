@@ -0,0 +1,55 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// The two measurement file layouts the app understands.
+/// CSV files have a header line and use `,`, everything else is `station;temperature`.
+/// Either can be gzipped, `.txt.gz` and `.csv.gz` files are decompressed while they're read, see [GzipScanner].
+public enum InputFormat {
+	SEMICOLON((byte) ';', false), CSV((byte) ',', true);
+
+	private final byte separator;
+	private final boolean hasHeader;
+
+	InputFormat(byte separator, boolean hasHeader) {
+		this.separator = separator;
+		this.hasHeader = hasHeader;
+	}
+
+	private static final String COMPRESSED_SUFFIX = ".gz";
+
+	public static InputFormat of(Path path) {
+		String filename = uncompressedName(path);
+		return filename.endsWith(".csv") ? CSV : SEMICOLON;
+	}
+
+	/// @return whether `path` is a measurement file the app reads, compressed or not
+	public static boolean isMeasurementFile(Path path) {
+		String filename = uncompressedName(path);
+		return filename.endsWith(".txt") || filename.endsWith(".csv");
+	}
+
+	public static boolean isCompressed(Path path) {
+		return path
+				.toString()
+				.toLowerCase()
+				.endsWith(COMPRESSED_SUFFIX);
+	}
+
+	private static String uncompressedName(Path path) {
+		String filename = path
+				.toString()
+				.toLowerCase();
+		return filename.endsWith(COMPRESSED_SUFFIX)
+				? filename.substring(0, filename.length() - COMPRESSED_SUFFIX.length())
+				: filename;
+	}
+
+	public byte separator() {
+		return separator;
+	}
+
+	public boolean hasHeader() {
+		return hasHeader;
+	}
+}
@@ -0,0 +1,272 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// Byte level parser for `station<separator>temperature` lines.
+/// Nothing here allocates, temperatures are parsed straight into tenths of a degree (`-12.3` -> `-123`).
+///
+/// Separators and newlines are found by a [DelimiterSearch], SIMD when the JVM can do it.
+/// Temperatures in the usual `-?d?d.d` form are parsed from a single 8 byte read without branches,
+/// anything else goes through [#parseTemperature].
+public final class MeasurementParser {
+
+	public static final byte NEWLINE = '\n';
+
+	/// Returned by [#parseTemperature] when the bytes are not a decimal number.
+	public static final int MALFORMED = Integer.MIN_VALUE;
+
+	/// Sign, 9 digits, the decimal point and the tenths.
+	public static final int MAX_FORMATTED_LENGTH = 12;
+
+	/// Anything bigger is definitely not a temperature, and would overflow an int once scaled.
+	private static final long MAX_WHOLE_PART = 100_000_000L;
+
+	private static final DelimiterSearch SEARCH = DelimiterSearch.load();
+	private static final ValueLayout.OfLong LITTLE_LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	/// Bit 4 of the bytes a decimal point can be at in a short temperature, it's set in digits and clear in `.`
+	private static final long DOT_BITS = 0x10101000L;
+	private static final long ZEROS = 0x3030303030303030L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private MeasurementParser() {}
+
+	/// Parses every line in `[from, to)`, `from` has to be the start of a line.
+	/// Malformed lines are skipped.
+	/// If `includePartialLine` is false a trailing line that isn't terminated by a newline is left alone.
+	///
+	/// @return the offset right after the last consumed line
+	public static long parseLines(
+			MemorySegment data,
+			long from,
+			long to,
+			byte separator,
+			boolean includePartialLine,
+			RowVisitor visitor) {
+		long pos = from;
+		while (pos < to) {
+			long lineStart = pos;
+			long separatorPos = SEARCH.findDelimiter(data, pos, to, separator);
+			if (separatorPos == to && !includePartialLine) {
+				return lineStart;
+			}
+			if (separatorPos == to || data.get(ValueLayout.JAVA_BYTE, separatorPos) == NEWLINE) {
+				// A line without a separator
+				pos = separatorPos + 1;
+				continue;
+			}
+			long valueStart = separatorPos + 1;
+			if (valueStart + Long.BYTES <= data.byteSize()) {
+				long word = data.get(LITTLE_LONG, valueStart);
+				int newline = shortTemperatureEnd(word);
+				if (newline > 0 && valueStart + newline < to) {
+					visitName(data, lineStart, separatorPos, shortTemperature(word), visitor);
+					pos = valueStart + newline + 1;
+					continue;
+				}
+			}
+			long lineEnd = SEARCH.findNewline(data, valueStart, to);
+			if (lineEnd == to && !includePartialLine) {
+				return lineStart;
+			}
+			visitLine(data, lineStart, separatorPos, lineEnd, visitor);
+			// skip the newline
+			pos = lineEnd + 1;
+		}
+		return Math.min(pos, to);
+	}
+
+	/// @return the offset of the first byte after the next newline at or after `from`, or `to` if there is none
+	public static long nextLine(MemorySegment data, long from, long to) {
+		long newline = SEARCH.findNewline(data, from, to);
+		return newline == to ? to : newline + 1;
+	}
+
+	/// @return how separators and newlines are found, for logging
+	public static String delimiterSearch() {
+		return SEARCH.toString();
+	}
+
+	/// Checks whether `word`, the 8 bytes at the start of a value, hold a `-?d?d.d` temperature right before a newline.
+	///
+	/// @return the index of that newline in `word`, or -1 if the value has to go through [#parseTemperature]
+	private static int shortTemperatureEnd(long word) {
+		int dot = Long.numberOfTrailingZeros(~word & DOT_BITS) >>> 3;
+		if (dot > 3) {
+			return -1;
+		}
+		int sign = (word & 0xFF) == '-' ? 1 : 0;
+		// The whole digits and the tenths digit
+		long digitBytes = (((1L << (dot * 8)) - 1) & -(1L << (sign * 8))) | (0xFFL << ((dot + 1) * 8));
+		// A byte is a digit if it's below 10 once '0' is taken off, lower bytes never carry into it
+		long offsets = word ^ ZEROS;
+		boolean digits = (((offsets + 0x7676767676767676L) | offsets) & digitBytes & HIGH_BITS) == 0;
+		// One or two whole digits, three don't fit the multiplication in shortTemperature
+		boolean valid = dot > sign
+				&& dot - sign <= 2
+				&& digits
+				&& (word >>> (dot * 8) & 0xFF) == '.'
+				&& (word >>> ((dot + 2) * 8) & 0xFF) == NEWLINE;
+		return valid ? dot + 2 : -1;
+	}
+
+	/// Parses a temperature [#shortTemperatureEnd] accepted, by moving its digits into place and multiplying them
+	/// by 100, 10 and 1 at once.
+	private static int shortTemperature(long word) {
+		int dotBit = Long.numberOfTrailingZeros(~word & DOT_BITS);
+		// All ones for a minus sign, bit 4 is clear in '-' and set in every digit
+		long negative = (~word << 59) >> 63;
+		long digits = ((word & ~(negative & 0xFF)) << (28 - dotBit)) & 0x0F000F0F00L;
+		long absolute = ((digits * 0x640A0001L) >>> 32) & 0x3FF;
+		return (int) ((absolute ^ negative) - negative);
+	}
+
+	/// Parses `[from, to)` as a decimal number, rounded to one decimal place.
+	///
+	/// @return the number in tenths, or [#MALFORMED]
+	public static int parseTemperature(MemorySegment data, long from, long to) {
+		long pos = from;
+		boolean negative = false;
+		if (pos < to) {
+			byte sign = data.get(ValueLayout.JAVA_BYTE, pos);
+			if (sign == '-' || sign == '+') {
+				negative = sign == '-';
+				pos++;
+			}
+		}
+		long whole = 0;
+		int digits = 0;
+		byte b;
+		while (pos < to && (b = data.get(ValueLayout.JAVA_BYTE, pos)) >= '0' && b <= '9') {
+			whole = whole * 10 + (b - '0');
+			if (whole > MAX_WHOLE_PART) {
+				return MALFORMED;
+			}
+			digits++;
+			pos++;
+		}
+		int tenths = 0;
+		int round = 0;
+		if (pos < to && data.get(ValueLayout.JAVA_BYTE, pos) == '.') {
+			pos++;
+			int fractionDigits = 0;
+			while (pos < to && (b = data.get(ValueLayout.JAVA_BYTE, pos)) >= '0' && b <= '9') {
+				if (fractionDigits == 0) {
+					tenths = b - '0';
+				} else if (fractionDigits == 1) {
+					round = b >= '5' ? 1 : 0;
+				}
+				fractionDigits++;
+				pos++;
+			}
+			digits += fractionDigits;
+		}
+		if (pos != to || digits == 0) {
+			return MALFORMED;
+		}
+		long value = whole * 10 + tenths + round;
+		return (int) (negative ? -value : value);
+	}
+
+	/// @return true if the `length` bytes at `offset` start with `prefix`
+	public static boolean startsWith(MemorySegment data, long offset, int length, byte[] prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data.get(ValueLayout.JAVA_BYTE, offset + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/// Decodes the first UTF-16 char of a non-empty UTF-8 encoded name, without decoding the rest of it.
+	/// Invalid sequences are returned as U+FFFD.
+	public static char firstChar(MemorySegment data, long offset, int length) {
+		int b0 = data.get(ValueLayout.JAVA_BYTE, offset) & 0xFF;
+		if (b0 < 0x80) {
+			return (char) b0;
+		}
+		int extra = b0 >= 0xF0 ? 3 : b0 >= 0xE0 ? 2 : b0 >= 0xC0 ? 1 : -1;
+		if (extra < 0 || extra >= length) {
+			return '\uFFFD';
+		}
+		int codePoint = b0 & (0x3F >> extra);
+		for (int i = 1; i <= extra; i++) {
+			codePoint = (codePoint << 6) | (data.get(ValueLayout.JAVA_BYTE, offset + i) & 0x3F);
+		}
+		return Character.isBmpCodePoint(codePoint) ? (char) codePoint : Character.highSurrogate(codePoint);
+	}
+
+	/// Smallest temperature (in tenths) that is still `>= value`.
+	public static int ceilTenths(double value) {
+		return (int) Math.clamp(Math.ceil(value * 10 - 1e-6), Integer.MIN_VALUE + 1, Integer.MAX_VALUE);
+	}
+
+	/// Largest temperature (in tenths) that is still `<= value`.
+	public static int floorTenths(double value) {
+		return (int) Math.clamp(Math.floor(value * 10 + 1e-6), Integer.MIN_VALUE + 1, Integer.MAX_VALUE);
+	}
+
+	/// Writes `tenths` the way `String.format("%.1f", tenths / 10.0)` would in an English locale,
+	/// without going through a double or a String. Needs at most [#MAX_FORMATTED_LENGTH] bytes.
+	///
+	/// @return the offset after the last written byte
+	public static int formatTenths(int tenths, byte[] buffer, int offset) {
+		long value = tenths;
+		if (value < 0) {
+			buffer[offset++] = '-';
+			value = -value;
+		}
+		long whole = value / 10;
+		int digits = 1;
+		for (long rest = whole; rest >= 10; rest /= 10) {
+			digits++;
+		}
+		for (int i = digits - 1; i >= 0; i--) {
+			buffer[offset + i] = (byte) ('0' + whole % 10);
+			whole /= 10;
+		}
+		offset += digits;
+		buffer[offset++] = '.';
+		buffer[offset++] = (byte) ('0' + value % 10);
+		return offset;
+	}
+
+	private static void visitLine(MemorySegment data, long lineStart, long separatorPos, long lineEnd, RowVisitor visitor) {
+		long valueStart = skipWhitespace(data, separatorPos + 1, lineEnd);
+		long valueEnd = trimWhitespace(data, valueStart, lineEnd);
+		int temperature = parseTemperature(data, valueStart, valueEnd);
+		if (temperature == MALFORMED) {
+			return;
+		}
+		visitName(data, lineStart, separatorPos, temperature, visitor);
+	}
+
+	private static void visitName(MemorySegment data, long lineStart, long separatorPos, int temperature, RowVisitor visitor) {
+		long nameStart = skipWhitespace(data, lineStart, separatorPos);
+		long nameEnd = trimWhitespace(data, nameStart, separatorPos);
+		if (nameStart == nameEnd) {
+			return;
+		}
+		visitor.visit(data, nameStart, (int) (nameEnd - nameStart), temperature);
+	}
+
+	private static long skipWhitespace(MemorySegment data, long from, long to) {
+		while (from < to && isWhitespace(data.get(ValueLayout.JAVA_BYTE, from))) {
+			from++;
+		}
+		return from;
+	}
+
+	private static long trimWhitespace(MemorySegment data, long from, long to) {
+		while (to > from && isWhitespace(data.get(ValueLayout.JAVA_BYTE, to - 1))) {
+			to--;
+		}
+		return to;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+}
@@ -0,0 +1,318 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// Scans a whole measurement file in parallel.
+///
+/// The file is memory mapped through a [MemorySegment] (so files bigger than 2GB are fine) and cut into chunks at
+/// newlines. The file is paged in front to back through the [ReadScheduler], and every chunk is parsed on the pool
+/// as soon as it's in memory. Every chunk is parsed by its own visitor,
+/// and visitors are returned in file order, merging them is up to the caller.
+public final class MeasurementScanner {
+
+	/// Files smaller than this aren't worth splitting.
+	private static final long MIN_CHUNK_SIZE = 1 << 20;
+	private static final int CHUNKS_PER_CORE = 4;
+	/// Chunks that are paged in ahead of the parse at most, so a big file isn't paged in faster than it's parsed
+	private static final int CHUNKS_AHEAD = 2 * Runtime
+			.getRuntime()
+			.availableProcessors();
+	/// Shared by every scan, so a worker whose file is done steals chunks of the other files being scanned.
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime
+			                                                          .getRuntime()
+			                                                          .availableProcessors());
+
+	private MeasurementScanner() {}
+
+	/// @param priority how urgently the file has to be read, see [ReadScheduler]
+	public static <V extends RowVisitor> List<V> scan(
+			Path file,
+			ReadScheduler.Priority priority,
+			Supplier<V> visitorFactory) throws IOException {
+		return scan(file, priority, visitorFactory, (_, _) -> {});
+	}
+
+	/// Like [#scan(Path, ReadScheduler.Priority, Supplier)], and every chunk is also handed to `onChunkDone`,
+	/// together with its length in bytes, as soon as it has been parsed.
+	/// It's called from the pool's workers, so it has to be thread safe.
+	public static <V extends RowVisitor> List<V> scan(
+			Path file,
+			ReadScheduler.Priority priority,
+			Supplier<V> visitorFactory,
+			ObjLongConsumer<? super V> onChunkDone) throws IOException {
+		return scan(file, priority, 0, Long.MAX_VALUE, true, visitorFactory, onChunkDone).chunks();
+	}
+
+	public static <V extends RowVisitor> Result<V> scan(
+			Path file,
+			ReadScheduler.Priority priority,
+			long from,
+			boolean includePartialLine,
+			Supplier<V> visitorFactory) throws IOException {
+		return scan(file, priority, from, Long.MAX_VALUE, includePartialLine, visitorFactory, (_, _) -> {});
+	}
+
+	/// Scans the lines of `file` that start in `[from, limit)`, or up to its current end if that comes first.
+	/// `from` has to be the start of a line, a CSV header is only skipped when starting from `0`.
+	/// With `includePartialLine` set to false, a last line that isn't newline terminated yet is left for the next scan,
+	/// which is what tailing a file that is still being appended to needs.
+	/// [Result#end()] is where the next scan of the file continues, it's the end of the file once everything was read.
+	/// Gzipped files are read by [GzipScanner], offsets are positions in the compressed file then.
+	public static <V extends RowVisitor> Result<V> scan(
+			Path file,
+			ReadScheduler.Priority priority,
+			long from,
+			long limit,
+			boolean includePartialLine,
+			Supplier<V> visitorFactory,
+			ObjLongConsumer<? super V> onChunkDone) throws IOException {
+		return scan(file, priority, from, limit, includePartialLine, visitorFactory, onChunkDone, (_, _) -> {});
+	}
+
+	/// Like [#scan(Path, ReadScheduler.Priority, long, long, boolean, Supplier, ObjLongConsumer)], and every chunk is
+	/// also handed to `inOrder` in file order, so the caller can pass on what the chunk found before the scan is done.
+	public static <V extends RowVisitor> Result<V> scan(
+			Path file,
+			ReadScheduler.Priority priority,
+			long from,
+			long limit,
+			boolean includePartialLine,
+			Supplier<V> visitorFactory,
+			ObjLongConsumer<? super V> onChunkDone,
+			ChunkSink<? super V> inOrder) throws IOException {
+		var reader = ReadScheduler.reader(file, priority);
+		if (InputFormat.isCompressed(file)) {
+			return GzipScanner.scan(file, reader, from, limit, visitorFactory, onChunkDone, inOrder);
+		}
+		var format = InputFormat.of(file);
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ); var arena = Arena.ofShared()) {
+			long size = channel.size();
+			if (size <= from) {
+				return new Result<>(List.of(), Math.min(from, size), size);
+			}
+			MemorySegment data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+			long start = from;
+			if (from == 0 && format.hasHeader()) {
+				start = MeasurementParser.nextLine(data, 0, size);
+				if (!includePartialLine && data.get(ValueLayout.JAVA_BYTE, start - 1) != MeasurementParser.NEWLINE) {
+					// Not even the header has been written completely
+					return new Result<>(List.of(), 0, size);
+				}
+			}
+			// The line that limit falls into still belongs to this scan
+			long to = limit >= size ? size : MeasurementParser.nextLine(data, Math.max(start, limit - 1), size);
+			// The chunks are done before the arena is closed, otherwise the segment could be unmapped under them
+			var chunks = read(file, reader, data, start, to, format.separator(), includePartialLine, visitorFactory, onChunkDone, inOrder);
+			return new Result<>(chunks.chunks(), chunks.end(), size);
+		}
+	}
+
+	/// Pages `[from, to)` of the mapped `data` in through `reader`, front to back, and forks the parse of every chunk
+	/// as soon as it's in memory. Never more than [#CHUNKS_AHEAD] chunks are waiting for the pool,
+	/// the next piece is only read once the oldest of them is done.
+	private static <V extends RowVisitor> Result<V> read(
+			Path file,
+			ReadScheduler.Reader reader,
+			MemorySegment data,
+			long from,
+			long to,
+			byte separator,
+			boolean includePartialLine,
+			Supplier<V> visitorFactory,
+			ObjLongConsumer<? super V> onChunkDone,
+			ChunkSink<? super V> inOrder) throws IOException {
+		var cancelled = new AtomicBoolean();
+		Runnable cancel = () -> cancelled.set(true);
+		var parsing = new ArrayDeque<ForkJoinTask<Result<V>>>();
+		var visitors = new ArrayList<V>();
+		long grain = grainOf(to - from);
+		long loaded = from;
+		long end = from;
+		try {
+			for (long start = from; start < to; ) {
+				// Paged in past where the chunk ends, so finding the end of its last line doesn't touch the disk
+				long needed = Math.min(to, start + grain + 1);
+				if (loaded < needed) {
+					long next = Math.min(to, Math.max(needed, loaded + reader.readahead()));
+					reader.load(data, loaded, next);
+					loaded = next;
+				}
+				long chunkEnd = to - start > grain ? MeasurementParser.nextLine(data, start + grain, to) : to;
+				parsing.add(fork(new ChunkTask<>(
+						data,
+						start,
+						chunkEnd,
+						Long.MAX_VALUE,
+						separator,
+						includePartialLine,
+						visitorFactory,
+						onChunkDone,
+						cancelled)));
+				start = chunkEnd;
+				if (parsing.size() > CHUNKS_AHEAD) {
+					end = collect(join(file, parsing.poll(), cancel), visitors, inOrder);
+				}
+			}
+			while (!parsing.isEmpty()) {
+				end = collect(join(file, parsing.poll(), cancel), visitors, inOrder);
+			}
+		} finally {
+			if (!parsing.isEmpty()) {
+				cancelled.set(true);
+				parsing.forEach(ForkJoinTask::quietlyJoin);
+			}
+		}
+		return new Result<>(visitors, end, to);
+	}
+
+	/// Adds the visitor of a single chunk to `visitors` and hands it to `inOrder`.
+	///
+	/// @return where the chunk's lines end
+	private static <V extends RowVisitor> long collect(Result<V> chunk, List<V> visitors, ChunkSink<? super V> inOrder) throws IOException {
+		for (V visitor : chunk.chunks()) {
+			visitors.add(visitor);
+			inOrder.accept(visitor, chunk.end());
+		}
+		return chunk.end();
+	}
+
+	/// Parses `[from, to)` of `data`, which is already in memory, on the pool and waits for it.
+	static <V extends RowVisitor> Result<V> parse(
+			Path file,
+			MemorySegment data,
+			long from,
+			long to,
+			byte separator,
+			boolean includePartialLine,
+			Supplier<V> visitorFactory,
+			ObjLongConsumer<? super V> onChunkDone) throws IOException {
+		var cancelled = new AtomicBoolean();
+		var task = parseTask(data, from, to, separator, includePartialLine, visitorFactory, onChunkDone, cancelled);
+		return invoke(file, task, () -> cancelled.set(true));
+	}
+
+	/// A task that parses `[from, to)` of `data`, see [#fork] and [#join] to run it.
+	/// Chunks that haven't started yet are skipped once `cancelled` is set.
+	///
+	/// @return the visitors and where the parsed lines end, the size of the result is `to`
+	static <V extends RowVisitor> ForkJoinTask<Result<V>> parseTask(
+			MemorySegment data,
+			long from,
+			long to,
+			byte separator,
+			boolean includePartialLine,
+			Supplier<V> visitorFactory,
+			ObjLongConsumer<? super V> onChunkDone,
+			AtomicBoolean cancelled) {
+		return new ChunkTask<>(
+				data,
+				from,
+				to,
+				grainOf(to - from),
+				separator,
+				includePartialLine,
+				visitorFactory,
+				onChunkDone,
+				cancelled);
+	}
+
+	/// Runs `task` on the pool and waits for it, or runs it right away if already on the pool.
+	static <T> T invoke(Path file, ForkJoinTask<T> task, Runnable cancel) throws IOException {
+		return ForkJoinTask.inForkJoinPool() ? task.invoke() : join(file, fork(task), cancel);
+	}
+
+	/// Starts `task` on the pool without waiting for it.
+	static <T> ForkJoinTask<T> fork(ForkJoinTask<T> task) {
+		return ForkJoinTask.inForkJoinPool() ? task.fork() : POOL.submit(task);
+	}
+
+	/// Waits for a task started by [#fork].
+	/// If the caller is interrupted, `cancel` is called and the task is still waited for,
+	/// since it may be using memory that the caller frees once this returns.
+	static <T> T join(Path file, ForkJoinTask<T> task, Runnable cancel) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			cancel.run();
+			task.quietlyJoin();
+			Thread
+					.currentThread()
+					.interrupt();
+			throw new InterruptedIOException("Interrupted while scanning " + file);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to scan " + file, e.getCause());
+		}
+	}
+
+	/// Chunks are never smaller than [#MIN_CHUNK_SIZE], and there are up to [#CHUNKS_PER_CORE] of them per core,
+	/// so that a worker that is done early has something left to steal.
+	static long grainOf(long length) {
+		int cores = Runtime
+				.getRuntime()
+				.availableProcessors();
+		return Math.max(MIN_CHUNK_SIZE, length / ((long) cores * CHUNKS_PER_CORE));
+	}
+
+	/// @param chunks the visitors, in file order
+	/// @param end    offset right after the last consumed line
+	/// @param size   size of the file at the time it was mapped, or the end of the range for a part of it
+	public record Result<V>(List<V> chunks, long end, long size) {}
+
+	/// Parses `[from, to)` or splits it in two at the first newline after the middle.
+	private static final class ChunkTask<V extends RowVisitor> extends RecursiveTask<Result<V>> {
+		private final MemorySegment data;
+		private final long from;
+		private final long to;
+		private final long grain;
+		private final byte separator;
+		private final boolean includePartialLine;
+		private final Supplier<V> visitorFactory;
+		private final ObjLongConsumer<? super V> onChunkDone;
+		/// Set when the caller stops waiting, chunks that haven't started yet are skipped
+		private final AtomicBoolean cancelled;
+
+		private ChunkTask(
+				MemorySegment data,
+				long from,
+				long to,
+				long grain,
+				byte separator,
+				boolean includePartialLine,
+				Supplier<V> visitorFactory,
+				ObjLongConsumer<? super V> onChunkDone,
+				AtomicBoolean cancelled) {
+			this.data = data;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.separator = separator;
+			this.includePartialLine = includePartialLine;
+			this.visitorFactory = visitorFactory;
+			this.onChunkDone = onChunkDone;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		protected Result<V> compute() {
+			long boundary = to - from > grain ? MeasurementParser.nextLine(data, from + (to - from) / 2, to) : to;
+			if (boundary >= to) {
+				V visitor = visitorFactory.get();
+				long end = cancelled.get()
+						? from
+						: MeasurementParser.parseLines(data, from, to, separator, includePartialLine, visitor);
+				onChunkDone.accept(visitor, end - from);
+				return new Result<>(List.of(visitor), end, to);
+			}
+			var left = new ChunkTask<>(data, from, boundary, grain, separator, includePartialLine, visitorFactory, onChunkDone, cancelled);
+			var right = new ChunkTask<>(data, boundary, to, grain, separator, includePartialLine, visitorFactory, onChunkDone, cancelled);
+			left.fork();
+			Result<V> rightChunks = right.compute();
+			Result<V> leftChunks = left.join();
+			var visitors = new ArrayList<V>(leftChunks.chunks().size() + rightChunks.chunks().size());
+			visitors.addAll(leftChunks.chunks());
+			visitors.addAll(rightChunks.chunks());
+			// Only the last chunk can end in the middle of a line
+			return new Result<>(visitors, rightChunks.end(), to);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr.DeviceReadEvent;
+
+/// Decides who reads from a storage device next. Every read of a measurement file or a sidecar goes through it,
+/// whether it's for the watcher, a job or a sidecar build.
+///
+/// A device, told apart by `unix:dev` or by the root of the path where that isn't available, lets at most
+/// [ReadSettings#readersPerDevice()] readers in at once. Mapped files are paged in [ReadSettings#readahead()] bytes at
+/// a time and in file order, and the device is only held while a piece is paged in, not while the pool parses it.
+/// However many files are scanned at once, a disk keeps reading sequentially in large requests.
+/// Readers waiting for the same device go by [Priority], then in the order they started waiting.
+public final class ReadScheduler {
+
+	private static final Comparator<Waiting> ORDER = Comparator
+			.comparing(Waiting::priority)
+			.thenComparingLong(Waiting::sequence);
+
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+	private static volatile ReadScheduler shared = new ReadScheduler(ReadSettings.defaults());
+
+	private final ReadSettings settings;
+	private final Map<Object, Device> devices = new ConcurrentHashMap<>();
+
+	private ReadScheduler(ReadSettings settings) {
+		this.settings = settings;
+	}
+
+	/// Replaces the scheduler of every read that starts from now on, it's meant to be called once at startup.
+	public static void configure(ReadSettings settings) {
+		shared = new ReadScheduler(settings);
+	}
+
+	/// A reader of `file` that waits for its device with `priority`. Readers are cheap, one is made per scan.
+	public static Reader reader(Path file, Priority priority) {
+		ReadScheduler scheduler = shared;
+		Device device = scheduler.devices.computeIfAbsent(
+				deviceOf(file),
+				key -> new Device(key, scheduler.settings.readersPerDevice()));
+		return new Reader(file, device, priority, scheduler.settings.readahead());
+	}
+
+	private static Object deviceOf(Path file) {
+		try {
+			return Files.getAttribute(file, "unix:dev");
+		} catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+			return file
+					.toAbsolutePath()
+					.getRoot();
+		}
+	}
+
+	/// Most urgent first.
+	public enum Priority {
+		/// `SCAN` jobs, someone is waiting for their output
+		SCAN,
+		/// The watcher keeping the map up to date
+		INGEST,
+		/// Sidecar builds, they only make later scans faster
+		BACKGROUND
+	}
+
+	/// The reads of a single file.
+	public static final class Reader {
+		private final Path file;
+		private final Device device;
+		private final Priority priority;
+		private final long readahead;
+
+		private Reader(Path file, Device device, Priority priority, long readahead) {
+			this.file = file;
+			this.device = device;
+			this.priority = priority;
+			this.readahead = readahead;
+		}
+
+		/// Pages `[from, to)` of `data`, a mapping of the file, into memory in file order,
+		/// waiting for the device before every [ReadSettings#readahead()] sized piece.
+		public void load(MemorySegment data, long from, long to) throws InterruptedIOException {
+			for (long position = from; position < to; ) {
+				long end = Math.min(to, position + readahead);
+				try (var permit = acquire()) {
+					data
+							.asSlice(position, end - position)
+							.load();
+					permit.bytes = end - position;
+				}
+				position = end;
+			}
+		}
+
+		/// Holds the device until the permit is closed, for reads that aren't of a mapped file.
+		public Permit acquire() throws InterruptedIOException {
+			var event = new DeviceReadEvent();
+			event.begin();
+			long start = System.nanoTime();
+			device.acquire(priority);
+			return new Permit(this, event, System.nanoTime() - start);
+		}
+
+		public long readahead() {
+			return readahead;
+		}
+	}
+
+	/// A turn on a device, closing it lets the next reader in.
+	public static final class Permit implements AutoCloseable {
+		private final Reader reader;
+		private final DeviceReadEvent event;
+		private final long waited;
+		private long bytes;
+
+		private Permit(Reader reader, DeviceReadEvent event, long waited) {
+			this.reader = reader;
+			this.event = event;
+			this.waited = waited;
+		}
+
+		@Override
+		public void close() {
+			reader.device.release();
+			event.end();
+			if (event.shouldCommit()) {
+				event.device = reader.device.key.toString();
+				event.path = reader.file.toString();
+				event.priority = reader.priority.name();
+				event.waited = waited;
+				event.bytes = bytes;
+				event.commit();
+			}
+		}
+	}
+
+	private static final class Device {
+		private final Object key;
+		private final int readers;
+		private final Lock lock = new ReentrantLock();
+		private final Condition released = lock.newCondition();
+		private final PriorityQueue<Waiting> waiting = new PriorityQueue<>(ORDER);
+		private int reading;
+
+		private Device(Object key, int readers) {
+			this.key = key;
+			this.readers = readers;
+		}
+
+		void acquire(Priority priority) throws InterruptedIOException {
+			var self = new Waiting(priority, SEQUENCE.getAndIncrement());
+			lock.lock();
+			try {
+				waiting.add(self);
+				while (reading >= readers || waiting.peek() != self) {
+					released.await();
+				}
+				waiting.poll();
+				reading++;
+				// With more than one reader per device, the next in line may be able to go too
+				released.signalAll();
+			} catch (InterruptedException e) {
+				waiting.remove(self);
+				released.signalAll();
+				Thread
+						.currentThread()
+						.interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to read from device " + key);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void release() {
+			lock.lock();
+			try {
+				reading--;
+				released.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private record Waiting(Priority priority, long sequence) {}
+}
@@ -0,0 +1,32 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.config.ConcurrentMessConfig;
+
+/// Tuning of the [ReadScheduler].
+///
+/// @param readersPerDevice how many threads read from the same storage device at once. 1 keeps a spinning disk or a
+///                         network mount reading sequentially, an SSD can take a few more
+/// @param readahead        bytes paged in at once, a reader waits for its device again before every piece
+public record ReadSettings(int readersPerDevice, long readahead) {
+
+	public ReadSettings {
+		if (readersPerDevice < 1) {
+			throw new IllegalArgumentException("At least one reader per device has to be allowed");
+		}
+		if (readahead < 1) {
+			throw new IllegalArgumentException("The readahead has to be positive");
+		}
+	}
+
+	public static ReadSettings defaults() {
+		return new ReadSettings(1, 8L * 1024 * 1024);
+	}
+
+	/// Takes every value that is set in `config`, the rest are [#defaults()].
+	public static ReadSettings of(ConcurrentMessConfig config) {
+		var defaults = defaults();
+		return new ReadSettings(
+				config.ioReadersPerDevice() == null ? defaults.readersPerDevice() : config.ioReadersPerDevice(),
+				config.ioReadaheadMb() == null ? defaults.readahead() : config.ioReadaheadMb() * 1024L * 1024L);
+	}
+}
@@ -0,0 +1,14 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// Receives every well-formed row found by [MeasurementParser].
+/// The station name is not copied, it is the (already trimmed) byte range
+/// `[nameOffset, nameOffset + nameLength)` of `data`.
+/// Implementations are confined to a single chunk, so they don't need to be thread safe.
+@FunctionalInterface
+public interface RowVisitor {
+
+	/// @param temperature the temperature in tenths of a degree
+	void visit(MemorySegment data, long nameOffset, int nameLength, int temperature);
+}
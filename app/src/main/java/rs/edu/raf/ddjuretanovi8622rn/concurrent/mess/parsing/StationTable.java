@@ -0,0 +1,263 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// Open addressing hash table from a station name to its count, sum, min and max (temperatures in tenths).
+///
+/// Keys are the raw UTF-8 bytes of the name, copied once into an internal byte arena when a station is first seen,
+/// so looking up a row never creates a `String`. Entries are numbered densely in insertion order,
+/// which makes the entry number usable as a station id.
+///
+/// Not thread safe. As a [RowVisitor] one table is filled per chunk, chunks are combined with [#addAll].
+public final class StationTable implements RowVisitor {
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final ValueLayout.OfLong WORD = ValueLayout.JAVA_LONG_UNALIGNED;
+
+	/// `entry + 1` per slot, 0 marks a free slot. Always twice as big as the entry arrays.
+	private int[] index;
+	private int[] hashes;
+	private int[] nameOffsets;
+	private int[] nameLengths;
+	private long[] counts;
+	private long[] sums;
+	private int[] mins;
+	private int[] maxes;
+	private int size;
+
+	private byte[] names;
+	private MemorySegment namesSegment;
+	private int namesLength;
+
+	public StationTable() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public StationTable(int expectedStations) {
+		this(capacityFor(Math.max(expectedStations, 16)), capacityFor(Math.max(expectedStations, 16)) * 16);
+	}
+
+	private StationTable(int capacity, int nameBytes) {
+		index = new int[capacity * 2];
+		hashes = new int[capacity];
+		nameOffsets = new int[capacity];
+		nameLengths = new int[capacity];
+		counts = new long[capacity];
+		sums = new long[capacity];
+		mins = new int[capacity];
+		maxes = new int[capacity];
+		names = new byte[nameBytes];
+		namesSegment = MemorySegment.ofArray(names);
+	}
+
+	/// Smallest power of two that fits `stations`.
+	private static int capacityFor(int stations) {
+		return Integer.highestOneBit(Math.max(stations, 1) * 2 - 1);
+	}
+
+	/// A copy without room to spare and without the stations whose count is 0, for tables that are kept around.
+	public StationTable compact() {
+		var compact = new StationTable(capacityFor(size), namesLength);
+		compact.addAll(this);
+		return compact;
+	}
+
+	@Override
+	public void visit(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+		add(data, nameOffset, nameLength, temperature);
+	}
+
+	/// Adds a single row.
+	///
+	/// @return the entry of the row's station
+	public int add(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+		int entry = entryOf(data, nameOffset, nameLength);
+		counts[entry]++;
+		sums[entry] += temperature;
+		if (temperature < mins[entry]) {
+			mins[entry] = temperature;
+		}
+		if (temperature > maxes[entry]) {
+			maxes[entry] = temperature;
+		}
+		return entry;
+	}
+
+	/// Merges every station of `other` into this table.
+	public void addAll(StationTable other) {
+		for (int e = 0; e < other.size; e++) {
+			if (other.counts[e] == 0) {
+				continue;
+			}
+			merge(
+					other.namesSegment,
+					other.nameOffsets[e],
+					other.nameLengths[e],
+					other.counts[e],
+					other.sums[e],
+					other.mins[e],
+					other.maxes[e]);
+		}
+	}
+
+	/// Merges an already aggregated station into this table.
+	public void merge(MemorySegment data, long nameOffset, int nameLength, long count, long sum, int min, int max) {
+		int entry = entryOf(data, nameOffset, nameLength);
+		counts[entry] += count;
+		sums[entry] += sum;
+		mins[entry] = Math.min(mins[entry], min);
+		maxes[entry] = Math.max(maxes[entry], max);
+	}
+
+	/// Subtracts a count and a sum from an entry. The min and max can't be taken back, see [#resetMinMax].
+	public void subtract(int entry, long count, long sum) {
+		counts[entry] -= count;
+		sums[entry] -= sum;
+	}
+
+	/// Forgets the min and max of an entry, so they can be rebuilt with [#mergeMinMax].
+	public void resetMinMax(int entry) {
+		mins[entry] = Integer.MAX_VALUE;
+		maxes[entry] = Integer.MIN_VALUE;
+	}
+
+	public void mergeMinMax(int entry, int min, int max) {
+		mins[entry] = Math.min(mins[entry], min);
+		maxes[entry] = Math.max(maxes[entry], max);
+	}
+
+	/// @return the entry of the station, inserting an empty one if it isn't in the table yet
+	public int entryOf(MemorySegment data, long nameOffset, int nameLength) {
+		if (size == counts.length) {
+			grow();
+		}
+		int hash = hash(data, nameOffset, nameLength);
+		int mask = index.length - 1;
+		int slot = hash & mask;
+		while (true) {
+			int entry = index[slot] - 1;
+			if (entry < 0) {
+				return insert(slot, hash, data, nameOffset, nameLength);
+			}
+			if (matches(entry, hash, data, nameOffset, nameLength)) {
+				return entry;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/// @return the entry of the station, or -1 if it isn't in the table
+	public int find(MemorySegment data, long nameOffset, int nameLength) {
+		int hash = hash(data, nameOffset, nameLength);
+		int mask = index.length - 1;
+		int slot = hash & mask;
+		while (true) {
+			int entry = index[slot] - 1;
+			if (entry < 0) {
+				return -1;
+			}
+			if (matches(entry, hash, data, nameOffset, nameLength)) {
+				return entry;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/// Number of entries, including stations whose count was subtracted down to 0.
+	public int size() {
+		return size;
+	}
+
+	public long count(int entry) {
+		return counts[entry];
+	}
+
+	public long sum(int entry) {
+		return sums[entry];
+	}
+
+	public int min(int entry) {
+		return mins[entry];
+	}
+
+	public int max(int entry) {
+		return maxes[entry];
+	}
+
+	public String name(int entry) {
+		return new String(names, nameOffsets[entry], nameLengths[entry], StandardCharsets.UTF_8);
+	}
+
+	/// The segment the names are stored in, only valid until the next insert.
+	public MemorySegment nameSegment() {
+		return namesSegment;
+	}
+
+	public long nameOffset(int entry) {
+		return nameOffsets[entry];
+	}
+
+	public int nameLength(int entry) {
+		return nameLengths[entry];
+	}
+
+	/// Hashes 8 bytes at a time while they fit, the tail byte by byte.
+	static int hash(MemorySegment data, long offset, int length) {
+		long h = length;
+		int i = 0;
+		for (; i + Long.BYTES <= length; i += Long.BYTES) {
+			h = (h ^ data.get(WORD, offset + i)) * 0x9E3779B97F4A7C15L;
+		}
+		for (; i < length; i++) {
+			h = (h ^ data.get(ValueLayout.JAVA_BYTE, offset + i)) * 0x9E3779B97F4A7C15L;
+		}
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private boolean matches(int entry, int hash, MemorySegment data, long nameOffset, int nameLength) {
+		return hashes[entry] == hash && nameLengths[entry] == nameLength && MemorySegment.mismatch(
+				namesSegment,
+				nameOffsets[entry],
+				nameOffsets[entry] + nameLength,
+				data,
+				nameOffset,
+				nameOffset + nameLength) == -1;
+	}
+
+	private int insert(int slot, int hash, MemorySegment data, long nameOffset, int nameLength) {
+		if (namesLength + nameLength > names.length) {
+			names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + nameLength));
+			namesSegment = MemorySegment.ofArray(names);
+		}
+		MemorySegment.copy(data, nameOffset, namesSegment, namesLength, nameLength);
+		int entry = size++;
+		index[slot] = entry + 1;
+		hashes[entry] = hash;
+		nameOffsets[entry] = namesLength;
+		nameLengths[entry] = nameLength;
+		mins[entry] = Integer.MAX_VALUE;
+		maxes[entry] = Integer.MIN_VALUE;
+		namesLength += nameLength;
+		return entry;
+	}
+
+	private void grow() {
+		int capacity = counts.length * 2;
+		hashes = Arrays.copyOf(hashes, capacity);
+		nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+		nameLengths = Arrays.copyOf(nameLengths, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+		sums = Arrays.copyOf(sums, capacity);
+		mins = Arrays.copyOf(mins, capacity);
+		maxes = Arrays.copyOf(maxes, capacity);
+		index = new int[capacity * 2];
+		int mask = index.length - 1;
+		for (int entry = 0; entry < size; entry++) {
+			int slot = hashes[entry] & mask;
+			while (index[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = entry + 1;
+		}
+	}
+}
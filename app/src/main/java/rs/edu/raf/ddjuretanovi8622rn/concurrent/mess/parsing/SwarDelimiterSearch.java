@@ -0,0 +1,61 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// Looks at 8 bytes at a time with plain long arithmetic ("SIMD within a register"), works on every JVM.
+final class SwarDelimiterSearch implements DelimiterSearch {
+
+	private static final ValueLayout.OfLong LITTLE_LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	private static final long NEWLINES = ONES * MeasurementParser.NEWLINE;
+
+	@Override
+	public long findDelimiter(MemorySegment data, long from, long to, byte separator) {
+		long separators = ONES * (separator & 0xFF);
+		long pos = from;
+		for (; pos + Long.BYTES <= to; pos += Long.BYTES) {
+			long word = data.get(LITTLE_LONG, pos);
+			long matches = matches(word, NEWLINES) | matches(word, separators);
+			if (matches != 0) {
+				return pos + (Long.numberOfTrailingZeros(matches) >>> 3);
+			}
+		}
+		for (; pos < to; pos++) {
+			byte b = data.get(ValueLayout.JAVA_BYTE, pos);
+			if (b == MeasurementParser.NEWLINE || b == separator) {
+				return pos;
+			}
+		}
+		return to;
+	}
+
+	@Override
+	public long findNewline(MemorySegment data, long from, long to) {
+		long pos = from;
+		for (; pos + Long.BYTES <= to; pos += Long.BYTES) {
+			long matches = matches(data.get(LITTLE_LONG, pos), NEWLINES);
+			if (matches != 0) {
+				return pos + (Long.numberOfTrailingZeros(matches) >>> 3);
+			}
+		}
+		for (; pos < to; pos++) {
+			if (data.get(ValueLayout.JAVA_BYTE, pos) == MeasurementParser.NEWLINE) {
+				return pos;
+			}
+		}
+		return to;
+	}
+
+	/// Sets the high bit of every byte of `word` that equals the byte repeated in `pattern`.
+	/// Bytes above the first match can be marked wrongly, the lowest marked byte is always right.
+	private static long matches(long word, long pattern) {
+		long diff = word ^ pattern;
+		return (diff - ONES) & ~diff & HIGH_BITS;
+	}
+
+	@Override
+	public String toString() {
+		return "SWAR";
+	}
+}
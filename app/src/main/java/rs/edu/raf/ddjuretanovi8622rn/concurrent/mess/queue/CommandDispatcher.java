@@ -0,0 +1,109 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.queue;
+
+import module java.base;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Message;
+
+/// Takes commands out of the [MessageQueue] and runs them in parallel, keeping the order only where it matters.
+///
+/// - Commands about the same job (`SCAN` and `STATUS` of a job name) run one after the other, in queue order.
+/// - `STATUS` of every job runs once every job command dispatched before it ran, so it shows the jobs
+///   of the `SCAN`s that came before it.
+/// - `MAP`, `EXPORTMAP` and `STATIONS` read the watcher's aggregates. They run one after the other in queue order,
+///   on their own, so a slow export never holds up the job commands behind it.
+/// - `START` is a barrier, it waits for everything dispatched before it and everything after it waits for it.
+public final class CommandDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(CommandDispatcher.class);
+
+	private final MessageQueue queue;
+	private final Consumer<Command> handler;
+	private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+	/// Last command of every job that is still running or waiting, the next command of the job runs after it
+	private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+	/// Last command that reads the watcher's aggregates, only touched by the thread that dispatches
+	private CompletableFuture<Void> aggregatesTail = CompletableFuture.completedFuture(null);
+	private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+
+	public CommandDispatcher(MessageQueue queue, Consumer<Command> handler) {
+		this.queue = queue;
+		this.handler = handler;
+	}
+
+	/// Dispatches commands until the poison pill comes out of the queue,
+	/// then waits for the commands that were already dispatched.
+	public void run() throws InterruptedException {
+		try {
+			while (true) {
+				Message message = queue.take();
+				if (!(message instanceof Command command)) {
+					log.info("Poison pill detected. Exiting consumer thread...");
+					break;
+				}
+				switch (command) {
+					case Command.Start start -> {
+						awaitInFlight();
+						execute(start);
+					}
+					case Command.Scan scan -> dispatch(scan.jobName(), scan);
+					case Command.Status status when status.jobname() != null -> dispatch(status.jobname(), status);
+					case Command.Status status -> dispatchAfterEveryJob(status);
+					case Command.Map _, Command.ExportMap _, Command.Stations _ -> {
+						aggregatesTail = aggregatesTail.thenRunAsync(() -> execute(command), executorService);
+						track(aggregatesTail);
+					}
+					default -> track(CompletableFuture.runAsync(() -> execute(command), executorService));
+				}
+			}
+			awaitInFlight();
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	private void dispatch(String jobName, Command command) {
+		CompletableFuture<Void> next = tails.compute(
+				jobName,
+				(_, tail) -> tail == null
+						? CompletableFuture.runAsync(() -> execute(command), executorService)
+						: tail.thenRunAsync(() -> execute(command), executorService));
+		// Only forget the tail if no later command of the job was chained to it in the meantime
+		next.whenComplete((_, _) -> tails.remove(jobName, next));
+		track(next);
+	}
+
+	private void dispatchAfterEveryJob(Command command) {
+		CompletableFuture<?>[] jobs = tails
+				.values()
+				.toArray(CompletableFuture[]::new);
+		track(CompletableFuture
+				      .allOf(jobs)
+				      .thenRunAsync(() -> execute(command), executorService));
+	}
+
+	private void track(CompletableFuture<Void> future) {
+		inFlight.add(future);
+		future.whenComplete((_, _) -> inFlight.remove(future));
+	}
+
+	private void awaitInFlight() throws InterruptedException {
+		try {
+			CompletableFuture
+					.allOf(inFlight.toArray(CompletableFuture[]::new))
+					.get();
+		} catch (ExecutionException e) {
+			// execute never throws, there is nothing to report here
+		}
+	}
+
+	/// Failures are logged, so that a failing command doesn't hold up the commands of the same job after it.
+	private void execute(Command command) {
+		try {
+			handler.accept(command);
+		} catch (RuntimeException e) {
+			log.error("Error executing {}: {}", command, e.getMessage());
+		}
+	}
+}
@@ -4,40 +4,58 @@ import module java.base;
 
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Message;
 import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.PoisonPill;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.jfr.QueueLatencyEvent;
 
+/// Commands come out in the order they were emitted.
+/// A [PoisonPill] jumps ahead of every command that is still waiting, and once emitted it is all that `take` returns,
+/// to every consumer.
+///
+/// Emitting and taking don't share a lock, so producers never wait for a consumer.
 public final class MessageQueue {
 
-    private final BlockingQueue<Message> messages;
+    private final BlockingQueue<Envelope> messages = new LinkedBlockingQueue<>();
 
-    ///  Provides equivalent semantics to synchronized blocks
-    private final Lock lock = new ReentrantLock();
-
-    public MessageQueue() {
-        messages = new PriorityBlockingQueue<>();
-    }
+    private volatile PoisonPill poisonPill;
 
     public boolean emit(Message m) {
-        return messages.offer(m);
+        if (m instanceof PoisonPill pill) {
+            poisonPill = pill;
+            // Wakes up a consumer that is blocked on an empty queue, it passes the wake up on to the next one
+            return messages.offer(new Envelope(pill, null));
+        }
+        var latency = new QueueLatencyEvent();
+        latency.begin();
+        return messages.offer(new Envelope(m, latency));
     }
 
     public Message take() throws InterruptedException {
-        lock.lock();
-        try {
-            Message head = messages.peek();
-            if (head instanceof PoisonPill) {
-                return head;
+        while (true) {
+            PoisonPill pill = poisonPill;
+            if (pill != null) {
+                return pill;
+            }
+            Envelope envelope = messages.take();
+            if (envelope.message() instanceof PoisonPill) {
+                messages.offer(envelope);
+                continue;
             }
-            Message m = messages.take();
-            // Required since, technically, the producer can emit a PoisonPill in between
-            // the peek and take calls.
-            // It's probably physically impossible due to the extremely precise timing needed, but still.
-            if (m instanceof PoisonPill) {
-                this.emit(m);
-                return m;
+            envelope.taken(messages.size());
+            return envelope.message();
+        }
+    }
+
+    /// A message together with the event that measures how long it waits in the queue.
+    private record Envelope(Message message, QueueLatencyEvent latency) {
+
+        void taken(int queueLength) {
+            latency.end();
+            if (latency.shouldCommit()) {
+                latency.messageType = message
+                        .getClass()
+                        .getSimpleName();
+                latency.queueLength = queueLength;
+                latency.commit();
             }
-            return m;
-        } finally {
-            lock.unlock();
         }
     }
 }
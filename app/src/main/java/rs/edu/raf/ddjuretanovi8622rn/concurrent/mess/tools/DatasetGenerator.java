@@ -0,0 +1,253 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.tools;
+
+import module java.base;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.InputFormat;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementParser;
+
+/// Writes 1BRC style measurement files for load testing.
+///
+/// The output only depends on the options, never on the number of threads: rows are generated in fixed size blocks,
+/// every block has its own seed derived from the file and block number, and blocks are written in order.
+/// With `--gzip true` every block is also compressed on its own, into BGZF members, which can be inflated in parallel.
+///
+/// ```
+/// ./gradlew generateData -Pgenerator.args="--rows 1000000000 --stations 10000 --files 8 --skew 1.2"
+///```
+public final class DatasetGenerator {
+
+	private static final Logger log = LoggerFactory.getLogger(DatasetGenerator.class);
+	private static final int BLOCK_ROWS = 1 << 20;
+	private static final int LETTERS = 26;
+	/// Input bytes per BGZF member, small enough that even incompressible input fits the 64KB a member can have
+	private static final int BGZF_INPUT = 60_000;
+	private static final int BGZF_HEADER_SIZE = 18;
+	/// The empty member `bgzip` ends its files with
+	private static final byte[] BGZF_EOF = HexFormat
+			.of()
+			.parseHex("1f8b08040000000000ff0600424302001b0003000000000000000000");
+
+	private final Options options;
+	private final byte[][] stationNames;
+	private final double[] stationMeans;
+
+	public DatasetGenerator(Options options) {
+		this.options = options;
+		var random = new SplittableRandom(options.seed());
+		double[] letterWeights = letterWeights(options.letterSkew());
+		var names = new LinkedHashSet<String>();
+		while (names.size() < options.stations()) {
+			names.add(stationName(random, letterWeights));
+		}
+		this.stationNames = names
+				.stream()
+				.map(name -> name.getBytes(StandardCharsets.UTF_8))
+				.toArray(byte[][]::new);
+		this.stationMeans = new double[stationNames.length];
+		for (int i = 0; i < stationMeans.length; i++) {
+			stationMeans[i] = random.nextDouble(-30, 40);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		var options = Options.parse(args);
+		long start = System.nanoTime();
+		List<Path> files = new DatasetGenerator(options).generate();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		log.info(
+				"Generated {} rows in {} files in {}s ({} rows/s)",
+				options.rows(),
+				files.size(),
+				String.format("%.2f", seconds),
+				String.format("%.0f", options.rows() / seconds));
+	}
+
+	/// Writes every file into the target directory.
+	///
+	/// @return the written files
+	public List<Path> generate() throws IOException, InterruptedException {
+		Files.createDirectories(options.directory());
+		String extension = (options.format() == InputFormat.CSV ? ".csv" : ".txt") + (options.gzip() ? ".gz" : "");
+		var files = new ArrayList<Path>(options.files());
+		for (int file = 0; file < options.files(); file++) {
+			Path path = options
+					.directory()
+					.resolve("measurements-" + file + extension);
+			log.info("Writing {} rows to {}", rowsInFile(file), path);
+			try (var out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 20)) {
+				write(out, file);
+			}
+			files.add(path);
+		}
+		return files;
+	}
+
+	/// Writes the content of file number `file`, blocks are generated in parallel but written in order.
+	public void write(OutputStream out, int file) throws IOException, InterruptedException {
+		if (options.format().hasHeader()) {
+			out.write(encode("station,temperature\n".getBytes(StandardCharsets.UTF_8)));
+		}
+		long rows = rowsInFile(file);
+		long blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+		int window = Runtime
+				.getRuntime()
+				.availableProcessors() * 2;
+		var inFlight = new ArrayDeque<Future<byte[]>>();
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (long block = 0; block < blocks; block++) {
+				long blockNumber = block;
+				int blockRows = (int) Math.min(BLOCK_ROWS, rows - block * BLOCK_ROWS);
+				inFlight.add(executor.submit(() -> encode(generateBlock(file, blockNumber, blockRows))));
+				if (inFlight.size() >= window) {
+					out.write(inFlight
+							          .poll()
+							          .get());
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				out.write(inFlight
+						          .poll()
+						          .get());
+			}
+			if (options.gzip()) {
+				out.write(BGZF_EOF);
+			}
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to generate " + options.directory(), e.getCause());
+		}
+	}
+
+	private long rowsInFile(int file) {
+		long base = options.rows() / options.files();
+		return base + (file < options.rows() % options.files() ? 1 : 0);
+	}
+
+	private byte[] generateBlock(int file, long block, int rows) {
+		var random = new SplittableRandom(options.seed() ^ (file * 0x9E3779B97F4A7C15L) ^ (block * 0xC2B2AE3D27D4EB4FL));
+		var out = new ByteArrayOutputStream(rows * 16);
+		byte separator = options
+				.format()
+				.separator();
+		byte[] number = new byte[MeasurementParser.MAX_FORMATTED_LENGTH];
+		for (int i = 0; i < rows; i++) {
+			int station = random.nextInt(stationNames.length);
+			double value = stationMeans[station] + random.nextGaussian() * 10;
+			int tenths = (int) Math.clamp(Math.round(value * 10), -999, 999);
+			out.writeBytes(stationNames[station]);
+			out.write(separator);
+			out.write(number, 0, MeasurementParser.formatTenths(tenths, number, 0));
+			out.write('\n');
+		}
+		return out.toByteArray();
+	}
+
+	private byte[] encode(byte[] rows) {
+		return options.gzip() ? bgzf(rows) : rows;
+	}
+
+	/// Compresses `rows` into BGZF members, cut at line ends so that every member holds whole lines.
+	private static byte[] bgzf(byte[] rows) {
+		var out = new ByteArrayOutputStream(rows.length / 2);
+		var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		var crc = new CRC32();
+		byte[] compressed = new byte[1 << 16];
+		try {
+			int from = 0;
+			while (from < rows.length) {
+				int to = Math.min(rows.length, from + BGZF_INPUT);
+				if (to < rows.length) {
+					int lineEnd = to;
+					while (lineEnd > from && rows[lineEnd - 1] != '\n') {
+						lineEnd--;
+					}
+					to = lineEnd > from ? lineEnd : to;
+				}
+				deflater.reset();
+				deflater.setInput(rows, from, to - from);
+				deflater.finish();
+				int length = 0;
+				while (!deflater.finished()) {
+					length += deflater.deflate(compressed, length, compressed.length - length);
+				}
+				crc.reset();
+				crc.update(rows, from, to - from);
+				var member = ByteBuffer
+						.allocate(BGZF_HEADER_SIZE + length + 8)
+						.order(ByteOrder.LITTLE_ENDIAN);
+				member
+						.put(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0})
+						.putShort((short) (member.capacity() - 1))
+						.put(compressed, 0, length)
+						.putInt((int) crc.getValue())
+						.putInt(to - from);
+				out.write(member.array(), 0, member.capacity());
+				from = to;
+			}
+		} finally {
+			deflater.end();
+		}
+		return out.toByteArray();
+	}
+
+	/// Zipf like weights, the n-th letter of the alphabet has weight `1 / n^skew`. A skew of 0 is uniform.
+	private static double[] letterWeights(double skew) {
+		double[] cumulative = new double[LETTERS];
+		double total = 0;
+		for (int i = 0; i < LETTERS; i++) {
+			total += 1 / Math.pow(i + 1, skew);
+			cumulative[i] = total;
+		}
+		for (int i = 0; i < LETTERS; i++) {
+			cumulative[i] /= total;
+		}
+		return cumulative;
+	}
+
+	private static String stationName(SplittableRandom random, double[] letterWeights) {
+		double pick = random.nextDouble();
+		int letter = 0;
+		while (letter < LETTERS - 1 && letterWeights[letter] < pick) {
+			letter++;
+		}
+		int length = random.nextInt(3, 20);
+		var name = new StringBuilder(length);
+		name.append((char) ('A' + letter));
+		for (int i = 1; i < length; i++) {
+			name.append((char) ('a' + random.nextInt(LETTERS)));
+		}
+		return name.toString();
+	}
+
+	/// @param letterSkew how unevenly first letters are distributed, 0 is uniform, see [#letterWeights]
+	public record Options(
+			Path directory,
+			long rows,
+			int stations,
+			double letterSkew,
+			int files,
+			InputFormat format,
+			boolean gzip,
+			long seed) {
+
+		public Options {
+			if (rows < 0 || stations < 1 || files < 1 || letterSkew < 0) {
+				throw new IllegalArgumentException("Rows, stations, files and skew have to be positive");
+			}
+		}
+
+		/// Accepts `--dir`, `--rows`, `--stations`, `--skew`, `--files`, `--format txt|csv`, `--gzip true|false` and `--seed`.
+		public static Options parse(String[] args) {
+			var values = ToolArguments.parse(args);
+			return new Options(
+					Path.of(values.getOrDefault("dir", "watch")),
+					Long.parseLong(values.getOrDefault("rows", "1000000")),
+					Integer.parseInt(values.getOrDefault("stations", "10000")),
+					Double.parseDouble(values.getOrDefault("skew", "0")),
+					Integer.parseInt(values.getOrDefault("files", "1")),
+					"csv".equalsIgnoreCase(values.getOrDefault("format", "txt")) ? InputFormat.CSV : InputFormat.SEMICOLON,
+					Boolean.parseBoolean(values.getOrDefault("gzip", "false")),
+					Long.parseLong(values.getOrDefault("seed", "42")));
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.tools;
+
+import module java.base;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.AggregateData;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.CommandParser;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.WatchRoots;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring.DirectoryWatcher;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring.MapReportService;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job.JobManager;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job.JobState;
+
+/// Runs the watcher and job pipeline without the CLI and reports how fast it is end to end.
+///
+/// The script is a list of regular commands, one per line, `#` starts a comment. Every `SCAN` is awaited before the
+/// next command runs, so its wall-clock time is the time the whole job took.
+///
+/// ```
+/// ./gradlew generateData -Pgenerator.args="--rows 100000000 --files 4"
+/// ./gradlew throughput -Pharness.args="--dir watch --script scan.txt"
+///```
+public final class ThroughputHarness {
+
+	private static final Logger log = LoggerFactory.getLogger(ThroughputHarness.class);
+	private static final List<String> DEFAULT_SCRIPT = List.of(
+			"START",
+			"MAP",
+			"SCAN --min -10 --max 10 --letter A --output harness-a.txt --job harness-a",
+			"SCAN --min 0 --max 99.9 --letter M --output harness-m.txt --job harness-m",
+			"STATUS");
+	private static final Duration POLL_INTERVAL = Duration.ofMillis(10);
+
+	private final Path watchDirectory;
+	private final List<String> script;
+	private final DirectoryWatcher watcher;
+	private final MapReportService mapReportService;
+	private final JobManager jobManager = new JobManager();
+	private long rows;
+
+	public ThroughputHarness(Path watchDirectory, List<String> script) {
+		this.watchDirectory = watchDirectory;
+		this.script = script;
+		this.watcher = new DirectoryWatcher(watchDirectory);
+		this.mapReportService = new MapReportService(watcher);
+	}
+
+	/// Accepts `--dir` (the watch directory, `watch` by default) and `--script` (a file with one command per line).
+	public static void main(String[] args) throws Exception {
+		var values = ToolArguments.parse(args);
+		Path directory = Path.of(values.getOrDefault("dir", "watch"));
+		List<String> script = values.containsKey("script") ? Files.readAllLines(Path.of(values.get("script"))) : DEFAULT_SCRIPT;
+		new ThroughputHarness(directory, script).run();
+	}
+
+	public void run() throws InterruptedException {
+		long start = System.nanoTime();
+		watcher.start();
+		long firstMap = System.nanoTime() - start;
+		rows = watcher
+				.getAggregateMap()
+				.values()
+				.stream()
+				.mapToLong(AggregateData::count)
+				.sum();
+		report("Time to first map", rows, firstMap);
+
+		try {
+			for (String line : script) {
+				String trimmed = line.strip();
+				if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+					continue;
+				}
+				execute(trimmed);
+			}
+		} finally {
+			if (jobManager.isStarted()) {
+				jobManager.quit(false);
+			}
+		}
+		report("Total", rows, System.nanoTime() - start);
+	}
+
+	private void execute(String line) throws InterruptedException {
+		Command command = CommandParser.parseCommand(line);
+		long begin = System.nanoTime();
+		switch (command) {
+			case Command.Start start -> jobManager.init(start.loadJobs(), WatchRoots.of(watchDirectory));
+			case Command.Map _ -> mapReportService.printMap();
+			case Command.ExportMap _ -> mapReportService.exportMapToCsv();
+			case Command.Stations stations -> {
+				if (stations.export()) {
+					mapReportService.exportStationsToCsv();
+				} else {
+					mapReportService.printStations();
+				}
+			}
+			case Command.Status status -> jobManager.status(status.jobname());
+			case Command.Scan scan -> {
+				jobManager.scan(scan);
+				JobState state = awaitJob(scan.jobName());
+				report("Job " + scan.jobName() + " " + state.name().toLowerCase(), rows, System.nanoTime() - begin);
+				return;
+			}
+			case Command.Stop _ -> throw new IllegalArgumentException("The harness stops on its own at the end of the script");
+		}
+		report(line, 0, System.nanoTime() - begin);
+	}
+
+	private JobState awaitJob(String jobName) throws InterruptedException {
+		while (true) {
+			var info = jobManager.getJobInfo(jobName);
+			if (info.isEmpty()) {
+				// The scan was rejected or there was nothing to process
+				return JobState.CANCELLED;
+			}
+			JobState state = info
+					.get()
+					.state();
+			if (state == JobState.COMPLETED || state == JobState.CANCELLED || state == JobState.FAILED) {
+				return state;
+			}
+			Thread.sleep(POLL_INTERVAL);
+		}
+	}
+
+	private static void report(String what, long rows, long nanos) {
+		double seconds = nanos / 1e9;
+		if (rows == 0) {
+			log.info("[harness] {}: {}ms", what, String.format("%.1f", nanos / 1e6));
+			return;
+		}
+		log.info(
+				"[harness] {}: {}ms, {} rows, {} rows/s",
+				what,
+				String.format("%.1f", nanos / 1e6),
+				rows,
+				String.format("%.0f", rows / seconds));
+	}
+}
@@ -0,0 +1,23 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.tools;
+
+import module java.base;
+
+/// `--name value` argument parsing for the command line tools.
+final class ToolArguments {
+
+	private ToolArguments() {}
+
+	static Map<String, String> parse(String[] args) {
+		var values = new HashMap<String, String>();
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--")) {
+				throw new IllegalArgumentException("Expected an option, but got: " + args[i]);
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for option: " + args[i]);
+			}
+			values.put(args[i].substring(2), args[++i]);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,177 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.cache;
+
+import module java.base;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementScanner;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.ReadScheduler;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.RowVisitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarCacheTest {
+
+	private static final long MEMORY_BUDGET = 64L * 1024 * 1024;
+	/// Letter and range of every query, the empty ones included
+	private static final List<Query> QUERIES = List.of(
+			new Query('S', -999, 999),
+			new Query('S', -50, 50),
+			new Query('T', 0, 0),
+			new Query('T', 100, 999),
+			new Query('X', -999, 999),
+			new Query('S', 990, 999));
+
+	@TempDir
+	Path directory;
+	private Path cacheDirectory;
+	private Path file;
+	private ColumnarCache cache;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		cacheDirectory = directory.resolve("cache");
+		file = directory.resolve("measurements.txt");
+		writeMeasurements(file, 50_000);
+		cache = new ColumnarCache(cacheDirectory, MEMORY_BUDGET);
+	}
+
+	@Test
+	void answersLikeATextScanFromTheWatchersPass() throws Exception {
+		ingest(cache);
+		awaitSidecarFile();
+		// Only the copy on the heap is left to answer
+		deleteSidecarFiles();
+		for (Query query : QUERIES) {
+			assertEquals(textScan(query), cacheScan(query), query.toString());
+		}
+	}
+
+	@Test
+	void answersLikeATextScanFromABuiltSidecar() throws IOException {
+		cache.build(file);
+		for (Query query : QUERIES) {
+			assertEquals(textScan(query), cacheScan(query), query.toString());
+		}
+	}
+
+	@Test
+	void rebuildsASidecarOfAnOlderVersionOfTheFile() throws Exception {
+		ingest(cache);
+		awaitSidecarFile();
+		Files.writeString(file, "Sirmium;1.0\n", StandardOpenOption.APPEND);
+		Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(1)));
+		assertFalse(cache.scan(file, -999, 999, 'S', new Rows()));
+
+		// The scan that missed builds the sidecar again in the background
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		var rows = new Rows();
+		while (!cache.scan(file, 10, 10, 'S', rows)) {
+			assertTrue(System.nanoTime() < deadline, "the sidecar was not rebuilt");
+			Thread.sleep(10);
+		}
+		assertEquals("Sirmium=10", rows.rows.getLast());
+	}
+
+	@Test
+	void leavesAFileOverTheBudgetToItsFirstScan() throws Exception {
+		var small = new ColumnarCache(cacheDirectory, 1024);
+		Ingest ingest = ingest(small);
+		assertFalse(ingest.isComplete());
+		Thread.sleep(200);
+		assertFalse(Files.exists(cacheDirectory));
+	}
+
+	private Ingest ingest(ColumnarCache cache) throws IOException {
+		var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		Ingest ingest = cache.ingest();
+		var result = MeasurementScanner.scan(file, ReadScheduler.Priority.INGEST, 0, false, ingest::chunk);
+		cache.ingested(file, attributes, ingest, result.chunks());
+		return ingest;
+	}
+
+	private List<String> cacheScan(Query query) throws IOException {
+		var rows = new Rows();
+		assertTrue(cache.scan(file, query.min(), query.max(), query.letter(), rows), "no sidecar");
+		return rows.rows;
+	}
+
+	/// What a scan without a sidecar finds.
+	private List<String> textScan(Query query) throws IOException {
+		var matches = new ArrayList<String>();
+		for (Rows chunk : MeasurementScanner.scan(file, ReadScheduler.Priority.SCAN, Rows::new)) {
+			for (int i = 0; i < chunk.rows.size(); i++) {
+				int temperature = chunk.temperatures.get(i);
+				String row = chunk.rows.get(i);
+				if (row.charAt(0) == query.letter() && temperature >= query.min() && temperature <= query.max()) {
+					matches.add(row);
+				}
+			}
+		}
+		return matches;
+	}
+
+	private void awaitSidecarFile() throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (sidecarFiles().isEmpty()) {
+			assertTrue(System.nanoTime() < deadline, "no sidecar was written");
+			Thread.sleep(10);
+		}
+	}
+
+	private void deleteSidecarFiles() throws IOException {
+		for (Path sidecar : sidecarFiles()) {
+			Files.delete(sidecar);
+		}
+	}
+
+	private List<Path> sidecarFiles() throws IOException {
+		if (!Files.exists(cacheDirectory)) {
+			return List.of();
+		}
+		try (var files = Files.list(cacheDirectory)) {
+			return files
+					.filter(path -> !path
+							.toString()
+							.endsWith(".tmp"))
+					.toList();
+		}
+	}
+
+	private static void writeMeasurements(Path file, int rows) throws IOException {
+		var random = new SplittableRandom(rows);
+		try (var writer = Files.newBufferedWriter(file)) {
+			for (int i = 0; i < rows; i++) {
+				int tenths = random.nextInt(-999, 1000);
+				writer
+						.append(random.nextBoolean() ? "Station" : "Town")
+						.append(Integer.toString(random.nextInt(50)))
+						.append(';')
+						.append(tenths < 0 ? "-" : "")
+						.append(Integer.toString(Math.abs(tenths) / 10))
+						.append('.')
+						.append(Integer.toString(Math.abs(tenths) % 10))
+						.append('\n');
+			}
+		}
+	}
+
+	private record Query(char letter, int min, int max) {}
+
+	/// Keeps every row as `name=tenths`, in the order they were visited.
+	private static final class Rows implements RowVisitor {
+		private final List<String> rows = new ArrayList<>();
+		private final List<Integer> temperatures = new ArrayList<>();
+
+		@Override
+		public void visit(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+			byte[] name = data
+					.asSlice(nameOffset, nameLength)
+					.toArray(ValueLayout.JAVA_BYTE);
+			rows.add(new String(name, StandardCharsets.UTF_8) + "=" + temperature);
+			temperatures.add(temperature);
+		}
+	}
+}
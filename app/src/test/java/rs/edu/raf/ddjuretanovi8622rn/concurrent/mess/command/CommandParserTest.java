@@ -0,0 +1,31 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CommandParserTest {
+
+	@Test
+	void parsesScan() {
+		assertEquals(
+				new Command.Scan(-10, 10.5, 'A', "a.txt", "a", 3),
+				CommandParser.parseCommand("SCAN -m -10 -M 10.5 -l A -o a.txt -j a -p 3"));
+	}
+
+	@Test
+	void rejectsScanWithMinAboveMax() {
+		assertThrows(IllegalArgumentException.class, () -> CommandParser.parseCommand("SCAN -m 10 -M -10 -l A -o a.txt -j a"));
+	}
+
+	@Test
+	void rejectsScanWithoutNumbers() {
+		assertThrows(IllegalArgumentException.class, () -> CommandParser.parseCommand("SCAN -m NaN -M 10 -l A -o a.txt -j a"));
+	}
+
+	@Test
+	void rejectsScanWithLongerLetter() {
+		assertThrows(IllegalArgumentException.class, () -> CommandParser.parseCommand("SCAN -m 0 -M 10 -l AB -o a.txt -j a"));
+	}
+}
@@ -0,0 +1,75 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.AggregateData;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LetterAccumulatorTest {
+
+	private static final int WRITERS = 4;
+	private static final int DELTAS = 20_000;
+
+	@Test
+	void addsAndRetractsDeltas() {
+		var accumulator = new LetterAccumulator();
+		accumulator.add(counts('A', 2, 30, 'B', 1, -5));
+		accumulator.add(counts('A', -1, -10, 'C', 1, 0));
+		accumulator.add(counts('C', -1, 0));
+		assertEquals(
+				Map.of('A', new AggregateData(1, 2.0), 'B', new AggregateData(1, -0.5)),
+				accumulator.snapshot());
+	}
+
+	/// Every delta adds a row to both letters, or takes one away from both,
+	/// a snapshot that shows only part of a delta has different counts for them.
+	@Test
+	void snapshotsNeverShowHalfADelta() throws Exception {
+		var accumulator = new LetterAccumulator();
+		var writers = new ArrayList<Thread>();
+		for (int i = 0; i < WRITERS; i++) {
+			writers.add(Thread.ofPlatform().start(() -> {
+				for (int delta = 0; delta < DELTAS; delta++) {
+					int sign = delta % 3 == 2 ? -1 : 1;
+					accumulator.add(counts('A', sign, sign * 10L, 'B', sign, sign * 20L));
+				}
+			}));
+		}
+		int snapshots = 0;
+		while (writers
+				.stream()
+				.anyMatch(Thread::isAlive)) {
+			assertConsistent(accumulator.snapshot());
+			snapshots++;
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		Map<Character, AggregateData> last = accumulator.snapshot();
+		assertConsistent(last);
+		long rows = (long) WRITERS * (DELTAS - 2 * (DELTAS / 3));
+		assertEquals(rows, last
+				.get('A')
+				.count(), "after " + snapshots + " snapshots");
+	}
+
+	private static void assertConsistent(Map<Character, AggregateData> snapshot) {
+		AggregateData a = snapshot.getOrDefault('A', new AggregateData(0, 0));
+		AggregateData b = snapshot.getOrDefault('B', new AggregateData(0, 0));
+		assertEquals(a.count(), b.count());
+		assertEquals(2 * a.sum(), b.sum(), 1e-9);
+	}
+
+	private static LetterCounts counts(char letter, long count, long sum) {
+		var counts = new LetterCounts();
+		counts.add(letter, count, sum);
+		return counts;
+	}
+
+	private static LetterCounts counts(char first, long firstCount, long firstSum, char second, long secondCount, long secondSum) {
+		var counts = counts(first, firstCount, firstSum);
+		counts.add(second, secondCount, secondSum);
+		return counts;
+	}
+}
@@ -0,0 +1,125 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.directory.monitoring;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.MeasurementParser;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.StationTable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StationStatisticsTest {
+
+	@Test
+	void summarizesEveryFile() {
+		var statistics = new StationStatistics();
+		StationTable first = table("A;1.0\nB;-2.0\nA;2.5\n");
+		StationTable second = table("A;-0.5\nC;9.9\n");
+		statistics.add(first);
+		statistics.add(second);
+		assertEquals(
+				List.of(
+						new StationSummary("A", 3, -0.5, 1.0, 2.5),
+						new StationSummary("B", 1, -2.0, -2.0, -2.0),
+						new StationSummary("C", 1, 9.9, 9.9, 9.9)),
+				statistics.summaries(() -> List.of(first, second)));
+	}
+
+	@Test
+	void rebuildsMinMaxOfRetractedExtremes() {
+		var statistics = new StationStatistics();
+		StationTable extremes = table("A;-5.0\nA;10.0\nB;3.0\n");
+		StationTable rest = table("A;1.0\nA;2.0\nB;4.0\n");
+		statistics.add(extremes);
+		statistics.add(rest);
+		statistics.subtract(extremes);
+		assertEquals(
+				List.of(new StationSummary("A", 2, 1.0, 1.5, 2.0), new StationSummary("B", 1, 4.0, 4.0, 4.0)),
+				statistics.summaries(() -> List.of(rest)));
+	}
+
+	@Test
+	void keepsMinMaxWhenNoExtremeIsRetracted() {
+		var statistics = new StationStatistics();
+		StationTable extremes = table("A;-5.0\nA;10.0\n");
+		StationTable middle = table("A;1.0\n");
+		statistics.add(extremes);
+		statistics.add(middle);
+		statistics.subtract(middle);
+		assertEquals(List.of(new StationSummary("A", 2, -5.0, 2.5, 10.0)), statistics.summaries(() -> List.of(extremes)));
+	}
+
+	@Test
+	void dropsStationsWithoutRows() {
+		var statistics = new StationStatistics();
+		StationTable gone = table("A;1.0\nB;2.0\n");
+		StationTable kept = table("B;3.0\n");
+		statistics.add(gone);
+		statistics.add(kept);
+		statistics.subtract(gone);
+		assertEquals(List.of(new StationSummary("B", 1, 3.0, 3.0, 3.0)), statistics.summaries(() -> List.of(kept)));
+	}
+
+	/// Files come and go in random order, the summaries always have to match a recount of the files that are left.
+	@Test
+	void matchesRecountAfterEveryChange() {
+		var random = new SplittableRandom(5);
+		var statistics = new StationStatistics();
+		var files = new ArrayList<StationTable>();
+		for (int change = 0; change < 500; change++) {
+			if (files.isEmpty() || random.nextInt(3) > 0) {
+				StationTable file = table(randomRows(random));
+				statistics.update(List.of(file), List.of(), () -> files.add(file));
+			} else {
+				StationTable file = files.get(random.nextInt(files.size()));
+				statistics.update(List.of(), List.of(file), () -> files.remove(file));
+			}
+			if (change % 7 == 0) {
+				assertEquals(recount(files), statistics.summaries(() -> files), "after change " + change);
+			}
+		}
+	}
+
+	private static String randomRows(SplittableRandom random) {
+		var text = new StringBuilder();
+		for (int row = random.nextInt(1, 20); row > 0; row--) {
+			int tenths = random.nextInt(-300, 300);
+			text
+					.append((char) ('A' + random.nextInt(6)))
+					.append(';')
+					.append(tenths < 0 ? "-" : "")
+					.append(Math.abs(tenths) / 10)
+					.append('.')
+					.append(Math.abs(tenths) % 10)
+					.append('\n');
+		}
+		return text.toString();
+	}
+
+	private static List<StationSummary> recount(List<StationTable> files) {
+		var all = new StationTable();
+		for (StationTable file : files) {
+			all.addAll(file);
+		}
+		var summaries = new ArrayList<StationSummary>();
+		for (int e = 0; e < all.size(); e++) {
+			long count = all.count(e);
+			if (count > 0) {
+				summaries.add(new StationSummary(
+						all.name(e),
+						count,
+						all.min(e) / 10.0,
+						Math.round((double) all.sum(e) / count) / 10.0,
+						all.max(e) / 10.0));
+			}
+		}
+		summaries.sort(Comparator.comparing(StationSummary::name));
+		return summaries;
+	}
+
+	private static StationTable table(String rows) {
+		var table = new StationTable();
+		MemorySegment data = MemorySegment.ofArray(rows.getBytes(StandardCharsets.UTF_8));
+		MeasurementParser.parseLines(data, 0, data.byteSize(), (byte) ';', true, table);
+		return table;
+	}
+}
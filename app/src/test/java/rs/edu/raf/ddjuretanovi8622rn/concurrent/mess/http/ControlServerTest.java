@@ -0,0 +1,41 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ControlServerTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	void readsScan() throws Exception {
+		assertEquals(
+				new Command.Scan(-10, 10.5, 'A', "a.txt", "a", 3),
+				ControlServer.toCommand(json("""
+						{"type": "SCAN", "min": -10, "max": 10.5, "letter": "A", "output": "a.txt", "job": "a", "priority": 3}""")));
+	}
+
+	/// The same checks as a SCAN typed into the CLI, see `CommandParserTest`.
+	@Test
+	void rejectsScanWithMinAboveMax() throws Exception {
+		JsonNode scan = json("""
+				{"type": "SCAN", "min": 10, "max": -10, "letter": "A", "output": "a.txt", "job": "a"}""");
+		assertThrows(IllegalArgumentException.class, () -> ControlServer.toCommand(scan));
+	}
+
+	@Test
+	void rejectsScanWithLongerLetter() throws Exception {
+		JsonNode scan = json("""
+				{"type": "SCAN", "min": 0, "max": 10, "letter": "AB", "output": "a.txt", "job": "a"}""");
+		assertThrows(IllegalArgumentException.class, () -> ControlServer.toCommand(scan));
+	}
+
+	private JsonNode json(String text) throws Exception {
+		return mapper.readTree(text);
+	}
+}
@@ -0,0 +1,148 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControllerTest {
+
+	private final List<AdmissionController.Admitted> started = new ArrayList<>();
+
+	@Test
+	void startsByPriorityThenInSubmitOrder() {
+		var controller = new AdmissionController(1, Long.MAX_VALUE, Integer.MAX_VALUE, started::add);
+		Job running = job("running");
+		controller.submit(running, 0, memory(0));
+		Job low = job("low");
+		Job first = job("first");
+		Job second = job("second");
+		controller.submit(low, 0, memory(0));
+		controller.submit(first, 5, memory(0));
+		controller.submit(second, 5, memory(0));
+
+		assertEquals(OptionalInt.of(1), controller.position(first));
+		assertEquals(OptionalInt.of(2), controller.position(second));
+		assertEquals(OptionalInt.of(3), controller.position(low));
+		assertEquals(OptionalInt.empty(), controller.position(running));
+
+		finishAll(controller);
+		assertEquals(List.of(running, first, second, low), jobs());
+	}
+
+	@Test
+	void runsAtMostMaxRunningJobs() {
+		var controller = new AdmissionController(2, Long.MAX_VALUE, Integer.MAX_VALUE, started::add);
+		for (int i = 0; i < 5; i++) {
+			controller.submit(job("job" + i), 0, memory(0));
+		}
+		assertEquals(2, started.size());
+
+		controller.finished(started.getFirst());
+		assertEquals(3, started.size());
+	}
+
+	@Test
+	void keepsReservedMemoryWithinTheBudget() {
+		var controller = new AdmissionController(10, 100, Integer.MAX_VALUE, started::add);
+		controller.submit(job("a"), 0, memory(60));
+		controller.submit(job("b"), 0, memory(30));
+		controller.submit(job("c"), 0, memory(20));
+		assertEquals(2, started.size());
+
+		controller.finished(started.get(1));
+		assertEquals(3, started.size());
+		assertEquals("c", started.getLast().job().getJobInfo().jobName());
+	}
+
+	@Test
+	void blocksSmallerJobsBehindOneThatDoesNotFit() {
+		var controller = new AdmissionController(10, 100, Integer.MAX_VALUE, started::add);
+		controller.submit(job("a"), 0, memory(60));
+		Job big = job("big");
+		controller.submit(big, 0, memory(50));
+		controller.submit(job("small"), 0, memory(10));
+		assertEquals(1, started.size());
+
+		controller.finished(started.getFirst());
+		assertEquals(List.of("a", "big", "small"), names());
+	}
+
+	@Test
+	void runsAJobBiggerThanTheBudgetAlone() {
+		var controller = new AdmissionController(10, 100, Integer.MAX_VALUE, started::add);
+		controller.submit(job("huge"), 0, memory(500));
+		controller.submit(job("small"), 0, memory(1));
+		assertEquals(List.of("huge"), names());
+
+		controller.finished(started.getFirst());
+		assertEquals(List.of("huge", "small"), names());
+	}
+
+	@Test
+	void keepsFilesReadAtOnceWithinTheBudget() {
+		var controller = new AdmissionController(10, Long.MAX_VALUE, 4, started::add);
+		controller.submit(job("a"), 0, files(3));
+		controller.submit(job("b"), 0, files(2));
+		assertEquals(List.of("a"), names());
+
+		controller.finished(started.getFirst());
+		assertEquals(List.of("a", "b"), names());
+	}
+
+	@Test
+	void runsAJobReadingMoreFilesThanTheBudgetAlone() {
+		var controller = new AdmissionController(10, Long.MAX_VALUE, 4, started::add);
+		controller.submit(job("wide"), 0, files(8));
+		controller.submit(job("narrow"), 0, files(1));
+		assertEquals(List.of("wide"), names());
+
+		controller.finished(started.getFirst());
+		assertEquals(List.of("wide", "narrow"), names());
+	}
+
+	@Test
+	void admitsNothingAfterClose() {
+		var controller = new AdmissionController(1, Long.MAX_VALUE, Integer.MAX_VALUE, started::add);
+		controller.submit(job("a"), 0, memory(0));
+		Job waiting = job("b");
+		controller.submit(waiting, 0, memory(0));
+		controller.close();
+
+		controller.finished(started.getFirst());
+		controller.submit(job("c"), 0, memory(0));
+		assertEquals(List.of("a"), names());
+		assertTrue(controller.position(waiting).isPresent());
+	}
+
+	private void finishAll(AdmissionController controller) {
+		for (int i = 0; i < started.size(); i++) {
+			controller.finished(started.get(i));
+		}
+	}
+
+	private List<Job> jobs() {
+		return started.stream()
+				.map(AdmissionController.Admitted::job)
+				.toList();
+	}
+
+	private List<String> names() {
+		return jobs().stream()
+				.map(job -> job.getJobInfo().jobName())
+				.toList();
+	}
+
+	private static AdmissionController.Reservation memory(long bytes) {
+		return new AdmissionController.Reservation(bytes, 1);
+	}
+
+	private static AdmissionController.Reservation files(int files) {
+		return new AdmissionController.Reservation(0, files);
+	}
+
+	private static Job job(String name) {
+		return new Job(name, null, List.of(), null, null, 1, null, null);
+	}
+}
@@ -0,0 +1,198 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobJournalTest {
+
+	@TempDir
+	Path directory;
+	private Path journalFile;
+	private JobJournal journal;
+	private List<Path> files;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		journalFile = directory.resolve("jobs.journal");
+		journal = new JobJournal(journalFile);
+		files = List.of(
+				Files.writeString(directory.resolve("a.txt"), "Alpha;1.0\nAlpha;2.0\n"),
+				Files.writeString(directory.resolve("b.txt"), "Beta;3.0\n"));
+	}
+
+	@Test
+	void compactsToWhatResumeNeeds() throws IOException {
+		journal.started("first", scan("first"), files);
+		journal.started("second", scan("second"), files);
+		journal.started("third", scan("third"), files);
+		journal.checkpoints("first", List.of(
+				new JobJournal.Checkpoint(0, 10, false, 8),
+				new JobJournal.Checkpoint(1, 9, true, 16)));
+		journal.checkpoints("first", List.of(new JobJournal.Checkpoint(0, 20, true, 24)));
+		journal.checkpoints("second", List.of(new JobJournal.Checkpoint(0, 10, false, 8)));
+		journal.finished("second");
+
+		List<JobJournal.Progress> unfinished = journal.load();
+		assertEquals(List.of("first", "third"), unfinished
+				.stream()
+				.map(JobJournal.Progress::jobName)
+				.toList());
+		assertProgress(unfinished.getFirst(), new long[] {20, 9}, new boolean[] {true, true}, 24);
+		assertProgress(unfinished.getLast(), new long[] {0, 0}, new boolean[] {false, false}, 0);
+		// A started line for both jobs and a checkpoint for every file the first one got somewhere with
+		assertEquals(4, Files
+				.readAllLines(journalFile)
+				.size());
+
+		List<JobJournal.Progress> reloaded = journal.load();
+		assertEquals(2, reloaded.size());
+		assertProgress(reloaded.getFirst(), new long[] {20, 9}, new boolean[] {true, true}, 24);
+		assertEquals(scan("first"), reloaded
+				.getFirst()
+				.scan());
+		assertEquals(files, reloaded
+				.getFirst()
+				.files());
+		assertTrue(reloaded
+				           .getFirst()
+				           .filesUnchanged());
+	}
+
+	@Test
+	void ignoresLineCutOffByCrash() throws IOException {
+		journal.started("job", scan("job"), files);
+		journal.checkpoints("job", List.of(new JobJournal.Checkpoint(0, 10, false, 8)));
+		journal.checkpoints("job", List.of(new JobJournal.Checkpoint(0, 20, true, 16)));
+		byte[] whole = Files.readAllBytes(journalFile);
+		// Everything up to the last line, and only half of that
+		int lastLine = lastLineStart(whole);
+		Files.write(journalFile, Arrays.copyOf(whole, lastLine + (whole.length - lastLine) / 2));
+
+		List<JobJournal.Progress> unfinished = journal.load();
+		assertEquals(1, unfinished.size());
+		assertProgress(unfinished.getFirst(), new long[] {10, 0}, new boolean[] {false, false}, 8);
+
+		// The damaged line is gone, what's appended next is read back
+		journal.checkpoints("job", List.of(new JobJournal.Checkpoint(1, 9, true, 17)));
+		assertProgress(journal
+				               .load()
+				               .getFirst(), new long[] {10, 9}, new boolean[] {false, true}, 17);
+	}
+
+	@Test
+	void noticesChangedFiles() throws IOException {
+		journal.started("job", scan("job"), files);
+		Files.writeString(files.getLast(), "Beta;4.0\n", StandardOpenOption.APPEND);
+		assertFalse(journal
+				            .load()
+				            .getFirst()
+				            .filesUnchanged());
+	}
+
+	/// Crashes the job after every line it journaled in turn: the output is left with everything the job wrote,
+	/// the journal only with the lines up to the crash. Resuming has to end with exactly the rows of a run
+	/// that never crashed. The gzipped file's rows are written without a position to continue from,
+	/// so the plain file's checkpoints can only be journaled where none of them are in the output.
+	@Test
+	void resumesWithoutDuplicateRows() throws Exception {
+		List<Path> inputs = List.of(directory.resolve("measurements.txt"), directory.resolve("measurements.txt.gz"));
+		try (var out = Files.newOutputStream(inputs.getFirst())) {
+			writeMeasurements(out, 1);
+		}
+		try (var out = new GZIPOutputStream(Files.newOutputStream(inputs.getLast()))) {
+			writeMeasurements(out, 2);
+		}
+		Path output = directory.resolve("out.txt");
+		var scan = new Command.Scan(-50, 50, 'S', output.toString(), "job");
+		journal.started("job", scan, inputs);
+		run(scan, inputs, null);
+		byte[] written = Files.readAllBytes(output);
+		List<String> expected = sortedLines(output);
+		List<String> lines = Files.readAllLines(journalFile);
+		assertTrue(lines.size() > 2, "nothing was journaled");
+		assertFalse(expected.isEmpty());
+
+		for (int kept = 1; kept <= lines.size(); kept++) {
+			Files.write(journalFile, lines.subList(0, kept));
+			Files.write(output, written);
+			JobJournal.Progress progress = journal
+					.load()
+					.getFirst();
+			assertTrue(progress.filesUnchanged());
+			try (var channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+				channel.truncate(progress.outputLength());
+			}
+			run(scan, inputs, progress);
+			assertEquals(expected, sortedLines(output), "crashed after journal line " + kept);
+		}
+	}
+
+	private void run(Command.Scan scan, List<Path> inputs, JobJournal.Progress resumeFrom) throws Exception {
+		var job = new Job(
+				scan.jobName(),
+				scan,
+				inputs,
+				null,
+				new SharedScanCoordinator(Duration.ZERO),
+				inputs.size(),
+				journal,
+				resumeFrom);
+		job.start();
+	}
+
+	private static List<String> sortedLines(Path file) throws IOException {
+		return Files
+				.readAllLines(file)
+				.stream()
+				.sorted()
+				.toList();
+	}
+
+	/// A few megabytes, so the file is parsed in several chunks that are written one by one.
+	private static void writeMeasurements(OutputStream out, long seed) throws IOException {
+		var random = new SplittableRandom(seed);
+		var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		for (int i = 0; i < 300_000; i++) {
+			int tenths = random.nextInt(-999, 1000);
+			writer
+					.append(random.nextBoolean() ? "Station" : "Town")
+					.append(Integer.toString(random.nextInt(100)))
+					.append(';')
+					.append(tenths < 0 ? "-" : "")
+					.append(Integer.toString(Math.abs(tenths) / 10))
+					.append('.')
+					.append(Integer.toString(Math.abs(tenths) % 10))
+					.append('\n');
+		}
+		writer.flush();
+	}
+
+	private static int lastLineStart(byte[] bytes) {
+		int at = bytes.length - 1;
+		while (at > 0 && bytes[at - 1] != '\n') {
+			at--;
+		}
+		return at;
+	}
+
+	private Command.Scan scan(String jobName) {
+		return new Command.Scan(-10, 10, 'A', directory
+				.resolve(jobName + ".txt")
+				.toString(), jobName);
+	}
+
+	private static void assertProgress(JobJournal.Progress progress, long[] offsets, boolean[] done, long outputLength) {
+		for (int i = 0; i < offsets.length; i++) {
+			assertEquals(offsets[i], progress.offset(i), "offset of file " + i);
+			assertEquals(done[i], progress.isDone(i), "file " + i + " done");
+		}
+		assertEquals(outputLength, progress.outputLength());
+	}
+}
@@ -0,0 +1,148 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JobOutputTest {
+
+	private static final int PRODUCERS = 4;
+	private static final int BATCHES = 500;
+
+	@TempDir
+	Path directory;
+
+	/// Batches of different producers may come in any order, but each is written whole,
+	/// and the batches of one producer are written in the order it handed them over.
+	@Test
+	void writesBatchesWholeAndInOrder() throws Exception {
+		Path file = directory.resolve("out.txt");
+		try (var output = new JobOutput(file, "job", new JobProgress(List.of()), null)) {
+			try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+				for (int producer = 0; producer < PRODUCERS; producer++) {
+					int p = producer;
+					executor.submit(() -> {
+						for (int batch = 0; batch < BATCHES; batch++) {
+							output.write(p, List.of(row(p, batch, 'a'), row(p, batch, 'b'), row(p, batch, 'c')), 3, null);
+						}
+						return null;
+					});
+				}
+			}
+		}
+		List<String> lines = Files.readAllLines(file);
+		assertEquals(PRODUCERS * BATCHES * 3, lines.size());
+		int[] next = new int[PRODUCERS];
+		for (int i = 0; i < lines.size(); i += 3) {
+			String[] row = lines
+					.get(i)
+					.split(":");
+			int producer = Integer.parseInt(row[0]);
+			int batch = Integer.parseInt(row[1]);
+			assertEquals(next[producer]++, batch, "batch of producer " + producer);
+			assertEquals(List.of(producer + ":" + batch + ":a", producer + ":" + batch + ":b", producer + ":" + batch + ":c"),
+			             lines.subList(i, i + 3));
+		}
+	}
+
+	/// More buffers than a single gathering write takes.
+	@Test
+	void writesBigBatches() throws Exception {
+		Path file = directory.resolve("out.txt");
+		var batch = new ArrayList<ByteBuffer>();
+		var expected = new ArrayList<String>();
+		for (int i = 0; i < 3000; i++) {
+			batch.add(row(0, i, 'x'));
+			expected.add("0:" + i + ":x");
+		}
+		try (var output = new JobOutput(file, "job", new JobProgress(List.of()), null)) {
+			output.write(0, batch, batch.size(), null);
+			output.write(0, List.of(), 0, null);
+		}
+		assertEquals(expected, Files.readAllLines(file));
+	}
+
+	/// Rows are named after their file and the offset the file continues from after them. Whichever journal line
+	/// a crash comes after, the output it says is complete has to hold exactly the rows before every file's offset.
+	/// Journaling the checkpoint of `0:20` alone would leave `1:15` in the output without a position after it.
+	@Test
+	void journalsOnlyWhereNoFileIsHalfWritten() throws Exception {
+		List<Path> files = List.of(directory.resolve("a.txt"), directory.resolve("b.txt"));
+		for (Path input : files) {
+			Files.writeString(input, "");
+		}
+		Path journalFile = directory.resolve("jobs.journal");
+		var journal = new JobJournal(journalFile);
+		Path file = directory.resolve("out.txt");
+		journal.started("job", new Command.Scan(-10, 10, 'A', file.toString(), "job"), files);
+		var progress = new JobProgress(files);
+		progress.started();
+		try (var output = new JobOutput(file, "job", progress, journal)) {
+			write(output, progress, 0, 10, true);
+			// The second file's rows can't be resumed from until its checkpoint comes
+			write(output, progress, 1, 15, false);
+			write(output, progress, 0, 20, true);
+			write(output, progress, 1, 30, true);
+			write(output, progress, 1, 45, false);
+		}
+		List<String> rows = Files.readAllLines(file);
+		assertEquals(List.of("0:10", "1:15", "0:20", "1:30", "1:45"), rows);
+		List<String> lines = Files.readAllLines(journalFile);
+		for (int kept = 1; kept <= lines.size(); kept++) {
+			Files.write(journalFile, lines.subList(0, kept));
+			JobJournal.Progress resumed = journal
+					.load()
+					.getFirst();
+			var complete = new ArrayList<String>();
+			int length = 0;
+			for (String row : rows) {
+				if (length + row.length() + 1 > resumed.outputLength()) {
+					break;
+				}
+				complete.add(row);
+				length += row.length() + 1;
+			}
+			assertEquals(resumed.outputLength(), length, "crashed after journal line " + kept);
+			var expected = new ArrayList<String>();
+			for (String row : rows) {
+				int input = Integer.parseInt(row.substring(0, 1));
+				if (Long.parseLong(row.substring(2)) <= resumed.offset(input)) {
+					expected.add(row);
+				}
+			}
+			assertEquals(expected, complete, "crashed after journal line " + kept);
+		}
+		JobJournal.Progress last = journal
+				.load()
+				.getFirst();
+		assertEquals(20, last.offset(0));
+		assertEquals(30, last.offset(1));
+		assertEquals("0:10\n1:15\n0:20\n1:30\n".length(), last.outputLength());
+	}
+
+	/// Writes the row `file:offset` and waits until it's on disk, so every row is written on its own.
+	private static void write(JobOutput output, JobProgress progress, int file, long offset, boolean checkpoint) throws Exception {
+		long written = progress
+				.snapshot()
+				.orElseThrow()
+				.rowsWritten();
+		output.write(
+				file,
+				List.of(ByteBuffer.wrap((file + ":" + offset + "\n").getBytes(StandardCharsets.US_ASCII))),
+				1,
+				checkpoint ? new JobJournal.Checkpoint(file, offset, false, 0) : null);
+		while (progress
+				       .snapshot()
+				       .orElseThrow()
+				       .rowsWritten() == written) {
+			Thread.sleep(1);
+		}
+	}
+
+	private static ByteBuffer row(int producer, int batch, char part) {
+		return ByteBuffer.wrap((producer + ":" + batch + ":" + part + "\n").getBytes(StandardCharsets.US_ASCII));
+	}
+}
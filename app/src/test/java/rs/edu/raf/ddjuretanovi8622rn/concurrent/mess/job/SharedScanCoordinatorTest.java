@@ -0,0 +1,102 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.job;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing.RowVisitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SharedScanCoordinatorTest {
+
+	private static final Duration WINDOW = Duration.ofMillis(300);
+
+	@TempDir
+	Path directory;
+
+	/// Scans that arrive within the window share a pass, and every one of them only gets the rows of its letter.
+	@Test
+	void routesRowsOfASharedPassByFirstByte() throws Exception {
+		Path file = Files.writeString(directory.resolve("a.txt"), "Alpha;1.0\nBeta;2.0\nAmber;-3.0\nCity;4.0\nBerg;5.0\n");
+		var coordinator = new SharedScanCoordinator(WINDOW);
+		var segments = segments();
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			var a = executor.submit(() -> scan(coordinator, file, 'A', segments));
+			var b = executor.submit(() -> scan(coordinator, file, 'B', segments));
+			var otherA = executor.submit(() -> scan(coordinator, file, 'A', segments));
+			var d = executor.submit(() -> scan(coordinator, file, 'D', segments));
+			assertEquals(List.of("Alpha=10", "Amber=-30"), a.get());
+			assertEquals(List.of("Beta=20", "Berg=50"), b.get());
+			assertEquals(List.of("Alpha=10", "Amber=-30"), otherA.get());
+			assertEquals(List.of(), d.get());
+		}
+		// The file was mapped once for all of them
+		assertEquals(1, segments.size());
+	}
+
+	/// A scan that comes after a pass is done gets a pass of its own, which sees what was appended in the meantime.
+	@Test
+	void startsANewPassForLaterScans() throws Exception {
+		Path file = Files.writeString(directory.resolve("a.txt"), "Alpha;1.0\n");
+		var coordinator = new SharedScanCoordinator(Duration.ZERO);
+		var first = segments();
+		assertEquals(List.of("Alpha=10"), scan(coordinator, file, 'A', first));
+		Files.writeString(file, "Apex;2.0\n", StandardOpenOption.APPEND);
+		var second = segments();
+		assertEquals(List.of("Alpha=10", "Apex=20"), scan(coordinator, file, 'A', second));
+		assertEquals(1, second.size());
+		assertFalse(first.containsAll(second));
+	}
+
+	@Test
+	void failsEveryScanOfAPassThatFails() throws Exception {
+		Path missing = directory.resolve("missing.txt");
+		var coordinator = new SharedScanCoordinator(WINDOW);
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			var a = executor.submit(() -> scan(coordinator, missing, 'A', segments()));
+			var b = executor.submit(() -> scan(coordinator, missing, 'B', segments()));
+			for (var scan : List.of(a, b)) {
+				var failure = assertThrows(ExecutionException.class, scan::get);
+				assertInstanceOf(IOException.class, failure.getCause());
+			}
+		}
+	}
+
+	/// @param segments collects the mapped files the rows were read from
+	/// @return the rows of `letter`, in file order
+	private static List<String> scan(SharedScanCoordinator coordinator, Path file, char letter, Set<MemorySegment> segments)
+			throws IOException, InterruptedException {
+		var result = coordinator.scan(file, 0, Long.MAX_VALUE, (byte) letter, () -> new Rows(segments), (_, _, _) -> {}, (_, _) -> {});
+		var rows = new ArrayList<String>();
+		for (Rows chunk : result.chunks()) {
+			rows.addAll(chunk.rows);
+		}
+		return rows;
+	}
+
+	/// A set of segments by identity, two mappings of the same file could be equal
+	private static Set<MemorySegment> segments() {
+		return Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+	}
+
+	private static final class Rows implements RowVisitor {
+		private final List<String> rows = new ArrayList<>();
+		private final Set<MemorySegment> segments;
+
+		private Rows(Set<MemorySegment> segments) {
+			this.segments = segments;
+		}
+
+		@Override
+		public void visit(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+			segments.add(data);
+			byte[] name = data
+					.asSlice(nameOffset, nameLength)
+					.toArray(ValueLayout.JAVA_BYTE);
+			rows.add(new String(name, StandardCharsets.UTF_8) + "=" + temperature);
+		}
+	}
+}
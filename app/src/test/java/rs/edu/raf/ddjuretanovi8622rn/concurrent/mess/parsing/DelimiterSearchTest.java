@@ -0,0 +1,126 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/// Cases every [DelimiterSearch] has to pass, around the edges of the 8 byte words of the SWAR search
+/// and the 32 byte vectors of the vector search.
+abstract class DelimiterSearchTest {
+
+	private static final int LENGTH = 64;
+
+	abstract DelimiterSearch search();
+
+	@ParameterizedTest
+	@ValueSource(ints = {0, 1, 7, 8, 9, 15, 16, 31, 32, 33, 63})
+	void findsSeparator(int position) {
+		byte[] bytes = filled('x');
+		bytes[position] = ';';
+		MemorySegment data = MemorySegment.ofArray(bytes);
+		for (int from = 0; from <= Math.min(position, 9); from++) {
+			assertEquals(position, search().findDelimiter(data, from, LENGTH, (byte) ';'), "from " + from);
+			assertEquals(LENGTH, search().findNewline(data, from, LENGTH), "from " + from);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {0, 1, 7, 8, 9, 15, 16, 31, 32, 33, 63})
+	void findsNewline(int position) {
+		byte[] bytes = filled('x');
+		bytes[position] = '\n';
+		MemorySegment data = MemorySegment.ofArray(bytes);
+		for (int from = 0; from <= Math.min(position, 9); from++) {
+			assertEquals(position, search().findDelimiter(data, from, LENGTH, (byte) ';'), "from " + from);
+			assertEquals(position, search().findNewline(data, from, LENGTH), "from " + from);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 7, 8, 9, 31, 32, 33})
+	void stopsAtTo(int to) {
+		byte[] bytes = filled('x');
+		bytes[to] = ';';
+		bytes[to + 1] = '\n';
+		MemorySegment data = MemorySegment.ofArray(bytes);
+		assertEquals(to, search().findDelimiter(data, 0, to, (byte) ';'));
+		assertEquals(to, search().findNewline(data, 0, to));
+		assertEquals(to, search().findDelimiter(data, to, to, (byte) ';'));
+	}
+
+	@Test
+	void findsNothingInPlainBytes() {
+		MemorySegment data = MemorySegment.ofArray(filled('x'));
+		assertEquals(LENGTH, search().findDelimiter(data, 0, LENGTH, (byte) ';'));
+		assertEquals(LENGTH, search().findNewline(data, 0, LENGTH));
+	}
+
+	@Test
+	void findsNewlinePastSeparators() {
+		byte[] bytes = filled('x');
+		bytes[3] = ';';
+		bytes[8] = ';';
+		bytes[31] = '\n';
+		MemorySegment data = MemorySegment.ofArray(bytes);
+		assertEquals(3, search().findDelimiter(data, 0, LENGTH, (byte) ';'));
+		assertEquals(31, search().findNewline(data, 0, LENGTH));
+	}
+
+	/// Bytes one bit away from a delimiter, or with the high bit set, are where a SWAR match goes wrong.
+	@Test
+	void ignoresBytesCloseToDelimiters() {
+		for (byte close : new byte[]{':', 0x0B, (byte) 0xBB, (byte) 0x8A}) {
+			byte[] bytes = filled(close);
+			MemorySegment data = MemorySegment.ofArray(bytes);
+			assertEquals(LENGTH, search().findDelimiter(data, 0, LENGTH, (byte) ';'), "filled with " + close);
+			assertEquals(LENGTH, search().findNewline(data, 0, LENGTH), "filled with " + close);
+			bytes[31] = ';';
+			bytes[32] = '\n';
+			assertEquals(31, search().findDelimiter(data, 0, LENGTH, (byte) ';'), "filled with " + close);
+			assertEquals(32, search().findNewline(data, 0, LENGTH), "filled with " + close);
+		}
+	}
+
+	@Test
+	void walksLinesShorterThanAWord() {
+		byte[] bytes = "a;1\nb;2\nc\n".getBytes(StandardCharsets.US_ASCII);
+		MemorySegment data = MemorySegment.ofArray(bytes);
+		var delimiters = new ArrayList<Long>();
+		for (long pos = search().findDelimiter(data, 0, bytes.length, (byte) ';'); pos < bytes.length;
+		     pos = search().findDelimiter(data, pos + 1, bytes.length, (byte) ';')) {
+			delimiters.add(pos);
+		}
+		assertEquals(List.of(1L, 3L, 5L, 7L, 9L), delimiters);
+		var newlines = new ArrayList<Long>();
+		for (long pos = search().findNewline(data, 0, bytes.length); pos < bytes.length;
+		     pos = search().findNewline(data, pos + 1, bytes.length)) {
+			newlines.add(pos);
+		}
+		assertEquals(List.of(3L, 7L, 9L), newlines);
+	}
+
+	@Test
+	void searchesSegmentsShorterThanAWord() {
+		for (int length = 1; length < 8; length++) {
+			byte[] bytes = new byte[length];
+			Arrays.fill(bytes, (byte) 'x');
+			bytes[length - 1] = '\n';
+			MemorySegment data = MemorySegment.ofArray(bytes);
+			assertEquals(length - 1, search().findDelimiter(data, 0, length, (byte) ';'), "length " + length);
+			assertEquals(length - 1, search().findNewline(data, 0, length), "length " + length);
+		}
+	}
+
+	private static byte[] filled(byte b) {
+		byte[] bytes = new byte[LENGTH];
+		Arrays.fill(bytes, b);
+		return bytes;
+	}
+
+	private static byte[] filled(char c) {
+		return filled((byte) c);
+	}
+}
@@ -0,0 +1,255 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GzipScannerTest {
+
+	private static final int ROWS = 20_000;
+	/// Enough rows for more than [GzipScanner#INFLATE_GRAIN] bytes after a limit
+	private static final int MANY_ROWS = 250_000;
+	private static final int MEMBER_SIZE = 4096;
+	private static final byte[] BGZF_HEADER = {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0};
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void readsBgzfAndPlainMembersTheSame() throws IOException {
+		byte[] rows = rows();
+		List<String> expected = expected();
+		assertEquals(expected, scan(write("bgzf.txt.gz", bgzf(rows, rows.length)), 0, Long.MAX_VALUE).rows());
+		// Members that end in the middle of a line carry it over to the next one
+		assertEquals(expected, scan(write("bgzf-split.txt.gz", bgzf(rows, 0)), 0, Long.MAX_VALUE).rows());
+		assertEquals(expected, scan(write("plain.txt.gz", gzip(rows, MEMBER_SIZE)), 0, Long.MAX_VALUE).rows());
+		assertEquals(expected, scan(write("single.txt.gz", gzip(rows, rows.length)), 0, Long.MAX_VALUE).rows());
+	}
+
+	@Test
+	void resumesBgzfFromWhereAScanStopped() throws IOException {
+		byte[] rows = rows();
+		byte[] compressed = bgzf(rows, rows.length);
+		assertResumes(write("bgzf.txt.gz", compressed), compressed.length);
+	}
+
+	@Test
+	void resumesPlainMembersFromWhereAScanStopped() throws IOException {
+		byte[] compressed = gzip(rows(), MEMBER_SIZE);
+		assertResumes(write("plain.txt.gz", compressed), compressed.length);
+	}
+
+	/// Every position a chunk says its file continues at has to be where the rows after that chunk start.
+	/// Only the first tenth of the members end at a line end, so most windows end with a line carried over.
+	@Test
+	void continuesFromEveryChunkPosition() throws IOException {
+		byte[] many = rows(MANY_ROWS);
+		byte[] compressed = bgzf(many, many.length / 10);
+		Path file = write("bgzf.txt.gz", compressed);
+		List<String> expected = expected(MANY_ROWS);
+		var positions = new LinkedHashMap<Long, Integer>();
+		int rows = 0;
+		for (long from = 0; from < compressed.length; ) {
+			var scanned = scan(file, from, from + compressed.length / 40);
+			for (var position : scanned.positions().entrySet()) {
+				positions.put(position.getKey(), rows + position.getValue());
+			}
+			rows += scanned.rows().size();
+			from = scanned.end();
+		}
+		assertTrue(positions.size() > 1);
+		for (var position : positions.entrySet()) {
+			assertEquals(
+					expected.subList(position.getValue(), expected.size()),
+					scan(file, position.getKey(), Long.MAX_VALUE).rows(),
+					"from " + position.getKey());
+		}
+	}
+
+	@Test
+	void leavesPartlyWrittenBgzfMemberForTheNextScan() throws IOException {
+		byte[] rows = rows();
+		byte[] compressed = bgzf(rows, rows.length);
+		List<Long> starts = memberStarts(compressed);
+		long lastStart = starts.getLast();
+		for (long cut : new long[] {lastStart + 5, lastStart + BGZF_HEADER.length + 4, compressed.length - 1}) {
+			Path file = write("partial.txt.gz", Arrays.copyOf(compressed, (int) cut));
+			var first = scan(file, 0, Long.MAX_VALUE);
+			assertEquals(lastStart, first.end(), "cut at " + cut);
+
+			Files.write(file, Arrays.copyOfRange(compressed, (int) cut, compressed.length), StandardOpenOption.APPEND);
+			var rest = scan(file, first.end(), Long.MAX_VALUE);
+			var all = new ArrayList<>(first.rows());
+			all.addAll(rest.rows());
+			assertEquals(expected(), all, "cut at " + cut);
+			assertEquals(compressed.length, rest.end());
+		}
+	}
+
+	@Test
+	void failsOnPartlyWrittenPlainMember() throws IOException {
+		byte[] compressed = gzip(rows(), MEMBER_SIZE);
+		Path file = write("partial.txt.gz", Arrays.copyOf(compressed, compressed.length - 3));
+		assertThrows(IOException.class, () -> scan(file, 0, Long.MAX_VALUE));
+	}
+
+	/// Scans `file` in pieces of a fifth of it, every scan starts where the one before it stopped.
+	private void assertResumes(Path file, long size) throws IOException {
+		var all = new ArrayList<String>();
+		long from = 0;
+		int scans = 0;
+		while (from < size) {
+			var scanned = scan(file, from, from + size / 5);
+			assertTrue(scanned.end() > from, "no progress from " + from);
+			all.addAll(scanned.rows());
+			from = scanned.end();
+			scans++;
+		}
+		assertTrue(scans > 1);
+		assertEquals(expected(), all);
+	}
+
+	/// @param rows      every row of the scan in file order
+	/// @param positions every position `inOrder` got, with how many rows came before it
+	private record Scanned(List<String> rows, long end, Map<Long, Integer> positions) {}
+
+	private static Scanned scan(Path file, long from, long limit) throws IOException {
+		var rows = new ArrayList<String>();
+		var positions = new LinkedHashMap<Long, Integer>();
+		var result = MeasurementScanner.scan(
+				file,
+				ReadScheduler.Priority.SCAN,
+				from,
+				limit,
+				true,
+				Rows::new,
+				(_, _) -> {},
+				(chunk, next) -> {
+					rows.addAll(chunk.rows);
+					if (next >= 0) {
+						positions.put(next, rows.size());
+					}
+				});
+		var collected = new ArrayList<String>();
+		for (Rows chunk : result.chunks()) {
+			collected.addAll(chunk.rows);
+		}
+		assertEquals(collected, rows, "chunks handed over out of order");
+		return new Scanned(rows, result.end(), positions);
+	}
+
+	private Path write(String name, byte[] bytes) throws IOException {
+		return Files.write(directory.resolve(name), bytes);
+	}
+
+	private static byte[] rows() {
+		return rows(ROWS);
+	}
+
+	private static byte[] rows(int count) {
+		var text = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			int tenths = tenths(i);
+			text
+					.append(name(i))
+					.append(';')
+					.append(tenths < 0 || i % 2 == 0 ? "-" : "")
+					.append(Math.abs(tenths) / 10)
+					.append('.')
+					.append(Math.abs(tenths) % 10)
+					.append('\n');
+		}
+		return text
+				.toString()
+				.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/// What [Rows] makes of [#rows()].
+	private static List<String> expected() {
+		return expected(ROWS);
+	}
+
+	private static List<String> expected(int count) {
+		var rows = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			rows.add(name(i) + "=" + tenths(i));
+		}
+		return rows;
+	}
+
+	private static String name(int i) {
+		return "Station" + i % 97;
+	}
+
+	/// Negative for every other row, single digits and `-0.0` included.
+	private static int tenths(int i) {
+		return (i % 2 == 0 ? -1 : 1) * (i % 400);
+	}
+
+	/// BGZF members of up to [#MEMBER_SIZE] inflated bytes, the ones that start before `cleanUntil` end at a line end,
+	/// every other one but the last in the middle of a line.
+	private static byte[] bgzf(byte[] rows, int cleanUntil) {
+		var out = new ByteArrayOutputStream();
+		var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		var crc = new CRC32();
+		byte[] compressed = new byte[2 * MEMBER_SIZE];
+		for (int from = 0; from < rows.length; ) {
+			int to = Math.min(rows.length, from + MEMBER_SIZE);
+			if (from < cleanUntil) {
+				while (to < rows.length && rows[to - 1] != '\n') {
+					to--;
+				}
+			} else if (to < rows.length && rows[to - 1] == '\n') {
+				to--;
+			}
+			deflater.reset();
+			deflater.setInput(rows, from, to - from);
+			deflater.finish();
+			int length = 0;
+			while (!deflater.finished()) {
+				length += deflater.deflate(compressed, length, compressed.length - length);
+			}
+			crc.reset();
+			crc.update(rows, from, to - from);
+			var member = ByteBuffer
+					.allocate(BGZF_HEADER.length + Short.BYTES + length + 8)
+					.order(ByteOrder.LITTLE_ENDIAN)
+					.put(BGZF_HEADER);
+			member
+					.putShort((short) (member.capacity() - 1))
+					.put(compressed, 0, length)
+					.putInt((int) crc.getValue())
+					.putInt(to - from);
+			out.write(member.array(), 0, member.capacity());
+			from = to;
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	/// Plain gzip members of `memberSize` inflated bytes each, as concatenating `.gz` files makes them.
+	private static byte[] gzip(byte[] rows, int memberSize) throws IOException {
+		var out = new ByteArrayOutputStream();
+		for (int from = 0; from < rows.length; from += memberSize) {
+			try (var member = new GZIPOutputStream(out)) {
+				member.write(rows, from, Math.min(memberSize, rows.length - from));
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static List<Long> memberStarts(byte[] bgzf) {
+		var starts = new ArrayList<Long>();
+		var buffer = ByteBuffer
+				.wrap(bgzf)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		for (int at = 0; at < bgzf.length; at += Short.toUnsignedInt(buffer.getShort(at + BGZF_HEADER.length)) + 1) {
+			starts.add((long) at);
+		}
+		return starts;
+	}
+}
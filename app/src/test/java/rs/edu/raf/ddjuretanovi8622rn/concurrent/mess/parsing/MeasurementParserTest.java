@@ -0,0 +1,112 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MeasurementParserTest {
+
+	private static final byte SEPARATOR = ';';
+
+	/// With padding the temperatures go through the 8 byte fast path, without it the last ones don't fit a word.
+	@ParameterizedTest
+	@ValueSource(ints = {0, 16})
+	void parsesNegativeAndSingleDigitTemperatures(int padding) {
+		String text = """
+				A;-1.2
+				B;5.0
+				C;-12.3
+				D;0.0
+				E;-0.1
+				F;9.9
+				G;-9.9
+				H;99.9
+				I;7
+				J;-7
+				""";
+		var rows = new ArrayList<String>();
+		long end = parse(text, padding, true, rows);
+		assertEquals(text.length(), end);
+		assertEquals(
+				List.of("A=-12", "B=50", "C=-123", "D=0", "E=-1", "F=99", "G=-99", "H=999", "I=70", "J=-70"),
+				rows);
+	}
+
+	@Test
+	void parsesLinesShorterThanAWord() {
+		var rows = new ArrayList<String>();
+		parse("a;1\nb;2\n", 0, true, rows);
+		assertEquals(List.of("a=10", "b=20"), rows);
+	}
+
+	@Test
+	void skipsMalformedLines() {
+		var rows = new ArrayList<String>();
+		parse("A;1.0\nno separator\nB;-\nC;1.2.3\n;4.0\nD; -2.5 \n", 0, true, rows);
+		assertEquals(List.of("A=10", "D=-25"), rows);
+	}
+
+	@Test
+	void leavesPartialLineAlone() {
+		String text = "A;1.0\nB;-2.";
+		var rows = new ArrayList<String>();
+		assertEquals(6, parse(text, 16, false, rows));
+		assertEquals(List.of("A=10"), rows);
+		rows.clear();
+		assertEquals(text.length(), parse(text, 16, true, rows));
+		assertEquals(List.of("A=10", "B=-20"), rows);
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"-1.2, -12",
+			"5, 50",
+			"-5, -50",
+			"0.05, 1",
+			"-0.05, -1",
+			"1.24, 12",
+			"+3.0, 30",
+			"-123.4, -1234"
+	})
+	void parsesTemperature(String value, int tenths) {
+		MemorySegment data = MemorySegment.ofArray(value.getBytes(StandardCharsets.US_ASCII));
+		assertEquals(tenths, MeasurementParser.parseTemperature(data, 0, data.byteSize()));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"-", ".", "1.2x", "x", "--1"})
+	void rejectsMalformedTemperature(String value) {
+		MemorySegment data = MemorySegment.ofArray(value.getBytes(StandardCharsets.US_ASCII));
+		assertEquals(MeasurementParser.MALFORMED, MeasurementParser.parseTemperature(data, 0, data.byteSize()));
+	}
+
+	@Test
+	void rejectsEmptyTemperature() {
+		MemorySegment data = MemorySegment.ofArray(new byte[1]);
+		assertEquals(MeasurementParser.MALFORMED, MeasurementParser.parseTemperature(data, 0, 0));
+	}
+
+	/// Parses `text` followed by `padding` bytes that aren't part of it, collecting `name=tenths` of every row.
+	private static long parse(String text, int padding, boolean includePartialLine, List<String> rows) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		byte[] padded = Arrays.copyOf(bytes, bytes.length + padding);
+		Arrays.fill(padded, bytes.length, padded.length, (byte) '\n');
+		MemorySegment data = MemorySegment.ofArray(padded);
+		return MeasurementParser.parseLines(
+				data,
+				0,
+				bytes.length,
+				SEPARATOR,
+				includePartialLine,
+				(segment, nameOffset, nameLength, temperature) -> {
+					byte[] name = segment
+							.asSlice(nameOffset, nameLength)
+							.toArray(ValueLayout.JAVA_BYTE);
+					rows.add(new String(name, StandardCharsets.UTF_8) + "=" + temperature);
+				});
+	}
+}
@@ -0,0 +1,85 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MeasurementScannerTest {
+
+	@TempDir
+	Path directory;
+
+	/// Chunks end right after the newline that follows wherever the file is cut,
+	/// so every row has to be parsed exactly once by the chunks on either side of it.
+	@Test
+	void parsesEveryRowOnceWhereverTheFileIsCut() {
+		byte[] bytes = text(200).getBytes(StandardCharsets.UTF_8);
+		MemorySegment data = MemorySegment.ofArray(bytes);
+		List<String> whole = parse(data, 0, bytes.length);
+		assertEquals(200, whole.size());
+		for (int cut = 0; cut <= bytes.length; cut++) {
+			long boundary = MeasurementParser.nextLine(data, cut, bytes.length);
+			var rows = new ArrayList<>(parse(data, 0, boundary));
+			rows.addAll(parse(data, boundary, bytes.length));
+			assertEquals(whole, rows, "cut at " + cut);
+		}
+	}
+
+	@Test
+	void scansChunksInFileOrder() throws IOException {
+		String text = text(400_000);
+		Path file = Files.writeString(directory.resolve("measurements.txt"), text);
+		List<String> expected = parse(MemorySegment.ofArray(text.getBytes(StandardCharsets.UTF_8)), 0, text.length());
+		List<Rows> chunks = MeasurementScanner.scan(file, ReadScheduler.Priority.SCAN, Rows::new);
+		assertTrue(chunks.size() > 1, "a single chunk");
+		assertEquals(expected, Rows.of(chunks));
+	}
+
+	@Test
+	void skipsCsvHeader() throws IOException {
+		Path file = Files.writeString(directory.resolve("measurements.csv"), "station,temperature\nA,1.5\nB,-2.0\n");
+		assertEquals(List.of("A=15", "B=-20"), Rows.of(MeasurementScanner.scan(file, ReadScheduler.Priority.SCAN, Rows::new)));
+	}
+
+	/// Rows past 2GB don't fit an int offset, the file is sparse so it doesn't take up the space.
+	@Test
+	void readsRowsPastTwoGigabytes() throws IOException {
+		Path file = directory.resolve("big.txt");
+		long far = (1L << 31) + 4096;
+		try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+			channel.write(ByteBuffer.wrap("A;1.0\n".getBytes(StandardCharsets.US_ASCII)), 0);
+			channel.write(ByteBuffer.wrap("\nB;2.5\nC;-3.0\n".getBytes(StandardCharsets.US_ASCII)), far);
+		}
+		// The gap is a single line of zero bytes without a separator, it's skipped
+		assertEquals(List.of("A=10", "B=25", "C=-30"), Rows.of(MeasurementScanner.scan(file, ReadScheduler.Priority.SCAN, Rows::new)));
+	}
+
+	private static List<String> parse(MemorySegment data, long from, long to) {
+		var rows = new Rows();
+		MeasurementParser.parseLines(data, from, to, (byte) ';', true, rows);
+		return rows.rows;
+	}
+
+	/// `rows` rows with names and temperatures of every length the parser handles.
+	static String text(int rows) {
+		var random = new SplittableRandom(rows);
+		var text = new StringBuilder();
+		for (int i = 0; i < rows; i++) {
+			int tenths = random.nextInt(-999, 1000);
+			text
+					.append("Station-".repeat(random.nextInt(0, 3)))
+					.append((char) ('A' + random.nextInt(26)))
+					.append(i % 100)
+					.append(';')
+					.append(tenths < 0 ? "-" : "")
+					.append(Math.abs(tenths) / 10)
+					.append('.')
+					.append(Math.abs(tenths) % 10)
+					.append('\n');
+		}
+		return text.toString();
+	}
+}
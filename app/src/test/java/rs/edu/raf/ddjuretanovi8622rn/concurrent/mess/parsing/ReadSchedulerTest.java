@@ -0,0 +1,114 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadSchedulerTest {
+
+	@TempDir
+	Path directory;
+	private Path file;
+	private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+	private final List<Thread> readers = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws IOException {
+		file = Files.writeString(directory.resolve("measurements.txt"), "A;1.0\n");
+	}
+
+	@AfterEach
+	void tearDown() {
+		readers.forEach(Thread::interrupt);
+		ReadScheduler.configure(ReadSettings.defaults());
+	}
+
+	@Test
+	void letsWaitingReadersInByPriorityThenInOrder() throws Exception {
+		ReadScheduler.configure(new ReadSettings(1, 4096));
+		try (var _ = ReadScheduler
+				.reader(file, ReadScheduler.Priority.SCAN)
+				.acquire()) {
+			startWaiting("build 1", ReadScheduler.Priority.BACKGROUND);
+			startWaiting("ingest", ReadScheduler.Priority.INGEST);
+			startWaiting("build 2", ReadScheduler.Priority.BACKGROUND);
+			startWaiting("scan", ReadScheduler.Priority.SCAN);
+			assertEquals(List.of(), order);
+		}
+		joinReaders();
+		assertEquals(List.of("scan", "ingest", "build 1", "build 2"), order);
+	}
+
+	@Test
+	void letsInAsManyReadersAsTheDeviceAllows() throws Exception {
+		ReadScheduler.configure(new ReadSettings(2, 4096));
+		var reader = ReadScheduler.reader(file, ReadScheduler.Priority.INGEST);
+		try (var _ = reader.acquire()) {
+			try (var _ = reader.acquire()) {
+				startWaiting("third", ReadScheduler.Priority.SCAN);
+			}
+			joinReaders();
+		}
+		assertEquals(List.of("third"), order);
+	}
+
+	@Test
+	void forgetsAReaderInterruptedWhileWaiting() throws Exception {
+		ReadScheduler.configure(new ReadSettings(1, 4096));
+		var failure = new CompletableFuture<Throwable>();
+		try (var _ = ReadScheduler
+				.reader(file, ReadScheduler.Priority.BACKGROUND)
+				.acquire()) {
+			Thread interrupted = Thread.ofPlatform().start(() -> {
+				try (var _ = ReadScheduler
+						.reader(file, ReadScheduler.Priority.SCAN)
+						.acquire()) {
+					failure.complete(null);
+				} catch (IOException e) {
+					failure.complete(e);
+				}
+			});
+			awaitWaiting(interrupted);
+			startWaiting("next", ReadScheduler.Priority.BACKGROUND);
+			interrupted.interrupt();
+			assertInstanceOf(InterruptedIOException.class, failure.get(10, TimeUnit.SECONDS));
+		}
+		// The reader that gave up no longer stands in front of the next one
+		joinReaders();
+		assertEquals(List.of("next"), order);
+	}
+
+	/// Starts a reader that records `name` once it gets the device, and returns once it's waiting for it.
+	private void startWaiting(String name, ReadScheduler.Priority priority) throws InterruptedException {
+		var reader = ReadScheduler.reader(file, priority);
+		Thread thread = Thread.ofPlatform().start(() -> {
+			try (var _ = reader.acquire()) {
+				order.add(name);
+			} catch (InterruptedIOException e) {
+				// Stopped by tearDown
+			}
+		});
+		readers.add(thread);
+		awaitWaiting(thread);
+	}
+
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (thread.getState() != Thread.State.WAITING) {
+			assertTrue(System.nanoTime() < deadline, thread + " never waited");
+			Thread.sleep(1);
+		}
+	}
+
+	private void joinReaders() throws InterruptedException {
+		for (Thread reader : readers) {
+			assertTrue(reader.join(Duration.ofSeconds(10)));
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+
+/// Keeps every row it visits as `name=tenths`, in the order they were visited.
+final class Rows implements RowVisitor {
+
+	final List<String> rows = new ArrayList<>();
+
+	@Override
+	public void visit(MemorySegment data, long nameOffset, int nameLength, int temperature) {
+		byte[] name = data
+				.asSlice(nameOffset, nameLength)
+				.toArray(ValueLayout.JAVA_BYTE);
+		rows.add(new String(name, StandardCharsets.UTF_8) + "=" + temperature);
+	}
+
+	/// @return the rows of every visitor, one after the other
+	static List<String> of(List<Rows> visitors) {
+		var rows = new ArrayList<String>();
+		for (Rows visitor : visitors) {
+			rows.addAll(visitor.rows);
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,11 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+class SwarDelimiterSearchTest extends DelimiterSearchTest {
+
+	private final DelimiterSearch search = new SwarDelimiterSearch();
+
+	@Override
+	DelimiterSearch search() {
+		return search;
+	}
+}
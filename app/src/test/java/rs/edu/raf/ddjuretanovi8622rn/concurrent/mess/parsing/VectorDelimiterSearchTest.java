@@ -0,0 +1,24 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import org.junit.jupiter.api.BeforeAll;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/// Skipped unless the tests run with `--add-modules jdk.incubator.vector` on a CPU with 256 bit vectors.
+class VectorDelimiterSearchTest extends DelimiterSearchTest {
+
+	private static DelimiterSearch search;
+
+	@BeforeAll
+	static void load() {
+		search = DelimiterSearch
+				.vector()
+				.orElse(null);
+		assumeTrue(search != null, "No vector delimiter search on this JVM");
+	}
+
+	@Override
+	DelimiterSearch search() {
+		return search;
+	}
+}
@@ -0,0 +1,121 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.queue;
+
+import module java.base;
+import org.junit.jupiter.api.Test;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.Command;
+import rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.command.PoisonPill;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandDispatcherTest {
+
+	private static final Command.Scan SCAN_A = new Command.Scan(0, 10, 'a', "a.txt", "a");
+	private static final Command.Scan SCAN_B = new Command.Scan(0, 10, 'b', "b.txt", "b");
+
+	private final MessageQueue queue = new MessageQueue();
+	private final List<Command> executed = Collections.synchronizedList(new ArrayList<>());
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Test
+	void runsCommandsOfAJobInQueueOrder() throws Exception {
+		var others = new CountDownLatch(2);
+		Thread dispatcher = start(command -> {
+			if (command == SCAN_A) {
+				await(release);
+			}
+			executed.add(command);
+			if (command == SCAN_B || command instanceof Command.Map) {
+				others.countDown();
+			}
+		});
+		queue.emit(SCAN_A);
+		queue.emit(new Command.Status("a"));
+		queue.emit(SCAN_B);
+		queue.emit(new Command.Map());
+
+		// Other jobs and reads of the map don't wait for the blocked job
+		assertTrue(others.await(10, TimeUnit.SECONDS));
+		assertFalse(executed.contains(new Command.Status("a")));
+
+		release.countDown();
+		awaitExecuted(4);
+		stop(dispatcher);
+		assertTrue(executed.indexOf(SCAN_A) < executed.indexOf(new Command.Status("a")));
+	}
+
+	@Test
+	void startWaitsForEverythingDispatchedBeforeIt() throws Exception {
+		Thread dispatcher = start(command -> {
+			if (command == SCAN_A) {
+				await(release);
+			}
+			executed.add(command);
+		});
+		queue.emit(SCAN_A);
+		queue.emit(new Command.Start(false));
+		queue.emit(SCAN_B);
+
+		Thread.sleep(200);
+		assertEquals(List.of(), executed);
+
+		release.countDown();
+		awaitExecuted(3);
+		stop(dispatcher);
+		assertEquals(List.of(SCAN_A, new Command.Start(false), SCAN_B), executed);
+	}
+
+	@Test
+	void keepsRunningCommandsOfAJobAfterOneFails() throws Exception {
+		Thread dispatcher = start(command -> {
+			executed.add(command);
+			if (command == SCAN_A) {
+				throw new IllegalStateException("scan failed");
+			}
+		});
+		queue.emit(SCAN_A);
+		queue.emit(new Command.Status("a"));
+
+		awaitExecuted(2);
+		stop(dispatcher);
+		assertEquals(List.of(SCAN_A, new Command.Status("a")), executed);
+	}
+
+	private Thread start(Consumer<Command> handler) {
+		var dispatcher = new CommandDispatcher(queue, handler);
+		return Thread
+				.ofVirtual()
+				.start(() -> {
+					try {
+						dispatcher.run();
+					} catch (InterruptedException e) {
+						Thread
+								.currentThread()
+								.interrupt();
+					}
+				});
+	}
+
+	/// The poison pill jumps ahead of commands that are still in the queue, so the tests wait for them first
+	private void awaitExecuted(int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (executed.size() < count && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, executed.size());
+	}
+
+	private void stop(Thread dispatcher) throws InterruptedException {
+		queue.emit(new PoisonPill(false));
+		assertTrue(dispatcher.join(Duration.ofSeconds(10)));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
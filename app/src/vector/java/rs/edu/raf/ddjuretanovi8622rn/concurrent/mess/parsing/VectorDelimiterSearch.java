@@ -0,0 +1,58 @@
+package rs.edu.raf.ddjuretanovi8622rn.concurrent.mess.parsing;
+
+import module java.base;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/// Compares a whole SIMD register of bytes at once, the tail that doesn't fill a register goes through SWAR.
+///
+/// It's in its own source set, the only one compiled with `--add-modules jdk.incubator.vector`,
+/// and only ever loaded by name from [DelimiterSearch#vector()].
+final class VectorDelimiterSearch implements DelimiterSearch {
+
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+	/// With only 128 bits (SSE) finding the first match isn't a single instruction, and it's several times slower than SWAR
+	private static final int MIN_VECTOR_BITS = 256;
+
+	private final DelimiterSearch tail = new SwarDelimiterSearch();
+
+	/// @return whether the CPU's vectors are wide enough for this to beat [SwarDelimiterSearch]
+	static boolean isSupported() {
+		return SPECIES.vectorBitSize() >= MIN_VECTOR_BITS;
+	}
+
+	@Override
+	public long findDelimiter(MemorySegment data, long from, long to, byte separator) {
+		long pos = from;
+		for (; pos + SPECIES.length() <= to; pos += SPECIES.length()) {
+			var bytes = ByteVector.fromMemorySegment(SPECIES, data, pos, ByteOrder.nativeOrder());
+			VectorMask<Byte> matches = bytes
+					.eq(MeasurementParser.NEWLINE)
+					.or(bytes.eq(separator));
+			if (matches.anyTrue()) {
+				return pos + matches.firstTrue();
+			}
+		}
+		return tail.findDelimiter(data, pos, to, separator);
+	}
+
+	@Override
+	public long findNewline(MemorySegment data, long from, long to) {
+		long pos = from;
+		for (; pos + SPECIES.length() <= to; pos += SPECIES.length()) {
+			VectorMask<Byte> matches = ByteVector
+					.fromMemorySegment(SPECIES, data, pos, ByteOrder.nativeOrder())
+					.eq(MeasurementParser.NEWLINE);
+			if (matches.anyTrue()) {
+				return pos + matches.firstTrue();
+			}
+		}
+		return tail.findNewline(data, pos, to);
+	}
+
+	@Override
+	public String toString() {
+		return SPECIES.vectorBitSize() + " bit vectors";
+	}
+}